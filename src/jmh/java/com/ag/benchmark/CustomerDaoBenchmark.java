@@ -0,0 +1,83 @@
+package com.ag.benchmark;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the jdbc and jpa CustomerDao implementations, each in an application of its own on the same seed data
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerDaoBenchmark {
+    private static final int LOOKUP_SIZE = 100;
+
+    private CustomerDao customerDao;
+    private CustomersApplicationState application;
+
+    @Setup
+    public void setUp(CustomersApplicationState.PerBackend application) {
+        this.application = application;
+        this.customerDao = application.customerDao();
+    }
+
+    @Benchmark
+    public Optional<Customer> selectCustomerById() {
+        return customerDao.selectCustomerById(application.randomCustomerId());
+    }
+
+    @Benchmark
+    public List<Customer> selectCustomersAfterId() {
+        return customerDao.selectCustomersAfterId(application.randomCustomerId(), 100);
+    }
+
+    /**
+     * One round trip for as many customers as a downstream service resolves at once, to compare with that many
+     * selectCustomerById calls
+     */
+    @Benchmark
+    public List<Customer> selectCustomersByIds() {
+        List<Integer> ids = new ArrayList<>(LOOKUP_SIZE);
+        for (int i = 0; i < LOOKUP_SIZE; i++) {
+            ids.add(application.randomCustomerId());
+        }
+        return customerDao.selectCustomersByIds(ids);
+    }
+
+    @Benchmark
+    public boolean existsPersonById() {
+        return customerDao.existsPersonById(application.randomCustomerId());
+    }
+
+    @Benchmark
+    public boolean insertCustomer() {
+        return customerDao.insertCustomer(CustomersApplicationState.newCustomer());
+    }
+
+    @Benchmark
+    public Optional<Customer> updateCustomer() {
+        Customer update = new Customer();
+        update.setId(application.randomCustomerId());
+        update.setAge(18 + ThreadLocalRandom.current().nextInt(80));
+        return customerDao.updateCustomer(update);
+    }
+}
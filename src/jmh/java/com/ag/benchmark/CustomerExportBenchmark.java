@@ -0,0 +1,101 @@
+package com.ag.benchmark;
+
+import com.ag.customer.CustomerView;
+import com.ag.customer.service.CustomerExportService;
+import com.ag.customer.service.CustomerFileFormat;
+import com.ag.customer.service.CustomerService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to export every seeded customer to a discarding stream: the CSV copy, the NDJSON cursor, and the existing
+ * customer stream for comparison, each plain and gzipped. Run with -prof gc to compare allocation per export
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerExportBenchmark {
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private CustomerExportService customerExportService;
+    private CustomerService customerService;
+    private ObjectWriter customerWriter;
+
+    @Setup
+    public void setUp(CustomersApplicationState application) {
+        customerExportService = application.bean(CustomerExportService.class);
+        customerService = application.bean(CustomerService.class);
+        customerWriter = application.bean(ObjectMapper.class).writerFor(CustomerView.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Benchmark
+    public long exportCsv() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        customerExportService.exportCustomers(CustomerFileFormat.CSV, false, changesSince -> target(out));
+        return out.count;
+    }
+
+    @Benchmark
+    public long exportNdjson() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        customerExportService.exportCustomers(CustomerFileFormat.NDJSON, false, changesSince -> target(out));
+        return out.count;
+    }
+
+    // What GET stream does
+    @Benchmark
+    public long streamNdjson() throws IOException {
+        CountingOutputStream counted = new CountingOutputStream();
+        try (OutputStream out = new BufferedOutputStream(target(counted))) {
+            customerService.streamAllCustomers(customer -> {
+                try {
+                    customerWriter.writeValue(out, customer);
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return counted.count;
+    }
+
+    private OutputStream target(OutputStream out) throws IOException {
+        return gzip ? CustomerExportService.gzip(out) : out;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.ag.benchmark;
+
+import com.ag.customer.service.CustomerFileFormat;
+import com.ag.customer.service.CustomerImportService;
+import com.ag.dto.CustomerImportResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to import an upload of new customers, from the bytes of the upload to the committed rows. rows / score is
+ * the import rate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CustomerImportBenchmark {
+    @Param({"1000000"})
+    public int rows;
+    @Param({"CSV", "NDJSON"})
+    public CustomerFileFormat format;
+
+    private CustomerImportService customerImportService;
+    private byte[] upload;
+
+    @Setup
+    public void setUp(CustomersApplicationState application) {
+        customerImportService = application.bean(CustomerImportService.class);
+    }
+
+    // Every import brings new emails, otherwise all but the first would be rejected as duplicates
+    @Setup(Level.Invocation)
+    public void createUpload() {
+        String run = UUID.randomUUID().toString().substring(0, 8);
+        StringBuilder content = new StringBuilder(rows * 64);
+        if (format == CustomerFileFormat.CSV) {
+            content.append("name,email,age\n");
+        }
+        for (int row = 0; row < rows; row++) {
+            String name = "Customer " + row;
+            String email = "import-" + run + "-" + row + "@partner.com";
+            int age = 18 + row % 60;
+            if (format == CustomerFileFormat.CSV) {
+                content.append(name).append(',').append(email).append(',').append(age).append('\n');
+            } else {
+                content.append("{\"name\":\"").append(name).append("\",\"email\":\"").append(email).append("\",\"age\":").append(age).append("}\n");
+            }
+        }
+        upload = content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public CustomerImportResult importCustomers() {
+        return customerImportService.importCustomers(new ByteArrayInputStream(upload), format, rows -> { });
+    }
+}
@@ -0,0 +1,57 @@
+package com.ag.benchmark;
+
+import com.ag.customer.Customer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes customer lists the way the controller does, with the ObjectMapper defaults Spring Boot uses
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerJsonBenchmark {
+    @Param({"100", "1000"})
+    public int customers;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private List<Customer> page;
+
+    @Setup
+    public void setUp() {
+        page = new ArrayList<>(customers);
+        for (int i = 1; i <= customers; i++) {
+            page.add(new Customer(i, "customer " + i, "customer" + i + "@gmail.com", 18 + i % 60));
+        }
+    }
+
+    @Benchmark
+    public void writeCustomers() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), page);
+    }
+
+    @Benchmark
+    public byte[] writeCustomersAsBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ag.benchmark;
+
+import com.ag.CustomersApplication;
+import com.ag.customer.Customer;
+import com.ag.customer.service.CustomerService;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closed-loop HTTP load test that runs the same burst against the application three times: Tomcat with platform
+ * request threads, Tomcat with virtual threads, and the reactive stack on Netty and R2DBC. It prints the latency
+ * percentiles of each.
+ * Arguments: [concurrent clients, default 1000] [requests per client, default 20]
+ */
+public final class CustomerLoadTest {
+    private static final int SEEDED_CUSTOMERS = 10_000;
+
+    private CustomerLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        // Devtools would otherwise relaunch this main method with the application arguments
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            boolean seeded = false;
+            for (String mode : new String[]{"platform", "virtual", "reactive"}) {
+                try (ConfigurableApplicationContext context = start(postgres, mode)) {
+                    if (!seeded) {
+                        seed(context.getBean(CustomerService.class));
+                        seeded = true;
+                    }
+                    int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+                    run(port, clients, requestsPerClient, mode);
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(EmbeddedPostgres postgres, String mode) {
+        return new SpringApplicationBuilder(CustomersApplication.class)
+                .run("--server.port=0",
+                        "--spring.main.web-application-type=" + ("reactive".equals(mode) ? "reactive" : "servlet"),
+                        "--spring.threads.virtual.enabled=" + "virtual".equals(mode),
+                        "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.password=postgres",
+                        "--spring.r2dbc.url=r2dbc:postgresql://localhost:%d/postgres".formatted(postgres.getPort()),
+                        "--spring.r2dbc.username=postgres",
+                        "--spring.r2dbc.password=postgres",
+                        "--spring.jpa.show-sql=false",
+                        // Keep every request on the database
+                        "--customers.cache.maximum-size=0",
+                        "--logging.level.root=warn");
+    }
+
+    private static void seed(CustomerService customerService) {
+        List<CustomerRegistrationRequest> requests = new ArrayList<>(SEEDED_CUSTOMERS);
+        for (int i = 0; i < SEEDED_CUSTOMERS; i++) {
+            requests.add(new CustomerRegistrationRequest("load-" + i, UUID.randomUUID() + "@load.com", 30));
+        }
+        customerService.addCustomers(requests);
+    }
+
+    private static void run(int port, int clients, int requestsPerClient, String mode) throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        List<Integer> ids = new ArrayList<>();
+        for (Customer customer : fetchPage(httpClient, port)) {
+            ids.add(customer.getId());
+        }
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int client = 0; client < clients; client++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        Integer id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:%d/api/v1/customers/%d".formatted(port, id))).build();
+                        long sent = System.nanoTime();
+                        try {
+                            if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[next.getAndIncrement()] = System.nanoTime() - sent;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        System.out.printf("%-8s clients=%d requests=%d errors=%d throughput=%.0f req/s p50=%.1f ms p99=%.1f ms max=%.1f ms%n",
+                mode, clients, latencies.length, errors.get(), latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static List<Customer> fetchPage(HttpClient httpClient, int port) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:%d/api/v1/customers?limit=1000".formatted(port))).build();
+        String body = httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        return new ObjectMapper().readValue(body, CustomerPage.class).customers();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+}
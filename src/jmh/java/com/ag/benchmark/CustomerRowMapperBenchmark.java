@@ -0,0 +1,110 @@
+package com.ag.benchmark;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps rows from an in-memory result set, so the numbers are the mapper alone without any driver or network cost.
+ * Scores are per row. mapRowByName is the former mapper that looked every column up by name, kept as the baseline;
+ * run with -prof gc for the bytes allocated per row
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerRowMapperBenchmark {
+    static final int ROWS = 1000;
+
+    private final CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+    private final RowMapper<Customer> byNameRowMapper = (resultSet, rowNum) -> new Customer(
+            resultSet.getInt("id"),
+            resultSet.getString("name"),
+            resultSet.getString("email"),
+            resultSet.getInt("age"));
+    private CachedRowSet resultSet;
+
+    @Setup
+    public void setUp() throws SQLException {
+        resultSet = customerRows(ROWS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapRow(Blackhole blackhole) throws SQLException {
+        resultSet.beforeFirst();
+        int rowNum = 0;
+        while (resultSet.next()) {
+            Customer customer = customerRowMapper.mapRow(resultSet, rowNum++);
+            blackhole.consume(customer);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapRowByName(Blackhole blackhole) throws SQLException {
+        resultSet.beforeFirst();
+        int rowNum = 0;
+        while (resultSet.next()) {
+            Customer customer = byNameRowMapper.mapRow(resultSet, rowNum++);
+            blackhole.consume(customer);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mapView(Blackhole blackhole) throws SQLException {
+        resultSet.beforeFirst();
+        int rowNum = 0;
+        while (resultSet.next()) {
+            CustomerView customer = customerRowMapper.mapView(resultSet, rowNum++);
+            blackhole.consume(customer);
+        }
+    }
+
+    static CachedRowSet customerRows(int rows) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        String[] names = {"id", "name", "email", "age"};
+        int[] types = {Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.INTEGER};
+        for (int column = 1; column <= names.length; column++) {
+            metaData.setColumnName(column, names[column - 1]);
+            metaData.setColumnLabel(column, names[column - 1]);
+            metaData.setColumnType(column, types[column - 1]);
+        }
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        for (int row = 1; row <= rows; row++) {
+            rowSet.moveToInsertRow();
+            rowSet.updateInt(1, row);
+            rowSet.updateString(2, "customer " + row);
+            rowSet.updateString(3, "customer" + row + "@gmail.com");
+            rowSet.updateInt(4, 18 + row % 60);
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        return rowSet;
+    }
+}
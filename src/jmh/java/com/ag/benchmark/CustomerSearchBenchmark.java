@@ -0,0 +1,73 @@
+package com.ag.benchmark;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a first search page over a million customers with realistic names, per backend and kind of query:
+ * name prefix (alex), a last name (smith), a mid word fragment (ander), an email domain (gmail), an email prefix
+ * (yuki.patel) and a query without any match (zzqx)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerSearchBenchmark {
+    public static final int SEARCHED_CUSTOMERS = 1_000_000;
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"alex", "smith", "ander", "gmail", "yuki.patel", "zzqx"})
+    public String query;
+
+    private CustomerDao customerDao;
+
+    @Setup
+    public void setUp(CustomersApplicationState.PerBackend application) {
+        seed(application.bean(JdbcTemplate.class));
+        this.customerDao = application.customerDao();
+    }
+
+    @Benchmark
+    public List<Customer> searchCustomers() {
+        // One more than the page, as the service asks for
+        return customerDao.searchCustomers(query, null, PAGE_SIZE + 1);
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        Integer seeded = jdbcTemplate.queryForObject("SELECT count(*) FROM customer WHERE email LIKE '%@search.%';", Integer.class);
+        if (seeded != null && seeded >= SEARCHED_CUSTOMERS) {
+            return;
+        }
+        // Ids come from the sequence so the id allocators never hand them out again
+        jdbcTemplate.update("""
+                INSERT INTO customer(id, name, email, age)
+                SELECT nextval('customer_id_seq'), first || ' ' || last, lower(first) || '.' || lower(last) || i || '@search.' || domain, 18 + i % 60
+                FROM generate_series(1, ?) i,
+                LATERAL (SELECT (ARRAY['Alex','Sam','Maria','John','Priya','Chen','Fatima','Liam','Olivia','Noah',
+                                       'Emma','Ava','Mia','Lucas','Amelia','Avinaash','Sofia','Mateo','Yuki','Omar'])[1 + i % 20] first,
+                                (ARRAY['Smith','Anderson','Garcia','Nguyen','Patel','Kim','Brown','Williams','Jones','Miller',
+                                       'Davis','Lopez','Wilson','Taylor','Thomas','Moore','Martin','Lee','Clark','Lewis','Walker',
+                                       'Young','Hall','Allen','King','Wright','Scott','Green','Baker','Adams','Nelson'])[1 + (i / 20) % 31] last,
+                                (ARRAY['gmail.com','yahoo.com','outlook.com','example.org'])[1 + (i / 7) % 4] domain) names;
+                """, SEARCHED_CUSTOMERS);
+        // Fresh statistics, otherwise the planner still sees the small table
+        jdbcTemplate.execute("ANALYZE customer;");
+    }
+}
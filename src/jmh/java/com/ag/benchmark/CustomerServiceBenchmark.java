@@ -0,0 +1,63 @@
+package com.ag.benchmark;
+
+import com.ag.customer.Customer;
+import com.ag.customer.service.CustomerService;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerUpdateRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end service flows, including the customer cache, over the configured CustomerDao
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerServiceBenchmark {
+    private CustomerService customerService;
+    private CustomersApplicationState application;
+
+    @Setup
+    public void setUp(CustomersApplicationState application) {
+        this.application = application;
+        this.customerService = application.bean(CustomerService.class);
+    }
+
+    @Benchmark
+    public Customer getCustomerById() {
+        return customerService.getCustomerById(application.randomCustomerId());
+    }
+
+    @Benchmark
+    public CustomerPage getCustomersPage() {
+        return customerService.getCustomersPage(null, 100);
+    }
+
+    @Benchmark
+    public void addCustomer() {
+        customerService.addCustomer(new CustomerRegistrationRequest("bench", UUID.randomUUID() + "@bench.com", 30));
+    }
+
+    @Benchmark
+    public Customer updateCustomer() {
+        // A fresh email always changes the row, so the update is never rejected as a no-op
+        return customerService.updateCustomer(application.randomCustomerId(),
+                new CustomerUpdateRequest(null, UUID.randomUUID() + "@bench.com", 18 + ThreadLocalRandom.current().nextInt(80)));
+    }
+}
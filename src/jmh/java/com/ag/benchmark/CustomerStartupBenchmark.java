@@ -0,0 +1,281 @@
+package com.ag.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Cold start of the packaged application per startup mode: the time from launching the process to the first answered
+ * request, the resident memory (RSS) right after it and, on the JVM, the heap still in use after a full GC then. Every
+ * launch is a new process against the same embedded Postgres, migrated before the first one. The backends compare
+ * by running it once per customers.dao.backend; the sharded one gets two shard databases when none are given.
+ * jvm - plain JVM on the classes and dependencies of the boot jar
+ * cds - with a class data sharing archive written by a training run that stops after the context refresh
+ * aot - with the bean definitions generated by Spring AOT instead of the annotation processing at startup
+ * cds-aot - both, with an archive trained in AOT mode
+ * native - the GraalVM native image, skipped when it was not built
+ * Needs the boot jar built with AOT processing: ./mvnw -Pnative -DskipTests package, and for native mode
+ * ./mvnw -Pnative -DskipTests native:compile. Bean conditions are settled when AOT processing runs, so application
+ * arguments that change them (e.g. --customers.dao.backend=jpa) must also be given to it, as
+ * -Dspring-boot.aot.jvmArguments="-Dcustomers.dao.backend=jpa", for the aot modes to measure the same application.
+ * Arguments: [launches per mode, default 5] [modes, comma separated, default all] [--application arguments]
+ * e.g. -Djmh.args="5 jvm,cds --customers.dao.backend=jpa"
+ */
+public final class CustomerStartupBenchmark {
+    private static final Path TARGET = Path.of("target");
+    private static final Path WORK = TARGET.resolve("startup");
+    private static final Path NATIVE_IMAGE = TARGET.resolve("customers");
+    private static final String MAIN_CLASS = "com.ag.CustomersApplication";
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(2);
+    // The heap lines of GC.heap_info, e.g. " garbage-first heap   total 258048K, used 31974K [...]", one per generation
+    // for the serial and parallel collectors
+    private static final Pattern HEAP_USED = Pattern.compile("total \\d+K, used (\\d+)K");
+
+    private CustomerStartupBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int launches = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        List<String> modes = List.of((args.length > 1 ? args[1] : "jvm,cds,aot,cds-aot,native").split(","));
+        List<String> applicationArguments = args.length > 2 ? List.of(args).subList(2, args.length) : List.of();
+        String classpath = unpackBootJar();
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            // Every launch then only validates the schema, as a new instance of a running service would
+            Flyway.configure().dataSource(postgres.getPostgresDatabase()).load().migrate();
+            List<String> arguments = new ArrayList<>(List.of(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                    "--spring.datasource.username=postgres",
+                    "--spring.datasource.password=postgres",
+                    "--spring.r2dbc.url=r2dbc:postgresql://localhost:%d/postgres".formatted(postgres.getPort()),
+                    "--spring.r2dbc.username=postgres",
+                    "--spring.r2dbc.password=postgres",
+                    "--logging.level.root=warn"));
+            arguments.addAll(applicationArguments);
+            if (applicationArguments.contains("--customers.dao.backend=sharded")
+                    && applicationArguments.stream().noneMatch(argument -> argument.startsWith("--customers.shards"))) {
+                arguments.addAll(createShards(postgres));
+            }
+            for (String mode : modes) {
+                List<String> command = command(mode, classpath, arguments);
+                if (command.isEmpty()) {
+                    System.out.printf("%-8s skipped, %s is missing%n", mode, NATIVE_IMAGE);
+                    continue;
+                }
+                long[] startTimes = new long[launches];
+                long[] rss = new long[launches];
+                long[] heap = new long[launches];
+                for (int i = 0; i < launches; i++) {
+                    long[] launch = launch(mode, command);
+                    startTimes[i] = launch[0];
+                    rss[i] = launch[1];
+                    heap[i] = launch[2];
+                }
+                Arrays.sort(startTimes);
+                Arrays.sort(rss);
+                Arrays.sort(heap);
+                System.out.printf("%-8s launches=%d first request: median=%d ms min=%d ms, RSS: median=%d MB max=%d MB, heap after GC: median=%s%n",
+                        mode, launches, startTimes[launches / 2], startTimes[0], rss[launches / 2] >> 10, rss[launches - 1] >> 10,
+                        heap[launches / 2] == 0 ? "-" : "%.1f MB".formatted(heap[launches / 2] / 1024.0));
+            }
+        }
+    }
+
+    private static List<String> command(String mode, String classpath, List<String> arguments) throws Exception {
+        List<String> command = new ArrayList<>();
+        switch (mode) {
+            case "jvm" -> command.addAll(java(classpath));
+            case "aot" -> command.addAll(java(classpath, "-Dspring.aot.enabled=true"));
+            case "cds" -> command.addAll(java(classpath, "-XX:SharedArchiveFile=" + trainArchive(mode, classpath, arguments)));
+            case "cds-aot" -> command.addAll(java(classpath, "-Dspring.aot.enabled=true",
+                    "-XX:SharedArchiveFile=" + trainArchive(mode, classpath, arguments)));
+            case "native" -> {
+                if (!Files.isExecutable(NATIVE_IMAGE)) {
+                    return List.of();
+                }
+                command.add(NATIVE_IMAGE.toString());
+            }
+            default -> throw new IllegalArgumentException("Unknown mode %s, expected jvm, cds, aot, cds-aot or native".formatted(mode));
+        }
+        command.addAll(arguments);
+        return command;
+    }
+
+    private static List<String> java(String classpath, String... options) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(List.of(options));
+        command.addAll(List.of("-cp", classpath, MAIN_CLASS));
+        return command;
+    }
+
+    /**
+     * Runs the application up to the end of the context refresh, so the archive holds every class startup loads
+     */
+    private static Path trainArchive(String mode, String classpath, List<String> arguments) throws Exception {
+        Path archive = WORK.resolve(mode + ".jsa");
+        List<String> command = new ArrayList<>(java(classpath, "-XX:ArchiveClassesAtExit=" + archive, "-Dspring.context.exit=onRefresh"));
+        if (mode.endsWith("aot")) {
+            command.add(1, "-Dspring.aot.enabled=true");
+        }
+        command.addAll(arguments);
+        command.add("--server.port=0");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(WORK.resolve(mode + "-training.log").toFile()).start();
+        if (process.waitFor() != 0 || !Files.exists(archive)) {
+            throw new IllegalStateException("CDS training run failed, see %s".formatted(WORK.resolve(mode + "-training.log")));
+        }
+        return archive;
+    }
+
+    /**
+     * Returns the milliseconds to the first answered request, the RSS in KB after it and the heap in use after a full
+     * GC in KB, 0 for the native image
+     */
+    private static long[] launch(String mode, List<String> command) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> withPort = new ArrayList<>(command);
+        withPort.add("--server.port=" + port);
+        Path log = WORK.resolve(mode + ".log");
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:%d/api/v1/customers?limit=1".formatted(port))).build();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(withPort).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("%s exited with %d before answering, see %s".formatted(mode, process.exitValue(), log));
+                }
+                if (System.nanoTime() - start > START_TIMEOUT.toNanos()) {
+                    throw new IllegalStateException("%s did not answer within %s, see %s".formatted(mode, START_TIMEOUT, log));
+                }
+                try {
+                    if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(5);
+            }
+            long firstRequest = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long resident = residentKilobytes(process.pid());
+            return new long[]{firstRequest, resident, "native".equals(mode) ? 0 : heapAfterGcKilobytes(command.get(0), process.pid())};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    /**
+     * Collects garbage in the application through jcmd, then reads what the heap still holds: the idle footprint of
+     * the beans, caches and metadata startup left behind
+     */
+    private static long heapAfterGcKilobytes(String java, long pid) throws Exception {
+        String jcmd = Path.of(java).resolveSibling("jcmd").toString();
+        new ProcessBuilder(jcmd, Long.toString(pid), "GC.run").redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor();
+        Process heapInfo = new ProcessBuilder(jcmd, Long.toString(pid), "GC.heap_info").redirectErrorStream(true).start();
+        String output = new String(heapInfo.getInputStream().readAllBytes());
+        heapInfo.waitFor();
+        long kilobytes = 0;
+        for (Matcher used = HEAP_USED.matcher(output); used.find(); ) {
+            kilobytes += Long.parseLong(used.group(1));
+        }
+        return kilobytes;
+    }
+
+    /**
+     * Two databases next to the main one for the sharded backend, migrated like it
+     */
+    private static List<String> createShards(EmbeddedPostgres postgres) throws Exception {
+        List<String> arguments = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("DROP DATABASE IF EXISTS shard_" + i);
+                statement.execute("CREATE DATABASE shard_" + i);
+            }
+            Flyway.configure().dataSource(postgres.getDatabase("postgres", "shard_" + i)).load().migrate();
+            arguments.add("--customers.shards[%d].url=%s".formatted(i, postgres.getJdbcUrl("postgres", "shard_" + i)));
+        }
+        return arguments;
+    }
+
+    // VmRSS of /proc/<pid>/status, 0 where there is no /proc
+    private static long residentKilobytes(long pid) throws IOException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Lays the boot jar out as a plain classpath: its classes in one jar and its dependencies next to it. CDS only
+     * archives classes loaded from jar files on the classpath, not from the jars nested in a boot jar
+     */
+    private static String unpackBootJar() throws IOException {
+        Path bootJar;
+        try (var jars = Files.list(TARGET)) {
+            bootJar = jars.filter(path -> path.getFileName().toString().endsWith(".jar")).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No jar in target, run ./mvnw -Pnative -DskipTests package first"));
+        }
+        Path lib = WORK.resolve("lib");
+        Files.createDirectories(lib);
+        Path applicationJar = WORK.resolve("customers.jar");
+        List<String> classpath = new ArrayList<>(List.of(applicationJar.toString()));
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(bootJar));
+             JarOutputStream application = new JarOutputStream(Files.newOutputStream(applicationJar))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                String name = entry.getName();
+                if (name.startsWith("BOOT-INF/lib/") && !entry.isDirectory()) {
+                    Path dependency = lib.resolve(name.substring("BOOT-INF/lib/".length()));
+                    Files.copy(in, dependency, StandardCopyOption.REPLACE_EXISTING);
+                    classpath.add(dependency.toString());
+                } else if (name.startsWith("BOOT-INF/classes/") && name.length() > "BOOT-INF/classes/".length()) {
+                    application.putNextEntry(new JarEntry(name.substring("BOOT-INF/classes/".length())));
+                    in.transferTo(application);
+                    application.closeEntry();
+                } else if (name.startsWith("META-INF/") && !entry.isDirectory() && !name.equals("META-INF/MANIFEST.MF")) {
+                    // The boot jar keeps META-INF of the classes at its root, spring.factories among them
+                    application.putNextEntry(new JarEntry(name));
+                    in.transferTo(application);
+                    application.closeEntry();
+                }
+            }
+        }
+        return String.join(File.pathSeparator, classpath);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ag.benchmark;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the DAO reads with 16 concurrent callers on the production profile, with and without prepared
+ * statement reuse. prepareThreshold=0 never prepares on the server, so every call is parsed and planned again;
+ * 1 is what the production profile sets. Runs the jdbc and the jdbc-named backend
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class CustomerStatementReuseBenchmark {
+    @Param({"0", "1"})
+    public int prepareThreshold;
+    @Param({"jdbc", "jdbc-named"})
+    public String backend;
+
+    // Started here instead of shared, every prepareThreshold needs its own pool
+    private final CustomersApplicationState application = new CustomersApplicationState();
+    private CustomerDao customerDao;
+
+    @Setup
+    public void setUp() throws IOException {
+        application.start("--spring.profiles.active=production", "--customers.dao.backend=" + backend,
+                "--spring.datasource.hikari.data-source-properties[prepareThreshold]=" + prepareThreshold);
+        customerDao = application.customerDao(backend);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        application.stop();
+    }
+
+    @Benchmark
+    public Optional<Customer> selectCustomerById() {
+        return customerDao.selectCustomerById(application.randomCustomerId());
+    }
+
+    @Benchmark
+    public List<Customer> selectCustomersAfterId() {
+        return customerDao.selectCustomersAfterId(application.randomCustomerId(), 20);
+    }
+
+    // Seeded names start with bench-, so a first page comes from the name prefix query alone
+    @Benchmark
+    public List<Customer> searchCustomers() {
+        return customerDao.searchCustomers("bench-a", null, 21);
+    }
+}
@@ -0,0 +1,116 @@
+package com.ag.benchmark;
+
+import com.ag.CustomersApplication;
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Boots the application without the web layer against an embedded Postgres, the stand-in for the real database,
+ * and seeds it with customers. Shared by every benchmark that needs the DAOs or the service
+ */
+@State(Scope.Benchmark)
+public class CustomersApplicationState {
+    public static final int SEEDED_CUSTOMERS = 10_000;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private int[] customerIds;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        start(arguments());
+    }
+
+    // Command line arguments of the application a trial starts
+    protected String[] arguments() {
+        return new String[0];
+    }
+
+    /**
+     * Starts with extra command line arguments, for benchmarks that compare configurations
+     */
+    public void start(String... arguments) throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--spring.jpa.show-sql=false",
+                "--spring.devtools.restart.enabled=false",
+                "--logging.level.root=warn"));
+        args.addAll(List.of(arguments));
+        // Command line arguments so they win over application.yaml
+        context = new SpringApplicationBuilder(CustomersApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+        seed();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        context.close();
+        postgres.close();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public CustomerDao customerDao(String backend) {
+        return context.getBean(backend, CustomerDao.class);
+    }
+
+    public int randomCustomerId() {
+        return customerIds[ThreadLocalRandom.current().nextInt(customerIds.length)];
+    }
+
+    public static Customer newCustomer() {
+        return new Customer("bench-" + UUID.randomUUID(), UUID.randomUUID() + "@bench.com", 20 + ThreadLocalRandom.current().nextInt(50));
+    }
+
+    private void seed() {
+        List<Customer> customers = new ArrayList<>(SEEDED_CUSTOMERS);
+        for (int i = 0; i < SEEDED_CUSTOMERS; i++) {
+            customers.add(newCustomer());
+        }
+        bean(CustomerDao.class).insertCustomers(customers);
+        customerIds = bean(JdbcTemplate.class).queryForList("SELECT id FROM customer", Integer.class)
+                .stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The application on one CustomerDao backend. A context only holds the selected backend, so benchmarks that
+     * compare backends get an application, and a database, per backend
+     */
+    @State(Scope.Benchmark)
+    public static class PerBackend extends CustomersApplicationState {
+        @Param({"jdbc", "jpa"})
+        public String backend;
+
+        @Override
+        protected String[] arguments() {
+            return new String[]{"--customers.dao.backend=" + backend};
+        }
+
+        public CustomerDao customerDao() {
+            return customerDao(backend);
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.ag;
 
+import com.ag.config.CustomersRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+// Runs CustomerChangeRelay
+@EnableScheduling
+// For the native image, see CustomersRuntimeHints
+@ImportRuntimeHints(CustomersRuntimeHints.class)
 public class CustomersApplication {
     public static void main(String[] args) {
         SpringApplication.run(CustomersApplication.class, args);
@@ -0,0 +1,95 @@
+package com.ag.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lets at most maxConcurrency callers hold a connection at the same time. With virtual threads the number of
+ * requests is no longer capped by the thread pool, so waiting callers park cheaply on a fair semaphore instead of
+ * piling up inside the connection pool, and fail after acquireTimeout.
+ */
+public class ConcurrencyLimitedDataSource extends DelegatingDataSource {
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+
+    public ConcurrencyLimitedDataSource(DataSource targetDataSource, int maxConcurrency, Duration acquireTimeout) {
+        super(targetDataSource);
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return releaseOnClose(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return releaseOnClose(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Callers parked waiting for a permit. Hikari's pending count stays near zero because they never reach the pool
+     */
+    public int waitingCallers() {
+        return permits.getQueueLength();
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException("No database connection available after %s ms".formatted(acquireTimeout.toMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    private Connection releaseOnClose(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+}
@@ -0,0 +1,74 @@
+package com.ag.config;
+
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.service.CustomerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Times the CustomerDao beans into customers.dao and, in detailed mode, CustomerService into customers.service.
+ * customers.metrics.mode:
+ * detailed - DAO and service timers with p50/p95/p99 computed in the application
+ * low-overhead - DAO timers only, recorded without allocating; Prometheus computes percentiles from the buckets
+ * off - no customer timers
+ */
+@Configuration
+public class CustomerMetricsConfig {
+    static final String SERVICE_NAME = "customers.service";
+    static final String DETAILED = "detailed";
+    static final String LOW_OVERHEAD = "low-overhead";
+    static final String OFF = "off";
+
+    @Bean
+    public static SmartInstantiationAwareBeanPostProcessor customerMetrics(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        String mode = environment.getProperty("customers.metrics.mode", DETAILED);
+        if (!DETAILED.equals(mode) && !LOW_OVERHEAD.equals(mode) && !OFF.equals(mode)) {
+            throw new IllegalArgumentException("Unknown customers.metrics.mode %s".formatted(mode));
+        }
+        boolean detailed = DETAILED.equals(mode);
+        String serviceBackend = environment.getProperty("customers.dao.backend", "jdbc");
+        return new SmartInstantiationAwareBeanPostProcessor() {
+            // Builds the CustomerService proxy class ahead of time: AOT processing keeps it, a native image cannot
+            // generate classes at runtime. The proxy class only depends on the type of the advice, not on its meters
+            @Override
+            public Class<?> determineBeanType(Class<?> beanClass, String beanName) {
+                if (!detailed || !CustomerService.class.isAssignableFrom(beanClass)) {
+                    return beanClass;
+                }
+                ProxyFactory proxyFactory = serviceProxyFactory(new MeteredMethodInterceptor());
+                proxyFactory.setTargetClass(beanClass);
+                return proxyFactory.getProxyClass(beanClass.getClassLoader());
+            }
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (OFF.equals(mode)) {
+                    return bean;
+                }
+                if (bean instanceof CustomerDao customerDao && !(bean instanceof MeteredCustomerDao)) {
+                    // The bean name is the backend: jdbc, jdbc-named, jpa or sharded
+                    return new MeteredCustomerDao(customerDao, meterRegistry.getObject(), beanName, detailed);
+                }
+                if (detailed && bean instanceof CustomerService) {
+                    ProxyFactory proxyFactory = serviceProxyFactory(
+                            new MeteredMethodInterceptor(CustomerService.class, meterRegistry.getObject(), SERVICE_NAME, serviceBackend, true));
+                    proxyFactory.setTarget(bean);
+                    return proxyFactory.getProxy(bean.getClass().getClassLoader());
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static ProxyFactory serviceProxyFactory(MeteredMethodInterceptor interceptor) {
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(interceptor);
+        return proxyFactory;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ag.config;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.service.CustomerService;
+import com.ag.dto.CustomerChange;
+import com.ag.dto.CustomerChangePage;
+import com.ag.dto.CustomerImportRejection;
+import com.ag.dto.CustomerImportResult;
+import com.ag.dto.CustomerListRequest;
+import com.ag.dto.CustomerLookupResult;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerRegistrationResult;
+import com.ag.dto.CustomerUpdateRequest;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.boot.context.properties.bind.BindableRuntimeHintsRegistrar;
+
+import java.sql.Connection;
+
+/**
+ * What a native image needs beyond the hints Spring AOT derives from the bean definitions, the controllers, the
+ * JPA entities and the repositories: everything the application reaches by reflection, proxies or resource scanning
+ * on its own. Checked against the registered hints by CustomersRuntimeHintsTest
+ */
+public class CustomersRuntimeHints implements RuntimeHintsRegistrar {
+    private final BindingReflectionHintsRegistrar bindingHints = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Jackson and the web data binder. The export and import streams and the change feed use Jackson outside of
+        // the controller signatures, and Spring Data builds CustomerView projections through their constructor
+        bindingHints.registerReflectionHints(hints.reflection(),
+                Customer.class, CustomerView.class,
+                CustomerChange.class, CustomerChangePage.class,
+                CustomerImportRejection.class, CustomerImportResult.class,
+                CustomerListRequest.class, CustomerLookupResult.class, CustomerPage.class,
+                CustomerRegistrationRequest.class, CustomerRegistrationResult.class, CustomerUpdateRequest.class);
+        // MeteredMethodInterceptor registers a timer per method CustomerService declares
+        hints.reflection().registerType(CustomerService.class, MemberCategory.INTROSPECT_DECLARED_METHODS);
+        // customers.datasource.replicas and customers.shards, bound by hand rather than as @ConfigurationProperties
+        BindableRuntimeHintsRegistrar.forTypes(ExtraDataSourceProperties.class).registerHints(hints, classLoader);
+        // The connections ConcurrencyLimitedDataSource hands out
+        hints.proxies().registerJdkProxy(Connection.class);
+        // Flyway finds its migrations by listing classpath:db/migration, V10 comes with a .conf file
+        hints.resources().registerPattern("db/migration/*");
+    }
+}
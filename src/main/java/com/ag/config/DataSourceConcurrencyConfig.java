@@ -0,0 +1,56 @@
+package com.ag.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Wraps the DataSource in a ConcurrencyLimitedDataSource sized to the Hikari pool
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.datasource.limit-concurrency", havingValue = "true", matchIfMissing = true)
+public class DataSourceConcurrencyConfig {
+
+    // First of the DataSource decorators, so with read replicas it limits the primary pool only
+    @Bean
+    public static BeanPostProcessor dataSourceConcurrencyLimiter(Environment environment) {
+        int maxConcurrency = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        Duration acquireTimeout = Duration.ofMillis(environment.getProperty("spring.datasource.hikari.connection-timeout", Long.class, 30_000L));
+        return new OrderedBeanPostProcessor(Ordered.HIGHEST_PRECEDENCE) {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConcurrencyLimitedDataSource)) {
+                    return new ConcurrencyLimitedDataSource(dataSource, maxConcurrency, acquireTimeout);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder dataSourceConcurrencyMetrics(DataSource dataSource) throws SQLException {
+        // With read replicas the limiter is wrapped by ReplicaRoutingDataSource, which unwraps through the primary
+        ConcurrencyLimitedDataSource limitedDataSource = dataSource.isWrapperFor(ConcurrencyLimitedDataSource.class)
+                ? dataSource.unwrap(ConcurrencyLimitedDataSource.class)
+                : null;
+        return registry -> {
+            if (limitedDataSource != null) {
+                Gauge.builder("customers.datasource.permits.available", limitedDataSource, ConcurrencyLimitedDataSource::availablePermits)
+                        .description("Connections that can still be taken before callers have to wait")
+                        .register(registry);
+                Gauge.builder("customers.datasource.waiting", limitedDataSource, ConcurrencyLimitedDataSource::waitingCallers)
+                        .description("Callers waiting for a connection")
+                        .register(registry);
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.ag.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.support.JdbcTransactionManager;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * Lets the blocking backends live next to R2DBC. Spring Boot stops configuring a DataSource as soon as an R2DBC
+ * ConnectionFactory exists, and it adds a second transaction manager for R2DBC
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class DataSourceConfig {
+
+    // The jdbc and jpa backends and Flyway, from the usual spring.datasource properties
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // Plain @Transactional means the JDBC/JPA transaction manager. The R2DBC one stays available by name
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "customers.dao.backend", havingValue = "jpa")
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    // The other backends run without JPA, see JpaAutoConfigurationFilter
+    @Bean
+    @Primary
+    @ConditionalOnExpression("'${customers.dao.backend:jdbc}' != 'jpa'")
+    public JdbcTransactionManager jdbcTransactionManager(DataSource dataSource) {
+        return new JdbcTransactionManager(dataSource);
+    }
+}
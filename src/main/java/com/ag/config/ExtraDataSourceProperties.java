@@ -0,0 +1,35 @@
+package com.ag.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+
+/**
+ * A database next to the one of spring.datasource, such as a read replica or a shard. The username and password
+ * default to the spring.datasource ones
+ */
+record ExtraDataSourceProperties(String url, String username, String password) {
+
+    static List<ExtraDataSourceProperties> bindList(Environment environment, String name) {
+        return Binder.get(environment).bind(name, Bindable.listOf(ExtraDataSourceProperties.class)).orElse(List.of());
+    }
+
+    /**
+     * A Hikari pool of its own, sized like the primary pool
+     */
+    HikariDataSource createPool(String poolName, Environment environment) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username != null ? username : environment.getProperty("spring.datasource.username"))
+                .password(password != null ? password : environment.getProperty("spring.datasource.password"))
+                .build();
+        dataSource.setPoolName(poolName);
+        dataSource.setMaximumPoolSize(environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10));
+        return dataSource;
+    }
+}
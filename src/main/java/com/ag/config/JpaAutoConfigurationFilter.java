@@ -0,0 +1,40 @@
+package com.ag.config;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+import java.util.Set;
+
+/**
+ * Leaves out Hibernate and Spring Data JPA unless customers.dao.backend is jpa. The other backends then start without
+ * building the Hibernate metamodel, validating the schema or creating the repository proxies. Registered in
+ * META-INF/spring.factories, since auto-configurations are filtered before any bean exists
+ */
+public class JpaAutoConfigurationFilter implements AutoConfigurationImportFilter, EnvironmentAware {
+    private static final String BACKEND = "customers.dao.backend";
+    private static final String JPA = "jpa";
+    private static final Set<String> JPA_AUTO_CONFIGURATIONS = Set.of(
+            "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration");
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+        boolean enabled = JPA.equals(environment.getProperty(BACKEND));
+        boolean[] matches = new boolean[autoConfigurationClasses.length];
+        for (int i = 0; i < autoConfigurationClasses.length; i++) {
+            // Entries an earlier filter removed are null
+            String candidate = autoConfigurationClasses[i];
+            matches[i] = enabled || candidate == null || !JPA_AUTO_CONFIGURATIONS.contains(candidate);
+        }
+        return matches;
+    }
+}
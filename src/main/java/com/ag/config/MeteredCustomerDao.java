@@ -0,0 +1,238 @@
+package com.ag.config;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerSearchPosition;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Times every CustomerDao call into customers.dao, tagged with the operation and the backend. The meters are
+ * registered when the decorator is built and each method is written out by hand, so a call allocates nothing
+ * beyond what the delegate does
+ */
+public class MeteredCustomerDao implements CustomerDao {
+    static final String NAME = "customers.dao";
+    private final CustomerDao delegate;
+    private final OperationMeters selectAllCustomers;
+    private final OperationMeters selectCustomersAfterId;
+    private final OperationMeters streamAllCustomers;
+    private final OperationMeters selectCustomers;
+    private final OperationMeters selectCustomerById;
+    private final OperationMeters selectCustomersByIds;
+    private final OperationMeters searchCustomers;
+    private final OperationMeters insertCustomer;
+    private final OperationMeters insertCustomers;
+    private final OperationMeters existsPersonWithEmail;
+    private final OperationMeters selectExistingEmails;
+    private final OperationMeters deleteCustomerById;
+    private final OperationMeters existsPersonById;
+    private final OperationMeters updateCustomer;
+
+    public MeteredCustomerDao(CustomerDao delegate, MeterRegistry registry, String backend, boolean clientSidePercentiles) {
+        this.delegate = delegate;
+        this.selectAllCustomers = OperationMeters.register(registry, NAME, "selectAllCustomers", backend, clientSidePercentiles);
+        this.selectCustomersAfterId = OperationMeters.register(registry, NAME, "selectCustomersAfterId", backend, clientSidePercentiles);
+        this.streamAllCustomers = OperationMeters.register(registry, NAME, "streamAllCustomers", backend, clientSidePercentiles);
+        this.selectCustomers = OperationMeters.register(registry, NAME, "selectCustomers", backend, clientSidePercentiles);
+        this.selectCustomerById = OperationMeters.register(registry, NAME, "selectCustomerById", backend, clientSidePercentiles);
+        this.selectCustomersByIds = OperationMeters.register(registry, NAME, "selectCustomersByIds", backend, clientSidePercentiles);
+        this.searchCustomers = OperationMeters.register(registry, NAME, "searchCustomers", backend, clientSidePercentiles);
+        this.insertCustomer = OperationMeters.register(registry, NAME, "insertCustomer", backend, clientSidePercentiles);
+        this.insertCustomers = OperationMeters.register(registry, NAME, "insertCustomers", backend, clientSidePercentiles);
+        this.existsPersonWithEmail = OperationMeters.register(registry, NAME, "existsPersonWithEmail", backend, clientSidePercentiles);
+        this.selectExistingEmails = OperationMeters.register(registry, NAME, "selectExistingEmails", backend, clientSidePercentiles);
+        this.deleteCustomerById = OperationMeters.register(registry, NAME, "deleteCustomerById", backend, clientSidePercentiles);
+        this.existsPersonById = OperationMeters.register(registry, NAME, "existsPersonById", backend, clientSidePercentiles);
+        this.updateCustomer = OperationMeters.register(registry, NAME, "updateCustomer", backend, clientSidePercentiles);
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectAllCustomers();
+        } catch (RuntimeException e) {
+            selectAllCustomers.error();
+            throw e;
+        } finally {
+            selectAllCustomers.record(start);
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomersAfterId(afterId, limit);
+        } catch (RuntimeException e) {
+            selectCustomersAfterId.error();
+            throw e;
+        } finally {
+            selectCustomersAfterId.record(start);
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomers(filter, after, limit);
+        } catch (RuntimeException e) {
+            selectCustomers.error();
+            throw e;
+        } finally {
+            selectCustomers.record(start);
+        }
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        long start = System.nanoTime();
+        try {
+            delegate.streamAllCustomers(consumer);
+        } catch (RuntimeException e) {
+            streamAllCustomers.error();
+            throw e;
+        } finally {
+            streamAllCustomers.record(start);
+        }
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomerById(id);
+        } catch (RuntimeException e) {
+            selectCustomerById.error();
+            throw e;
+        } finally {
+            selectCustomerById.record(start);
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> ids) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomersByIds(ids);
+        } catch (RuntimeException e) {
+            selectCustomersByIds.error();
+            throw e;
+        } finally {
+            selectCustomersByIds.record(start);
+        }
+    }
+
+    @Override
+    public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.searchCustomers(query, after, limit);
+        } catch (RuntimeException e) {
+            searchCustomers.error();
+            throw e;
+        } finally {
+            searchCustomers.record(start);
+        }
+    }
+
+    @Override
+    public boolean insertCustomer(Customer customer) {
+        long start = System.nanoTime();
+        try {
+            return delegate.insertCustomer(customer);
+        } catch (RuntimeException e) {
+            insertCustomer.error();
+            throw e;
+        } finally {
+            insertCustomer.record(start);
+        }
+    }
+
+    @Override
+    public List<Customer> insertCustomers(List<Customer> customers) {
+        long start = System.nanoTime();
+        try {
+            return delegate.insertCustomers(customers);
+        } catch (RuntimeException e) {
+            insertCustomers.error();
+            throw e;
+        } finally {
+            insertCustomers.record(start);
+        }
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        long start = System.nanoTime();
+        try {
+            return delegate.existsPersonWithEmail(email);
+        } catch (RuntimeException e) {
+            existsPersonWithEmail.error();
+            throw e;
+        } finally {
+            existsPersonWithEmail.record(start);
+        }
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectExistingEmails(emails);
+        } catch (RuntimeException e) {
+            selectExistingEmails.error();
+            throw e;
+        } finally {
+            selectExistingEmails.record(start);
+        }
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteCustomerById(id);
+        } catch (RuntimeException e) {
+            deleteCustomerById.error();
+            throw e;
+        } finally {
+            deleteCustomerById.record(start);
+        }
+    }
+
+    @Override
+    public boolean existsPersonById(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.existsPersonById(id);
+        } catch (RuntimeException e) {
+            existsPersonById.error();
+            throw e;
+        } finally {
+            existsPersonById.record(start);
+        }
+    }
+
+    @Override
+    public Optional<Customer> updateCustomer(Customer updatedCustomer) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateCustomer(updatedCustomer);
+        } catch (RuntimeException e) {
+            updateCustomer.error();
+            throw e;
+        } finally {
+            updateCustomer.record(start);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.ag.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer and error counter of one operation, registered up front so recording a call is only a clock read and a few
+ * counter updates
+ */
+final class OperationMeters {
+    private final Timer timer;
+    private final Counter errors;
+
+    private OperationMeters(Timer timer, Counter errors) {
+        this.timer = timer;
+        this.errors = errors;
+    }
+
+    /**
+     * Registers {@code name} timed per operation and backend, and {@code name}.errors counting failed calls.
+     * Client side percentiles are computed in the application, otherwise Prometheus derives them from the buckets
+     */
+    static OperationMeters register(MeterRegistry registry, String name, String operation, String backend, boolean clientSidePercentiles) {
+        Timer.Builder timer = Timer.builder(name)
+                .tag("operation", operation)
+                .tag("backend", backend)
+                .publishPercentileHistogram();
+        if (clientSidePercentiles) {
+            timer.publishPercentiles(0.5, 0.95, 0.99);
+        }
+        Counter errors = Counter.builder(name + ".errors")
+                .tag("operation", operation)
+                .tag("backend", backend)
+                .register(registry);
+        return new OperationMeters(timer.register(registry), errors);
+    }
+
+    void record(long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void error() {
+        errors.increment();
+    }
+}
@@ -0,0 +1,20 @@
+package com.ag.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+
+/**
+ * A BeanPostProcessor with a fixed order, for decorators that must wrap the same bean in a set order
+ */
+abstract class OrderedBeanPostProcessor implements BeanPostProcessor, Ordered {
+    private final int order;
+
+    OrderedBeanPostProcessor(int order) {
+        this.order = order;
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ag.config;
+
+import org.springframework.boot.autoconfigure.AutoConfigurationImportFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationMetadata;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+
+import java.util.Set;
+
+/**
+ * Leaves out the R2DBC connection factory, its transaction manager and Spring Data R2DBC unless
+ * spring.main.web-application-type is reactive. Only the WebFlux variant reads through R2DBC, the servlet one would
+ * otherwise keep a second pool of connections open next to Hikari, outside the limit of ConcurrencyLimitedDataSource.
+ * Registered in META-INF/spring.factories like {@link JpaAutoConfigurationFilter}
+ */
+public class R2dbcAutoConfigurationFilter implements AutoConfigurationImportFilter, EnvironmentAware {
+    private static final String WEB_APPLICATION_TYPE = "spring.main.web-application-type";
+    private static final String REACTIVE = "reactive";
+    private static final Set<String> R2DBC_AUTO_CONFIGURATIONS = Set.of(
+            "org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration",
+            "org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration");
+
+    private Environment environment;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public boolean[] match(String[] autoConfigurationClasses, AutoConfigurationMetadata autoConfigurationMetadata) {
+        boolean enabled = REACTIVE.equalsIgnoreCase(environment.getProperty(WEB_APPLICATION_TYPE));
+        boolean[] matches = new boolean[autoConfigurationClasses.length];
+        for (int i = 0; i < autoConfigurationClasses.length; i++) {
+            // Entries an earlier filter removed are null
+            String candidate = autoConfigurationClasses[i];
+            matches[i] = enabled || candidate == null || !R2DBC_AUTO_CONFIGURATIONS.contains(candidate);
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ag.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.tcp.TcpResources;
+
+/**
+ * Serves the reactive variant from Netty. Spring Boot would pick Tomcat because the servlet stack is on the classpath
+ * too. The server runs on the same event loop as the R2DBC driver, so HTTP and database I/O share one small pool of
+ * threads (reactor.netty.ioWorkerCount, one per core and at least four by default)
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        factory.addServerCustomizers(httpServer -> httpServer.runOn(TcpResources.get()));
+        return factory;
+    }
+}
@@ -0,0 +1,143 @@
+package com.ag.config;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Decides per thread whether the connection being opened may come from a read replica. Only queries run through
+ * {@link #read} may, everything else goes to the primary. For the read-your-writes window after a write, the
+ * caller that wrote and every read of a customer written reads from the primary again: a replica that lags behind
+ * can then neither show a caller its own write undone nor put the old customer back into the cache. Work a request
+ * hands to another thread takes its caller along through {@link #propagate}
+ */
+public class ReadRouting {
+    // Written ids are swept once there are more than this
+    private static final int SWEEP_THRESHOLD = 1024;
+    private final Duration window;
+    private final Clock clock;
+    private final ThreadLocal<Boolean> reading = ThreadLocal.withInitial(() -> false);
+    private final ThreadLocal<Caller> caller = ThreadLocal.withInitial(() -> new Caller(0, null));
+    // Customer id to the epoch milli its reads may leave the primary again
+    private final Map<Integer, Long> writtenUntil = new ConcurrentHashMap<>();
+
+    public ReadRouting(Duration window) {
+        this(window, Clock.systemUTC());
+    }
+
+    ReadRouting(Duration window, Clock clock) {
+        this.window = window;
+        this.clock = clock;
+    }
+
+    public Duration window() {
+        return window;
+    }
+
+    /**
+     * Runs query allowing a replica, unless the caller wrote within the window
+     */
+    public <T> T read(Supplier<T> query) {
+        boolean outer = reading.get();
+        reading.set(true);
+        try {
+            return query.get();
+        } finally {
+            reading.set(outer);
+        }
+    }
+
+    /**
+     * Runs query on the primary when any of ids was written within the window, otherwise as {@link #read(Supplier)}
+     */
+    public <T> T read(Collection<Integer> ids, Supplier<T> query) {
+        long now = clock.millis();
+        for (Integer id : ids) {
+            Long until = id == null ? null : writtenUntil.get(id);
+            if (until != null && until > now) {
+                return query.get();
+            }
+        }
+        return read(query);
+    }
+
+    /**
+     * True when the connection opened now may come from a replica
+     */
+    public boolean replicaAllowed() {
+        return reading.get() && caller.get().primaryUntil <= clock.millis();
+    }
+
+    /**
+     * True when the caller of the current thread wrote within the window and reads from the primary
+     */
+    public boolean callerOnPrimary() {
+        return caller.get().primaryUntil > clock.millis();
+    }
+
+    /**
+     * The caller wrote, possibly the customers with ids: both read from the primary for the window
+     */
+    public void wrote(Collection<Integer> ids) {
+        long until = clock.millis() + window.toMillis();
+        for (Integer id : ids) {
+            if (id != null) {
+                writtenUntil.merge(id, until, Math::max);
+            }
+        }
+        if (writtenUntil.size() > SWEEP_THRESHOLD) {
+            long now = clock.millis();
+            writtenUntil.values().removeIf(expiry -> expiry <= now);
+        }
+        Caller current = caller.get();
+        current.primaryUntil = until;
+        if (current.onWrite != null) {
+            current.onWrite.accept(until);
+        }
+    }
+
+    /**
+     * Makes the current thread act for a caller known from an earlier request: it reads from the primary until
+     * primaryUntil (epoch millis), and onWrite is told the new deadline after every write. The deadline comes from
+     * the client, so it is held to at most one window from now: a forged one can't pin the caller to the primary
+     */
+    public void bindCaller(long primaryUntil, LongConsumer onWrite) {
+        caller.set(new Caller(Math.min(primaryUntil, clock.millis() + window.toMillis()), onWrite));
+    }
+
+    public void unbindCaller() {
+        caller.remove();
+    }
+
+    /**
+     * Wraps task so it runs for the caller of the current thread, on whatever thread runs it. A write of the task
+     * extends the window of that caller
+     */
+    public Runnable propagate(Runnable task) {
+        Caller current = caller.get();
+        return () -> {
+            Caller previous = caller.get();
+            caller.set(current);
+            try {
+                task.run();
+            } finally {
+                caller.set(previous);
+            }
+        };
+    }
+
+    private static final class Caller {
+        // Shared with the threads the caller's work is propagated to
+        private volatile long primaryUntil;
+        private final LongConsumer onWrite;
+
+        private Caller(long primaryUntil, LongConsumer onWrite) {
+            this.primaryUntil = primaryUntil;
+            this.onWrite = onWrite;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.ag.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Carries the read-your-writes window of a client from request to request in a cookie, so the client's reads stay
+ * on the primary after its write even when they reach another thread or another instance. The cookie holds the
+ * epoch milli the window ends and is set while the write runs, before the response is committed. A value that isn't
+ * a number is ignored, and {@link ReadRouting#bindCaller} caps any other at one window from now
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    static final String COOKIE = "customers-primary-until";
+    private final ReadRouting readRouting;
+
+    public ReadYourWritesFilter(ReadRouting readRouting) {
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean[] cookieSet = {false};
+        readRouting.bindCaller(primaryUntil(request), until -> {
+            if (!cookieSet[0] && !response.isCommitted()) {
+                response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(COOKIE, Long.toString(until))
+                        .maxAge(readRouting.window())
+                        .path("/")
+                        .httpOnly(true)
+                        .build()
+                        .toString());
+                cookieSet[0] = true;
+            }
+        });
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            readRouting.unbindCaller();
+        }
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE.equals(cookie.getName())) {
+                    try {
+                        return Long.parseLong(cookie.getValue());
+                    } catch (NumberFormatException e) {
+                        // Not ours, the client reads from replicas
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+}
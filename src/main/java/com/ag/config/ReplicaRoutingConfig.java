@@ -0,0 +1,108 @@
+package com.ag.config;
+
+import com.ag.customer.repository.CustomerDao;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends CustomerDao reads to read replicas, listed as customers.datasource.replicas[n].url with an optional username
+ * and password (the primary's by default). Each replica gets its own Hikari pool sized like the primary's. Exports
+ * read from a replica as well. Writes, Flyway and the import and change feed queries stay on the primary
+ */
+@Configuration
+@ConditionalOnProperty("customers.datasource.replicas[0].url")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    public static ReadRouting readRouting(Environment environment) {
+        return new ReadRouting(environment.getProperty("customers.datasource.read-your-writes-window", Duration.class, Duration.ofSeconds(5)));
+    }
+
+    /**
+     * Wraps the DataSource after the concurrency limiter, whose permits then only count primary connections, and
+     * wraps every CustomerDao outside its transactional proxy, so the route is decided before a transaction takes
+     * its connection
+     */
+    @Bean
+    public static BeanPostProcessor replicaRouting(Environment environment, ReadRouting readRouting) {
+        Duration maxLag = environment.getProperty("customers.datasource.replica-max-lag", Duration.class, Duration.ofSeconds(1));
+        return new OrderedBeanPostProcessor(Ordered.LOWEST_PRECEDENCE) {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ReplicaRoutingDataSource)) {
+                    return new ReplicaRoutingDataSource(dataSource, replicas(environment), readRouting, maxLag);
+                }
+                if (bean instanceof CustomerDao customerDao && !(bean instanceof ReplicaRoutingCustomerDao)) {
+                    return new ReplicaRoutingCustomerDao(customerDao, readRouting);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public SchedulingConfigurer replicaHealthCheck(DataSource dataSource, Environment environment) throws SQLException {
+        ReplicaRoutingDataSource routingDataSource = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        Duration interval = environment.getProperty("customers.datasource.replica-check-interval", Duration.class, Duration.ofSeconds(1));
+        return taskRegistrar -> taskRegistrar.addFixedDelayTask(routingDataSource::checkReplicas, interval);
+    }
+
+    // Spring closes the primary pool it created, the replica pools are closed here
+    @Bean
+    public DisposableBean replicaPools(DataSource dataSource) throws SQLException {
+        return dataSource.unwrap(ReplicaRoutingDataSource.class)::close;
+    }
+
+    @Bean
+    public MeterBinder replicaRoutingMetrics(DataSource dataSource) throws SQLException {
+        ReplicaRoutingDataSource routingDataSource = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        return registry -> Gauge.builder("customers.datasource.replicas.healthy", routingDataSource, routing -> routing.healthyReplicas().size())
+                .description("Read replicas that currently take reads")
+                .register(registry);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public ReadYourWritesFilter readYourWritesFilter(ReadRouting readRouting) {
+        return new ReadYourWritesFilter(readRouting);
+    }
+
+    /**
+     * Applied by Spring Boot to the applicationTaskExecutor, which also runs the StreamingResponseBody of Spring MVC:
+     * a streamed response reads for the caller of its request, not from a replica right after the caller's write
+     */
+    @Bean
+    public TaskDecorator readRoutingTaskDecorator(ReadRouting readRouting) {
+        return readRouting::propagate;
+    }
+
+    private static Map<String, DataSource> replicas(Environment environment) {
+        List<ExtraDataSourceProperties> replicas = ExtraDataSourceProperties.bindList(environment, "customers.datasource.replicas");
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            String name = "replica-" + i;
+            HikariDataSource dataSource = replicas.get(i).createPool(name, environment);
+            dataSource.setReadOnly(true);
+            dataSources.put(name, dataSource);
+        }
+        return dataSources;
+    }
+}
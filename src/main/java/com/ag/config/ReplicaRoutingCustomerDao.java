@@ -0,0 +1,118 @@
+package com.ag.config;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerSearchPosition;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Marks the CustomerDao reads that may run on a read replica and reports writes to {@link ReadRouting}, the same
+ * way for every backend. The existence checks stay on the primary: they decide whether a write goes ahead, and a
+ * lagging replica would let a taken email through to a failing insert
+ */
+public class ReplicaRoutingCustomerDao implements CustomerDao {
+    private final CustomerDao delegate;
+    private final ReadRouting readRouting;
+
+    public ReplicaRoutingCustomerDao(CustomerDao delegate, ReadRouting readRouting) {
+        this.delegate = delegate;
+        this.readRouting = readRouting;
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return readRouting.read(delegate::selectAllCustomers);
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        return readRouting.read(() -> delegate.selectCustomersAfterId(afterId, limit));
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) {
+        return readRouting.read(() -> delegate.selectCustomers(filter, after, limit));
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        readRouting.read(() -> {
+            delegate.streamAllCustomers(consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        return readRouting.read(Collections.singletonList(id), () -> delegate.selectCustomerById(id));
+    }
+
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> ids) {
+        return readRouting.read(ids, () -> delegate.selectCustomersByIds(ids));
+    }
+
+    @Override
+    public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) {
+        return readRouting.read(() -> delegate.searchCustomers(query, after, limit));
+    }
+
+    @Override
+    public boolean insertCustomer(Customer customer) {
+        try {
+            return delegate.insertCustomer(customer);
+        } finally {
+            readRouting.wrote(Collections.singletonList(customer.getId()));
+        }
+    }
+
+    @Override
+    public List<Customer> insertCustomers(List<Customer> customers) {
+        try {
+            return delegate.insertCustomers(customers);
+        } finally {
+            readRouting.wrote(customers.stream().map(Customer::getId).toList());
+        }
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        return delegate.existsPersonWithEmail(email);
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return delegate.selectExistingEmails(emails);
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer id) {
+        try {
+            return delegate.deleteCustomerById(id);
+        } finally {
+            readRouting.wrote(Collections.singletonList(id));
+        }
+    }
+
+    @Override
+    public boolean existsPersonById(Integer id) {
+        return delegate.existsPersonById(id);
+    }
+
+    @Override
+    public Optional<Customer> updateCustomer(Customer updatedCustomer) {
+        try {
+            return delegate.updateCustomer(updatedCustomer);
+        } finally {
+            readRouting.wrote(Collections.singletonList(updatedCustomer.getId()));
+        }
+    }
+}
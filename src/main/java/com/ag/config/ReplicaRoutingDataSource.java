@@ -0,0 +1,125 @@
+package com.ag.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections to the primary, or round robin to the healthy read replicas when {@link ReadRouting} allows
+ * it. A replica is healthy while its last check connected and found it at most maxLag behind the primary. Until
+ * the first check, and whenever no replica is healthy, reads go to the primary as well. A connection already bound
+ * to a transaction is reused whatever it routes to, so reads inside a write transaction stay on the primary
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    static final String PRIMARY = "primary";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+    // Replay lag in seconds. A standby that replayed all it received is current even when the primary is idle and
+    // the last replayed transaction is old. Not being a standby at all, as a stand-in in development, counts as current
+    private static final String LAG_SQL = """
+            SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE coalesce(extract(epoch FROM now() - pg_last_xact_replay_timestamp()), 0) END;
+            """;
+    private static final int CHECK_TIMEOUT_SECONDS = 2;
+    private final ReadRouting readRouting;
+    private final Map<String, DataSource> replicas;
+    private final Duration maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<String> healthy = List.of();
+
+    /**
+     * replicas by name, in the order they are balanced over
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, ReadRouting readRouting, Duration maxLag) {
+        this.readRouting = readRouting;
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.maxLag = maxLag;
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!readRouting.replicaAllowed()) {
+            return PRIMARY;
+        }
+        List<String> candidates = healthy;
+        if (candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    /**
+     * Checks every replica and balances reads over those that pass from now on
+     */
+    public void checkReplicas() {
+        List<String> passed = new ArrayList<>(replicas.size());
+        replicas.forEach((name, replica) -> {
+            String problem = check(replica);
+            boolean wasHealthy = healthy.contains(name);
+            if (problem == null) {
+                passed.add(name);
+                if (!wasHealthy) {
+                    LOGGER.info("Read replica {} is healthy, reads go to it", name);
+                }
+            } else if (wasHealthy) {
+                LOGGER.warn("Read replica {} is unhealthy, reads skip it: {}", name, problem);
+            }
+        });
+        healthy = List.copyOf(passed);
+    }
+
+    /**
+     * The replicas reads currently go to
+     */
+    public List<String> healthyReplicas() {
+        return healthy;
+    }
+
+    /**
+     * Closes the replica pools. The primary belongs to the application context
+     */
+    @Override
+    public void close() throws Exception {
+        for (DataSource replica : replicas.values()) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * Why the replica can't take reads, null when it can
+     */
+    private String check(DataSource replica) {
+        try (Connection connection = replica.getConnection(); Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(CHECK_TIMEOUT_SECONDS);
+            try (ResultSet resultSet = statement.executeQuery(LAG_SQL)) {
+                resultSet.next();
+                double lagSeconds = resultSet.getDouble(1);
+                if (lagSeconds * 1000 > maxLag.toMillis()) {
+                    return "%.1f s behind the primary".formatted(lagSeconds);
+                }
+                return null;
+            }
+        } catch (SQLException | RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.ag.config;
+
+import com.ag.customer.repository.CustomerShards;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shards of the sharded backend, only set up when it is selected (customers.dao.backend: sharded). Listed as
+ * customers.shards[n].url with an optional username and password (the primary's by default). Every shard gets its own
+ * Hikari pool sized like the primary's and the Flyway migrations of the main database, followed by
+ * {@link V12_1__Shard_Without_Main_Database_Tables}. The main database keeps the id sequence, the email directory
+ * (customer_email) and the change outbox. The list is the shard order: shards are only ever appended, since removing or reordering one
+ * moves its customers
+ */
+@Configuration
+@ConditionalOnProperty(name = "customers.dao.backend", havingValue = "sharded")
+public class ShardingConfig {
+
+    // The pools are not DataSource beans, so Spring's DataSource and the decorators only ever see the main database.
+    // The shards migrate with the spring.flyway settings of the main database, and in a native image with the
+    // resource provider Spring Boot gives Flyway there, since classpath scanning does not work in one
+    @Bean
+    public CustomerShards customerShards(Environment environment, ObjectProvider<Flyway> flyway) {
+        List<ExtraDataSourceProperties> shards = ExtraDataSourceProperties.bindList(environment, "customers.shards");
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("customers.dao.backend sharded needs the shards listed in customers.shards");
+        }
+        List<HikariDataSource> dataSources = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            HikariDataSource dataSource = shards.get(i).createPool("shard-" + i, environment);
+            FluentConfiguration configuration = Flyway.configure();
+            flyway.ifAvailable(main -> configuration.configuration(main.getConfiguration()));
+            configuration.javaMigrations(new V12_1__Shard_Without_Main_Database_Tables()).dataSource(dataSource).load().migrate();
+            dataSources.add(dataSource);
+        }
+        return new CustomerShards(dataSources);
+    }
+}
@@ -0,0 +1,29 @@
+package com.ag.config;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Statement;
+
+/**
+ * Run on the shards only, after the migrations they share with the main database. A shard just holds customer rows:
+ * the change outbox and customer_email belong to the main database, which relays the one and keeps the other as the
+ * email directory of every shard. Left on a shard, the outbox trigger would fill a customer_change nothing ever relays
+ * or prunes. A Java migration rather than a shard-only SQL location, so it needs no classpath listing in a native image
+ */
+public class V12_1__Shard_Without_Main_Database_Tables extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("""
+                    DROP TRIGGER customer_change_trigger ON customer;
+                    DROP FUNCTION record_customer_change();
+                    DROP TABLE customer_change;
+                    DROP TRIGGER customer_email_trigger ON customer;
+                    DROP FUNCTION keep_customer_email();
+                    DROP TABLE customer_email;
+                    """);
+        }
+    }
+}
@@ -7,7 +7,8 @@ import java.util.Objects;
 @Entity
 public class Customer {
     @Id
-    @SequenceGenerator(name = "customer_id_seq", sequenceName = "customer_id_seq", allocationSize = 1)
+    // Must match INCREMENT BY of customer_id_seq (V3 migration). Hibernate reserves a block of ids per nextval
+    @SequenceGenerator(name = "customer_id_seq", sequenceName = "customer_id_seq", allocationSize = 50)
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_id_seq")
     private Integer id;
     @Column(nullable = false)
@@ -16,6 +17,10 @@ public class Customer {
     private String email;
     @Column(nullable = false)
     private Integer age;
+    // Bumped by every update. Left out of equals, two reads of the same data are equal whatever their version
+    @Version
+    @Column(nullable = false)
+    private Long version;
 
     public Customer() {}
 
@@ -26,6 +31,11 @@ public class Customer {
         this.age = age;
     }
 
+    public Customer(Integer id, String name, String email, Integer age, Long version) {
+        this(id, name, email, age);
+        this.version = version;
+    }
+
     public Customer(String name, String email, Integer age) {
         this.name = name;
         this.email = email;
@@ -64,6 +74,14 @@ public class Customer {
         this.age = age;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -84,6 +102,7 @@ public class Customer {
                 ", name='" + name + '\'' +
                 ", email='" + email + '\'' +
                 ", age=" + age +
+                ", version=" + version +
                 '}';
     }
 }
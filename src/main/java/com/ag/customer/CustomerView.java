@@ -0,0 +1,8 @@
+package com.ag.customer;
+
+/**
+ * Read only customer for responses that never write back, such as the stream of every customer. Unlike the
+ * {@link Customer} entity it holds its numbers as primitives, so a row costs one object plus its strings
+ */
+public record CustomerView(int id, String name, String email, int age) {
+}
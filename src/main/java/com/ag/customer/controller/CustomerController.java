@@ -1,33 +1,164 @@
 package com.ag.customer.controller;
 
+import com.ag.customer.service.CustomerChangeService;
+import com.ag.customer.service.CustomerExportService;
+import com.ag.customer.service.CustomerFileFormat;
+import com.ag.customer.service.CustomerImportService;
 import com.ag.customer.service.CustomerService;
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.dto.CustomerChangePage;
+import com.ag.dto.CustomerImportResult;
+import com.ag.dto.CustomerListRequest;
+import com.ag.dto.CustomerLookupResult;
+import com.ag.dto.CustomerPage;
 import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerRegistrationResult;
 import com.ag.dto.CustomerUpdateRequest;
+import com.ag.exceptions.PreconditionFailedException;
+import com.ag.exceptions.RequestValidationException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * The controller will send data down to the service
  */
 @RestController
 @RequestMapping("api/v1/customers")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class CustomerController {
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    // The change feed position of a snapshot export, to continue from with GET changes?since=
+    private static final String CHANGES_SINCE_HEADER = "Customer-Changes-Since";
     private final CustomerService customerService;
+    private final CustomerChangeService customerChangeService;
+    private final CustomerImportService customerImportService;
+    private final CustomerExportService customerExportService;
+    private final ObjectWriter customerWriter;
 
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(CustomerService customerService,
+                              CustomerChangeService customerChangeService,
+                              CustomerImportService customerImportService,
+                              CustomerExportService customerExportService,
+                              ObjectMapper objectMapper) {
         this.customerService = customerService;
+        this.customerChangeService = customerChangeService;
+        this.customerImportService = customerImportService;
+        this.customerExportService = customerExportService;
+        // The writer must not close the response stream after every customer
+        this.customerWriter = objectMapper.writerFor(CustomerView.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
+    /**
+     * Filters and sort come from the query string: minAge, maxAge, name (a prefix), sort and direction
+     */
     @GetMapping
-    public List<Customer> getCustomers() {
-        return customerService.getAllCustomers();
+    public CustomerPage getCustomers(CustomerListRequest filters,
+                                     @RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "limit", required = false) Integer limit) {
+        return customerService.getCustomersPage(filters, cursor, limit);
     }
 
+    @GetMapping("search")
+    public CustomerPage searchCustomers(@RequestParam("q") String query,
+                                        @RequestParam(value = "cursor", required = false) String cursor,
+                                        @RequestParam(value = "limit", required = false) Integer limit) {
+        return customerService.searchCustomers(query, cursor, limit);
+    }
+
+    /**
+     * Streams every customer as newline delimited JSON while the rows are read, so memory does not grow with the table
+     */
+    @GetMapping("stream")
+    public ResponseEntity<StreamingResponseBody> streamCustomers() {
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream);
+            customerService.streamAllCustomers(customer -> {
+                try {
+                    customerWriter.writeValue(out, customer);
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Every customer as format csv or ndjson, copied from the database to the response while it is read, gzipped
+     * when the client accepts it. With snapshot=true the export reads one REPEATABLE READ snapshot and the
+     * Customer-Changes-Since header tells where to follow the change feed from, so the export can seed a mirror.
+     * An export that fails midway ends the connection without the end of the body, so it can't pass for complete
+     */
+    @GetMapping("export")
+    public void exportCustomers(@RequestParam("format") String format,
+                                @RequestParam(value = "snapshot", defaultValue = "false") boolean snapshot,
+                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                HttpServletResponse response) {
+        CustomerFileFormat fileFormat = CustomerFileFormat.ofName(format);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        // Headers are set once the export has its snapshot, the body follows right after
+        customerExportService.exportCustomers(fileFormat, snapshot, changesSince -> {
+            response.setContentType(fileFormat.mediaType());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename("customers." + fileFormat.name().toLowerCase(Locale.ROOT)).build().toString());
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (changesSince != null) {
+                response.setHeader(CHANGES_SINCE_HEADER, changesSince.toString());
+            }
+            if (!gzip) {
+                return response.getOutputStream();
+            }
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return CustomerExportService.gzip(response.getOutputStream());
+        });
+    }
+
+    /**
+     * Customer writes after position since, for mirrors that sync incrementally. Waits for the next changes when
+     * there are none yet; pass the returned next as since to resume
+     */
+    @GetMapping("changes")
+    public CustomerChangePage getChanges(@RequestParam(value = "since", required = false) Long since,
+                                         @RequestParam(value = "limit", required = false) Integer limit) {
+        return customerChangeService.getChanges(since, limit);
+    }
+
+    /**
+     * Many customers by id in one round trip, for callers that would otherwise ask for them one by one
+     */
+    @PostMapping("lookup")
+    public CustomerLookupResult lookupCustomers(@RequestBody List<Integer> ids) {
+        return customerService.lookupCustomers(ids);
+    }
+
+    /**
+     * The version of the customer is its ETag. Spring answers a matching If-None-Match with 304 before the body
+     * is written, so an unchanged customer costs no serialization
+     */
     @GetMapping("{id}")
-    public Customer getCustomerById(@PathVariable("id") Integer id) {
-        return customerService.getCustomerById(id);
+    public ResponseEntity<Customer> getCustomerById(@PathVariable("id") Integer id) {
+        Customer customer = customerService.getCustomerById(id);
+        return ResponseEntity.ok().eTag(eTag(customer)).body(customer);
     }
 
     @PostMapping
@@ -35,13 +166,76 @@ public class CustomerController {
         customerService.addCustomer(customerRegistrationRequest);
     }
 
+    /**
+     * Bulk import of a CSV or NDJSON body, read while it is uploaded. Invalid rows and taken emails are reported,
+     * the other rows are stored
+     */
+    @PostMapping(value = "import", consumes = {CustomerFileFormat.CSV_MEDIA_TYPE, CustomerFileFormat.NDJSON_MEDIA_TYPE})
+    public CustomerImportResult importCustomers(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+        return customerImportService.importCustomers(body, CustomerFileFormat.of(contentType));
+    }
+
+    @PostMapping("batch")
+    public List<CustomerRegistrationResult> registerCustomers(@RequestBody List<CustomerRegistrationRequest> customerRegistrationRequests) {
+        return customerService.addCustomers(customerRegistrationRequests);
+    }
+
    @DeleteMapping("{id}")
     public void deleteCustomer(@PathVariable("id") Integer id) {
         customerService.deleteCustomerById(id);
    }
 
+    /**
+     * With If-Match the update only applies while the customer still has that ETag, 412 otherwise.
+     * The response carries the ETag of the updated customer
+     */
    @PutMapping("{id}")
-    public void updateCustomerInformation(@PathVariable("id") Integer id,  @RequestBody CustomerUpdateRequest updateCustomerRequest) {
-        customerService.updateCustomer(id, updateCustomerRequest);
+    public ResponseEntity<Void> updateCustomerInformation(@PathVariable("id") Integer id,
+                                                          @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                          @RequestBody CustomerUpdateRequest updateCustomerRequest) {
+        Customer updated = customerService.updateCustomer(id, updateCustomerRequest, expectedVersion(ifMatch));
+        return ResponseEntity.ok().eTag(eTag(updated)).build();
    }
+
+    /**
+     * True when Accept-Encoding lists gzip without q=0
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].strip().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static String eTag(Customer customer) {
+        return "\"%s\"".formatted(customer.getVersion());
+    }
+
+    /**
+     * The version an If-Match header asks for, null when there is none or it is *. If-Match compares strongly, so
+     * a weak ETag never matches
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.strip().equals("*")) {
+            return null;
+        }
+        String eTag = ifMatch.strip();
+        if (eTag.startsWith("W/")) {
+            throw new PreconditionFailedException("If-Match needs a strong ETag, got %s".formatted(eTag));
+        }
+        if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            try {
+                return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+            } catch (NumberFormatException e) {
+                // Not one of ours, reported below
+            }
+        }
+        throw new RequestValidationException("If-Match must be one ETag of the customer like \"3\", got %s".formatted(eTag));
+    }
 }
@@ -0,0 +1,61 @@
+package com.ag.customer.controller;
+
+import com.ag.customer.Customer;
+import com.ag.customer.service.ReactiveCustomerService;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerUpdateRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux version of {@link CustomerController}, active when spring.main.web-application-type is reactive.
+ * Requests are served by the Netty event loop and the R2DBC backend, so no thread waits on the database
+ */
+@RestController
+@RequestMapping("api/v1/customers")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerController {
+    private final ReactiveCustomerService customerService;
+
+    public ReactiveCustomerController(ReactiveCustomerService customerService) {
+        this.customerService = customerService;
+    }
+
+    @GetMapping
+    public Mono<CustomerPage> getCustomers(@RequestParam(value = "cursor", required = false) String cursor,
+                                           @RequestParam(value = "limit", required = false) Integer limit) {
+        return customerService.getCustomersPage(cursor, limit);
+    }
+
+    /**
+     * Streams every customer as newline delimited JSON. Rows are only read as fast as the client takes them
+     */
+    @GetMapping(value = "stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Customer> streamCustomers() {
+        return customerService.streamAllCustomers();
+    }
+
+    @GetMapping("{id}")
+    public Mono<Customer> getCustomerById(@PathVariable("id") Integer id) {
+        return customerService.getCustomerById(id);
+    }
+
+    @PostMapping
+    public Mono<Void> registerCustomer(@RequestBody CustomerRegistrationRequest customerRegistrationRequest) {
+        return customerService.addCustomer(customerRegistrationRequest);
+    }
+
+    @DeleteMapping("{id}")
+    public Mono<Void> deleteCustomer(@PathVariable("id") Integer id) {
+        return customerService.deleteCustomerById(id);
+    }
+
+    @PutMapping("{id}")
+    public Mono<Void> updateCustomerInformation(@PathVariable("id") Integer id, @RequestBody CustomerUpdateRequest updateCustomerRequest) {
+        return customerService.updateCustomer(id, updateCustomerRequest).then();
+    }
+}
@@ -1,19 +1,69 @@
 package com.ag.customer.repository;
 
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * This interface will be responsible for accessing the database store
  */
 public interface CustomerDao {
     List<Customer> selectAllCustomers();
+    /**
+     * Keyset page: at most {@code limit} customers with an id greater than {@code afterId}, ordered by id
+     */
+    List<Customer> selectCustomersAfterId(Integer afterId, int limit);
+    /**
+     * Keyset page of the customers matching filter, in its order: at most {@code limit} customers that come after
+     * {@code after}, the last customer of the previous page (null for the first page)
+     */
+    List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit);
+    /**
+     * Hands every customer to the consumer in id order without holding the whole table in memory
+     */
+    void streamAllCustomers(Consumer<CustomerView> consumer);
     Optional<Customer> selectCustomerById(Integer id);
-    void insertCustomer(Customer customer);
+    /**
+     * The customers with the given ids, in no particular order, read with one query. Unknown ids are left out
+     */
+    List<Customer> selectCustomersByIds(Collection<Integer> ids);
+    /**
+     * Customers whose name or email contains query, ignoring case. Those whose name starts with it rank first,
+     * then those whose email does. Returns at most limit results that come after the position {@code after}
+     * of the last result of the previous page (null for the first page)
+     */
+    List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit);
+    /**
+     * Inserts the customer and sets its id. Returns false, without inserting, when the email is already taken.
+     * The unique emails of customer_email decide, so concurrent registrations of one email can't both succeed
+     */
+    boolean insertCustomer(Customer customer);
+    /**
+     * Inserts the customers in batches and returns those that were saved, with their ids set. A customer whose email
+     * is taken by the time its batch runs is skipped instead of failing the others. Apart from those, either every
+     * customer is saved or none is
+     */
+    List<Customer> insertCustomers(List<Customer> customers);
     boolean existsPersonWithEmail(String email);
-    void deleteCustomerById(Integer id);
+    /**
+     * Returns the subset of the given emails that already belong to a customer, using one query
+     */
+    Set<String> selectExistingEmails(Collection<String> emails);
+    /**
+     * Returns false when there was no customer with that id
+     */
+    boolean deleteCustomerById(Integer id);
     boolean existsPersonById(Integer id);
-    void updateCustomer(Customer updatedCustomer);
+    /**
+     * Sets the non-null fields of updatedCustomer on the customer with the same id, in one atomic write that bumps
+     * the version. A non-null version of updatedCustomer is the version the customer must still have.
+     * Returns the stored customer after the update, or empty when there is no such customer, its version differs
+     * or nothing would change
+     */
+    Optional<Customer> updateCustomer(Customer updatedCustomer);
 }
@@ -0,0 +1,19 @@
+package com.ag.customer.repository;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Filters and order of a customer listing. Null age bounds and a null name prefix don't filter.
+ * Names match the prefix ignoring case. Without a sort, a listing filtered by age is sorted by age and one filtered
+ * by name by name, so the index of the sort seeks with the filter
+ */
+public record CustomerFilter(Integer minAge, Integer maxAge, String namePrefix, CustomerSort sort, Sort.Direction direction) {
+    public static final CustomerFilter NONE = new CustomerFilter(null, null, null, CustomerSort.ID, Sort.Direction.ASC);
+
+    public CustomerFilter {
+        if (sort == null) {
+            sort = minAge != null || maxAge != null ? CustomerSort.AGE : namePrefix != null ? CustomerSort.NAME : CustomerSort.ID;
+        }
+        direction = direction == null ? Sort.Direction.ASC : direction;
+    }
+}
@@ -0,0 +1,113 @@
+package com.ag.customer.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out customer ids from blocks reserved with a single nextval('customer_id_seq') call, so inserts don't pay a
+ * sequence round trip per row. It reads blocks the same way as Hibernate's optimizer (pooled-lo or pooled), which
+ * lets the JDBC and JPA backends share the sequence without ever handing out the same id twice. The lock is never
+ * held across a query: a caller waiting on it may hold a pooled connection, and the query would wait for one.
+ */
+@Component
+public class CustomerIdAllocator {
+    public static final String POOLED = "pooled";
+    public static final String POOLED_LO = "pooled-lo";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String optimizer;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Blocks reserved by callers that found the current block already refilled, used before reserving another
+    private final Deque<long[]> spareBlocks = new ArrayDeque<>();
+    private volatile int blockSize;
+    private long next;
+    private long last = -1;
+
+    public CustomerIdAllocator(JdbcTemplate jdbcTemplate,
+                               @Value("${spring.jpa.properties.hibernate.id.optimizer.pooled.preferred:pooled-lo}") String optimizer) {
+        if (!POOLED.equals(optimizer) && !POOLED_LO.equals(optimizer)) {
+            throw new IllegalArgumentException("Unsupported id optimizer %s".formatted(optimizer));
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.optimizer = optimizer;
+    }
+
+    public int nextId() {
+        while (true) {
+            lock.lock();
+            try {
+                if (next > last && !spareBlocks.isEmpty()) {
+                    long[] block = spareBlocks.pop();
+                    next = block[0];
+                    last = block[1];
+                }
+                if (next <= last) {
+                    return Math.toIntExact(next++);
+                }
+            } finally {
+                lock.unlock();
+            }
+            long value = jdbcTemplate.queryForObject("SELECT nextval('customer_id_seq');", Long.class);
+            long[] block = {firstId(value), lastId(value)};
+            lock.lock();
+            try {
+                // Concurrent callers may each have reserved a block, the later ones keep theirs for later
+                spareBlocks.push(block);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reserves whole blocks holding at least ids ids with one query, for bulk inserts that number their rows in SQL.
+     * Returns the first id of every block; each block holds {@link #blockSize()} ids
+     */
+    public int[] reserveBlocks(int ids) {
+        int size = blockSize();
+        int[] firstIds = new int[(ids + size - 1) / size];
+        int reserved = 0;
+        while (reserved < firstIds.length) {
+            List<Long> values = jdbcTemplate.queryForList("SELECT nextval('customer_id_seq') FROM generate_series(1, ?);",
+                    Long.class, firstIds.length - reserved);
+            for (long value : values) {
+                long first = firstId(value);
+                // Only the very first pooled block is cut short by the ids below 1, it is left unused
+                if (first + size - 1 == lastId(value)) {
+                    firstIds[reserved++] = Math.toIntExact(first);
+                }
+            }
+        }
+        return firstIds;
+    }
+
+    public int blockSize() {
+        int size = blockSize;
+        if (size == 0) {
+            // The block size is whatever INCREMENT BY the migrations gave the sequence. Callers racing here all read
+            // the same value
+            String sql = """
+                    SELECT increment_by FROM pg_sequences WHERE sequencename = 'customer_id_seq';
+                    """;
+            size = Math.toIntExact(jdbcTemplate.queryForObject(sql, Long.class));
+            blockSize = size;
+        }
+        return size;
+    }
+
+    private long firstId(long value) {
+        // pooled-lo: value is the first id of the block. pooled: value is the last id of the block, and ids below 1
+        // were never issued by the sequence
+        return POOLED_LO.equals(optimizer) ? value : Math.max(1, value - blockSize() + 1);
+    }
+
+    private long lastId(long value) {
+        return POOLED_LO.equals(optimizer) ? value + blockSize() - 1 : value;
+    }
+}
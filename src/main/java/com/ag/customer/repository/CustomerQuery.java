@@ -0,0 +1,83 @@
+package com.ag.customer.repository;
+
+import com.ag.customer.Customer;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SQL of a filtered and sorted customer listing, with its positional arguments. Only predicates an index can serve
+ * are written: ages through customer_age_idx (age, id), name prefixes through customer_name_prefix_idx as a range
+ * on lower(name) COLLATE "C", and the page boundary as a row comparison on the columns the page is ordered by, so
+ * the next page starts with an index seek instead of skipping rows. CustomerService only lets a listing filter the
+ * field it is sorted by, so every filter is a seek in the index that also gives the order
+ */
+public record CustomerQuery(String sql, List<Object> args) {
+    private static final String NAME_KEY = "lower(name) COLLATE \"C\"";
+
+    /**
+     * after is the last customer of the previous page, or null for the first page. Only its id and the sorted
+     * field are read
+     */
+    public static CustomerQuery select(CustomerFilter filter, Customer after, int limit) {
+        List<String> predicates = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (filter.minAge() != null) {
+            predicates.add("age >= ?");
+            args.add(filter.minAge());
+        }
+        if (filter.maxAge() != null) {
+            predicates.add("age <= ?");
+            args.add(filter.maxAge());
+        }
+        if (filter.namePrefix() != null) {
+            String prefix = prefix(filter.namePrefix());
+            predicates.add(NAME_KEY + " >= ? AND " + NAME_KEY + " < ?");
+            args.add(prefix);
+            args.add(upperBound(prefix));
+        }
+        String comparison = filter.direction() == Sort.Direction.ASC ? ">" : "<";
+        String direction = filter.direction().name();
+        String orderBy = switch (filter.sort()) {
+            case ID -> "id " + direction;
+            case AGE -> "age " + direction + ", id " + direction;
+            case NAME -> NAME_KEY + " " + direction + ", id " + direction;
+        };
+        if (after != null) {
+            switch (filter.sort()) {
+                case ID -> predicates.add("id " + comparison + " ?");
+                case AGE -> {
+                    predicates.add("(age, id) " + comparison + " (?, ?)");
+                    args.add(after.getAge());
+                }
+                case NAME -> {
+                    // Lowered by the database, the same way as the index
+                    predicates.add("(" + NAME_KEY + ", id) " + comparison + " (lower(?) COLLATE \"C\", ?)");
+                    args.add(after.getName());
+                }
+            }
+            args.add(after.getId());
+        }
+        args.add(limit);
+        String where = predicates.isEmpty() ? "" : " WHERE " + String.join(" AND ", predicates);
+        return new CustomerQuery("SELECT " + CustomerRowMapper.COLUMNS + " FROM customer" + where + " ORDER BY " + orderBy + " LIMIT ?", List.copyOf(args));
+    }
+
+    /**
+     * Prefixes are matched case insensitively against lower(name) and lower(email)
+     */
+    public static String prefix(String query) {
+        return query.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The smallest string greater than every string starting with prefix. With the range [prefix, upperBound) the
+     * prefix indexes are searched even by a generic plan, which a LIKE 'prefix%' parameter would not allow
+     */
+    public static String upperBound(String prefix) {
+        int last = prefix.codePointBefore(prefix.length());
+        return prefix.substring(0, prefix.length() - Character.charCount(last)) + Character.toString(last + 1);
+    }
+}
@@ -1,9 +1,27 @@
 package com.ag.customer.repository;
 
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface CustomerRepository extends JpaRepository<Customer, Integer> {
+import java.util.Collection;
+import java.util.List;
+
+public interface CustomerRepository extends JpaRepository<Customer, Integer>, CustomerSearchRepository {
+    // Emails are looked up in customer_email, one index probe instead of one per customer partition
+    @Query(value = "SELECT EXISTS(SELECT 1 FROM customer_email WHERE email = :email)", nativeQuery = true)
     boolean existsCustomerByEmail(String email);
     boolean existsCustomerById(Integer id);
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Integer id, Limit limit);
+    List<CustomerView> findViewsByIdGreaterThanOrderByIdAsc(Integer id, Limit limit);
+    @Query(value = "SELECT email FROM customer_email WHERE email IN :emails", nativeQuery = true)
+    List<String> findExistingEmails(Collection<String> emails);
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Customer c WHERE c.id = :id")
+    int deleteCustomerById(Integer id);
 }
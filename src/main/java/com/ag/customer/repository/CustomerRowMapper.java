@@ -1,21 +1,64 @@
 package com.ag.customer.repository;
 
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
+/**
+ * Reads customers by column index, which skips the name lookup per column and row. Every query read with it selects
+ * or returns {@link #COLUMNS}; the order is checked against the result set metadata on its first row, so a query
+ * with other columns fails instead of mixing up name and email
+ */
 @Component
 public class CustomerRowMapper implements RowMapper<Customer> {
+    public static final String COLUMNS = "id, name, email, age, version";
+    private static final String[] COLUMN_NAMES = COLUMNS.split(", ");
+    private static final int ID = 1;
+    private static final int NAME = 2;
+    private static final int EMAIL = 3;
+    private static final int AGE = 4;
+    private static final int VERSION = 5;
+
     @Override
     public Customer mapRow(ResultSet resultSet, int rowNum) throws SQLException {
-        Customer customer = new Customer(
-                resultSet.getInt("id"),
-                resultSet.getString("name"),
-                resultSet.getString("email"),
-                resultSet.getInt("age"));
-        return customer;
+        if (rowNum == 0) {
+            checkColumns(resultSet);
+        }
+        return new Customer(
+                resultSet.getInt(ID),
+                resultSet.getString(NAME),
+                resultSet.getString(EMAIL),
+                resultSet.getInt(AGE),
+                resultSet.getLong(VERSION));
+    }
+
+    /**
+     * Same row as a {@link CustomerView}, which keeps id and age unboxed and leaves out the version
+     */
+    public CustomerView mapView(ResultSet resultSet, int rowNum) throws SQLException {
+        if (rowNum == 0) {
+            checkColumns(resultSet);
+        }
+        return new CustomerView(
+                resultSet.getInt(ID),
+                resultSet.getString(NAME),
+                resultSet.getString(EMAIL),
+                resultSet.getInt(AGE));
+    }
+
+    private static void checkColumns(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        boolean matches = metaData.getColumnCount() == COLUMN_NAMES.length;
+        for (int column = 1; matches && column <= COLUMN_NAMES.length; column++) {
+            matches = COLUMN_NAMES[column - 1].equalsIgnoreCase(metaData.getColumnLabel(column));
+        }
+        if (!matches) {
+            throw new SQLException("Customer queries must select %s in this order".formatted(COLUMNS));
+        }
     }
 }
@@ -0,0 +1,19 @@
+package com.ag.customer.repository;
+
+/**
+ * Where a ranked search page ended: the rank of its last customer, the key that rank is ordered by (lower(name) or
+ * lower(email), empty for the contains rank which is ordered by id alone) and its id. The next page resumes right
+ * after it, inside that rank
+ */
+public record CustomerSearchPosition(int rank, String key, int id) {
+    public CustomerSearchPosition {
+        key = key == null ? "" : key;
+    }
+
+    /**
+     * Before the first customer of rank: the empty key sorts before every key and ids are positive
+     */
+    public static CustomerSearchPosition startOf(int rank) {
+        return new CustomerSearchPosition(rank, "", 0);
+    }
+}
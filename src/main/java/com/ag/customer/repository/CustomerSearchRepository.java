@@ -0,0 +1,30 @@
+package com.ag.customer.repository;
+
+import com.ag.customer.Customer;
+
+import java.util.List;
+
+/**
+ * Search and filter queries of {@link CustomerRepository}. They are written by hand because the native query
+ * parser of {@code @Query} can't read the {@code COLLATE "C"} the prefix indexes are built on
+ */
+public interface CustomerSearchRepository {
+    /**
+     * Customers with lower(name) in [prefix, upperBound) and (lower(name), id) after (afterKey, afterId), in that order
+     */
+    List<Customer> findByNamePrefix(String prefix, String upperBound, String afterKey, int afterId, int limit);
+    /**
+     * Customers with lower(email) in [prefix, upperBound) and (lower(email), id) after (afterKey, afterId) whose
+     * name doesn't start with prefix, in email order
+     */
+    List<Customer> findByEmailPrefix(String prefix, String upperBound, String afterKey, int afterId, int limit);
+    /**
+     * Customers with an id greater than afterId matching the ILIKE pattern whose name and email don't start with
+     * prefix, in id order
+     */
+    List<Customer> findContaining(String pattern, String prefix, int afterId, int limit);
+    /**
+     * Customers selected by a filtered listing query
+     */
+    List<Customer> findByQuery(CustomerQuery query);
+}
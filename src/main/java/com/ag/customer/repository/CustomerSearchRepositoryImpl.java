@@ -0,0 +1,71 @@
+package com.ag.customer.repository;
+
+import com.ag.customer.Customer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.util.List;
+
+class CustomerSearchRepositoryImpl implements CustomerSearchRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Customer> findByNamePrefix(String prefix, String upperBound, String afterKey, int afterId, int limit) {
+        return entityManager.createNativeQuery("""
+                        SELECT id, name, email, age, version FROM customer
+                        WHERE lower(name) COLLATE "C" >= :prefix AND lower(name) COLLATE "C" < :upperBound
+                        AND (lower(name) COLLATE "C", id) > (:afterKey, :afterId)
+                        ORDER BY lower(name) COLLATE "C", id LIMIT :limit
+                        """, Customer.class)
+                .setParameter("prefix", prefix)
+                .setParameter("upperBound", upperBound)
+                .setParameter("afterKey", afterKey)
+                .setParameter("afterId", afterId)
+                .setParameter("limit", limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<Customer> findByEmailPrefix(String prefix, String upperBound, String afterKey, int afterId, int limit) {
+        return entityManager.createNativeQuery("""
+                        SELECT id, name, email, age, version FROM customer
+                        WHERE lower(email) COLLATE "C" >= :prefix AND lower(email) COLLATE "C" < :upperBound
+                        AND (lower(email) COLLATE "C", id) > (:afterKey, :afterId)
+                        AND NOT starts_with(lower(name), :prefix)
+                        ORDER BY lower(email) COLLATE "C", id LIMIT :limit
+                        """, Customer.class)
+                .setParameter("prefix", prefix)
+                .setParameter("upperBound", upperBound)
+                .setParameter("afterKey", afterKey)
+                .setParameter("afterId", afterId)
+                .setParameter("limit", limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<Customer> findContaining(String pattern, String prefix, int afterId, int limit) {
+        return entityManager.createNativeQuery("""
+                        SELECT id, name, email, age, version FROM customer
+                        WHERE (name ILIKE :pattern OR email ILIKE :pattern)
+                        AND NOT starts_with(lower(name), :prefix) AND NOT starts_with(lower(email), :prefix)
+                        AND id > :afterId
+                        ORDER BY id LIMIT :limit
+                        """, Customer.class)
+                .setParameter("pattern", pattern)
+                .setParameter("prefix", prefix)
+                .setParameter("afterId", afterId)
+                .setParameter("limit", limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<Customer> findByQuery(CustomerQuery query) {
+        Query nativeQuery = entityManager.createNativeQuery(query.sql(), Customer.class);
+        for (int i = 0; i < query.args().size(); i++) {
+            nativeQuery.setParameter(i + 1, query.args().get(i));
+        }
+        return nativeQuery.getResultList();
+    }
+}
@@ -0,0 +1,103 @@
+package com.ag.customer.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * The databases the customer table is split across. A customer lives on the shard picked by a jump consistent hash
+ * of its id: every id has exactly one shard, and adding a shard only moves the customers that land on the new one.
+ * Queries over several shards run in parallel, one virtual thread per shard
+ */
+public class CustomerShards implements AutoCloseable {
+    private final List<Shard> shards;
+    private final List<DataSource> dataSources;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public record Shard(int index, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+    }
+
+    public CustomerShards(List<? extends DataSource> dataSources) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.dataSources = List.copyOf(dataSources);
+        List<Shard> shards = new ArrayList<>(dataSources.size());
+        for (DataSource dataSource : dataSources) {
+            shards.add(new Shard(shards.size(), new JdbcTemplate(dataSource),
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource))));
+        }
+        this.shards = List.copyOf(shards);
+    }
+
+    public List<Shard> all() {
+        return shards;
+    }
+
+    public Shard shardOf(int id) {
+        return shards.get(jumpHash(id, shards.size()));
+    }
+
+    /**
+     * Runs query on every shard in parallel and returns the results in shard order
+     */
+    public <T> List<T> scatter(Function<Shard, T> query) {
+        return scatter(shards, query);
+    }
+
+    /**
+     * Runs query on the given shards in parallel and returns the results in the same order. The first failure is
+     * thrown once every query has finished
+     */
+    public <T> List<T> scatter(Collection<Shard> targets, Function<Shard, T> query) {
+        if (targets.size() == 1) {
+            return Collections.singletonList(query.apply(targets.iterator().next()));
+        }
+        List<CompletableFuture<T>> futures = targets.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), executor))
+                .toList();
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    @Override
+    public void close() throws Exception {
+        executor.close();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * Lamping and Veach's jump consistent hash of the id, mixed first so consecutive ids spread over the shards
+     */
+    static int jumpHash(int id, int buckets) {
+        long key = id * 0x9E3779B97F4A7C15L;
+        key ^= key >>> 32;
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+}
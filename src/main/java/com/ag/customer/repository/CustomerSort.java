@@ -0,0 +1,10 @@
+package com.ag.customer.repository;
+
+/**
+ * Orders of a customer listing. Ties are broken by id, so every order is total and can be paged by keyset
+ */
+public enum CustomerSort {
+    ID,
+    NAME,
+    AGE
+}
@@ -0,0 +1,36 @@
+package com.ag.customer.repository;
+
+import com.ag.customer.Customer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link CustomerDao}. Nothing touches the database until the result is subscribed to
+ */
+public interface ReactiveCustomerDao {
+    /**
+     * Emits every customer in id order. Rows are fetched as the subscriber requests them, so a slow consumer slows
+     * the query down instead of buffering the table
+     */
+    Flux<Customer> selectAllCustomers();
+    /**
+     * Keyset page: at most {@code limit} customers with an id greater than {@code afterId}, ordered by id
+     */
+    Flux<Customer> selectCustomersAfterId(Integer afterId, int limit);
+    Mono<Customer> selectCustomerById(Integer id);
+    /**
+     * Inserts the customer and sets its id. Emits false, without inserting, when the email is already taken
+     */
+    Mono<Boolean> insertCustomer(Customer customer);
+    /**
+     * Emits false when there was no customer with that id
+     */
+    Mono<Boolean> deleteCustomerById(Integer id);
+    Mono<Boolean> existsPersonById(Integer id);
+    /**
+     * Sets the non-null fields of updatedCustomer on the customer with the same id, in one atomic write.
+     * Emits the stored customer after the update, or completes empty when there is no such customer or nothing
+     * would change
+     */
+    Mono<Customer> updateCustomer(Customer updatedCustomer);
+}
@@ -0,0 +1,121 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Coalesces concurrent lookups of single customers into one {@link CustomerDao#selectCustomersByIds} query, in the
+ * style of a DataLoader. The first caller of a batch waits for the window, then reads every id asked for meanwhile.
+ * A batch that reaches maxBatchSize is read at once by the caller that filled it. Callers block until their batch
+ * is read, which on virtual threads costs no platform thread. The leader reads with the read routing of its own
+ * thread, so a caller for which readAlone is true, such as one that has to read from the primary after its own
+ * write, isn't batched and reads on its own thread
+ */
+final class CustomerBatchLoader {
+    private final CustomerDao customerDao;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final BooleanSupplier readAlone;
+    private final ReentrantLock lock = new ReentrantLock();
+    // The batch still taking ids, null when there is none
+    private Map<Integer, CompletableFuture<Customer>> batch;
+
+    CustomerBatchLoader(CustomerDao customerDao, Duration window, int maxBatchSize) {
+        this(customerDao, window, maxBatchSize, () -> false);
+    }
+
+    CustomerBatchLoader(CustomerDao customerDao, Duration window, int maxBatchSize, BooleanSupplier readAlone) {
+        this.customerDao = customerDao;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.readAlone = readAlone;
+    }
+
+    Optional<Customer> load(Integer id) {
+        if (readAlone.getAsBoolean()) {
+            return customerDao.selectCustomerById(id);
+        }
+        Map<Integer, CompletableFuture<Customer>> joined;
+        boolean leader;
+        boolean full;
+        CompletableFuture<Customer> result;
+        lock.lock();
+        try {
+            leader = batch == null;
+            if (leader) {
+                batch = new HashMap<>();
+            }
+            joined = batch;
+            result = joined.computeIfAbsent(id, key -> new CompletableFuture<>());
+            full = joined.size() >= maxBatchSize;
+            if (full) {
+                batch = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full) {
+            dispatch(joined);
+        } else if (leader) {
+            awaitWindow();
+            if (close(joined)) {
+                dispatch(joined);
+            }
+        }
+        try {
+            return Optional.ofNullable(result.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private void awaitWindow() {
+        try {
+            Thread.sleep(window);
+        } catch (InterruptedException e) {
+            // Read the batch right away, the waiting callers must not be left behind
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the batch from taking more ids. False when it was already closed because it filled up
+     */
+    private boolean close(Map<Integer, CompletableFuture<Customer>> joined) {
+        lock.lock();
+        try {
+            if (batch != joined) {
+                return false;
+            }
+            batch = null;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch(Map<Integer, CompletableFuture<Customer>> joined) {
+        try {
+            List<Customer> customers = customerDao.selectCustomersByIds(joined.keySet());
+            customers.forEach(customer -> joined.get(customer.getId()).complete(customer));
+            // Whatever is left was not found
+            joined.values().forEach(future -> future.complete(null));
+        } catch (Throwable e) {
+            // Errors too, a future left incomplete would block its caller forever. Each caller rethrows it
+            joined.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of customers by id. Caffeine evicts with W-TinyLFU, so the hot customers stay cached,
+ * and concurrent misses for the same id wait for a single load instead of all going to the database.
+ * Customers that don't exist are not cached. The load runs on the calling thread outside of any lock, so a virtual
+ * thread blocked on the database doesn't pin its carrier.
+ */
+@Component
+public class CustomerCache implements MeterBinder {
+    private final AsyncCache<Integer, Customer> cache;
+
+    @Autowired
+    public CustomerCache(@Value("${customers.cache.maximum-size:10000}") long maximumSize,
+                         @Value("${customers.cache.ttl:5m}") Duration ttl) {
+        this(maximumSize, ttl, Ticker.systemTicker());
+    }
+
+    CustomerCache(long maximumSize, Duration ttl, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Publishes hit, miss, load and eviction counts as cache.* meters tagged cache=customers
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "customers", Tags.empty());
+    }
+
+    public Optional<Customer> get(Integer id, Function<Integer, Optional<Customer>> loader) {
+        CompletableFuture<Customer> load = new CompletableFuture<>();
+        CompletableFuture<Customer> cached = cache.get(id, (key, executor) -> load);
+        if (cached == load) {
+            // This caller missed first: load it, everyone else asking for the id waits on the future
+            try {
+                load.complete(loader.apply(id).orElse(null));
+            } catch (Throwable e) {
+                // Errors too, or the callers joined on the future would wait forever
+                load.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return Optional.ofNullable(cached.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Bulk version of {@link #get}: the ids that aren't cached are handed to loader at once, on the calling thread.
+     * Ids neither cached nor returned by loader are left out of the result
+     */
+    public Map<Integer, Customer> getAll(Collection<Integer> ids, Function<Set<Integer>, Map<Integer, Customer>> loader) {
+        CompletableFuture<Map<Integer, Customer>> load = new CompletableFuture<>();
+        Set<Integer> missing = new HashSet<>();
+        CompletableFuture<Map<Integer, Customer>> all = cache.getAll(ids, (keys, executor) -> {
+            missing.addAll(keys);
+            return load;
+        });
+        if (!missing.isEmpty()) {
+            try {
+                load.complete(loader.apply(missing));
+            } catch (Throwable e) {
+                load.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return all.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Must be called after the database write so a load racing with the write can't put back the old customer
+     */
+    public void invalidate(Integer id) {
+        if (id != null) {
+            cache.synchronous().invalidate(id);
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    AsyncCache<Integer, Customer> cache() {
+        return cache;
+    }
+}
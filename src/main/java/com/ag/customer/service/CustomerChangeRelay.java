@@ -0,0 +1,106 @@
+package com.ag.customer.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the rows of the customer_change outbox: gives every committed change its position in the feed and wakes
+ * the readers waiting for it. Positions are handed out under an advisory lock, by one relay at a time across all
+ * instances, so they follow commit order and a reader resuming after a position never misses a change that
+ * committed late. Every instance still reads the latest position to wake its own readers
+ */
+@Component
+public class CustomerChangeRelay implements SchedulingConfigurer {
+    // Changes numbered per transaction
+    static final int PUBLISH_BATCH_SIZE = 1000;
+    // The pending changes in outbox order, numbered after the latest position
+    private static final String PUBLISH_SQL = """
+            UPDATE customer_change SET seq = pending.seq
+            FROM (SELECT id, (SELECT coalesce(max(seq), 0) FROM customer_change) + row_number() OVER (ORDER BY id) AS seq
+                  FROM customer_change WHERE seq IS NULL ORDER BY id LIMIT ?) pending
+            WHERE customer_change.id = pending.id;
+            """;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration interval;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private long latestSeq;
+
+    public CustomerChangeRelay(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${customers.changes.relay-interval:100ms}") Duration interval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.interval = interval;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::relay, interval);
+    }
+
+    /**
+     * Numbers every pending change, then wakes the waiting readers when the feed moved on. Returns how many changes
+     * this call numbered, 0 when another relay holds the lock
+     */
+    public int relay() {
+        int numbered = 0;
+        int batch;
+        do {
+            batch = publishBatch();
+            numbered += batch;
+        } while (batch == PUBLISH_BATCH_SIZE);
+        long latest = jdbcTemplate.queryForObject("SELECT coalesce(max(seq), 0) FROM customer_change;", Long.class);
+        lock.lock();
+        try {
+            if (latest > latestSeq) {
+                latestSeq = latest;
+                published.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return numbered;
+    }
+
+    /**
+     * Waits until a change after seq is published or the timeout passes. True when there is one
+     */
+    boolean awaitChangesAfter(long seq, Duration timeout) {
+        long remaining = timeout.toNanos();
+        lock.lock();
+        try {
+            while (latestSeq <= seq) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = published.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int publishBatch() {
+        Integer numbered = transactionTemplate.execute(status -> {
+            // Released at commit, so the next relay sees these positions
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(hashtext('customer_change_relay'));", Boolean.class);
+            return Boolean.TRUE.equals(locked) ? jdbcTemplate.update(PUBLISH_SQL, PUBLISH_BATCH_SIZE) : 0;
+        });
+        return numbered == null ? 0 : numbered;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ag.customer.service;
+
+import com.ag.dto.CustomerChange;
+import com.ag.dto.CustomerChangePage;
+import com.ag.exceptions.RequestValidationException;
+import com.ag.exceptions.UnsupportedBackendException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Reads the customer change feed, so mirrors of the customer table can sync what changed since their last read
+ * instead of reloading every customer. Not available with the sharded backend: the outbox is only filled by writes to
+ * the customer table of the main database, and the shards keep none
+ */
+@Service
+public class CustomerChangeService {
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerChangeRelay customerChangeRelay;
+    private final Duration longPollTimeout;
+    private final boolean sharded;
+
+    public CustomerChangeService(JdbcTemplate jdbcTemplate,
+                                 CustomerChangeRelay customerChangeRelay,
+                                 @Value("${customers.changes.long-poll-timeout:20s}") Duration longPollTimeout,
+                                 @Value("${customers.dao.backend:jdbc}") String backend) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerChangeRelay = customerChangeRelay;
+        this.longPollTimeout = longPollTimeout;
+        this.sharded = "sharded".equals(backend);
+    }
+
+    /**
+     * The changes after position since, oldest first. When there are none yet, waits up to the long poll timeout
+     * for the next ones
+     */
+    public CustomerChangePage getChanges(Long since, Integer limit) {
+        if (sharded) {
+            throw new UnsupportedBackendException("The change feed is not available with the sharded backend");
+        }
+        long after = since == null ? 0 : since;
+        if (after < 0) {
+            throw new RequestValidationException("since must not be negative");
+        }
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new RequestValidationException("limit must be between 1 and %s".formatted(MAX_PAGE_SIZE));
+        }
+        List<CustomerChange> changes = selectChangesAfter(after, pageSize);
+        if (changes.isEmpty() && customerChangeRelay.awaitChangesAfter(after, longPollTimeout)) {
+            changes = selectChangesAfter(after, pageSize);
+        }
+        return new CustomerChangePage(changes, changes.isEmpty() ? after : changes.get(changes.size() - 1).seq());
+    }
+
+    private List<CustomerChange> selectChangesAfter(long since, int limit) {
+        String sql = """
+                SELECT seq, customer_id, type, changes, changed_at FROM customer_change WHERE seq > ? ORDER BY seq LIMIT ?;
+                """;
+        return jdbcTemplate.query(sql, (resultSet, rowNum) -> new CustomerChange(
+                resultSet.getLong(1),
+                resultSet.getInt(2),
+                resultSet.getString(3),
+                resultSet.getString(4),
+                resultSet.getObject(5, OffsetDateTime.class)), since, limit);
+    }
+}
@@ -0,0 +1,137 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerSearchPosition;
+import com.ag.customer.repository.CustomerSort;
+import com.ag.exceptions.RequestValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque pagination cursor. It wraps the last id of a page, with the sorted field for sorted listings, or for ranked
+ * search results the rank and ranked key of the last result, so clients can't depend on its format
+ */
+final class CustomerCursor {
+    private static final String ID_PREFIX = "id:";
+    private static final String AGE_PREFIX = "age:";
+    private static final String NAME_PREFIX = "name:";
+    private static final String SEARCH_PREFIX = "search:";
+
+    private CustomerCursor() {}
+
+    static String encode(Integer lastId) {
+        return encode(ID_PREFIX + lastId);
+    }
+
+    static Integer decode(String cursor) {
+        String value = decode(ID_PREFIX, cursor);
+        return value == null ? 0 : parseInt(value, cursor);
+    }
+
+    /**
+     * Cursor after the last customer of a page sorted by sort
+     */
+    static String encode(CustomerSort sort, Customer last) {
+        return switch (sort) {
+            case ID -> encode(last.getId());
+            case AGE -> encode(AGE_PREFIX + last.getId() + ":" + last.getAge());
+            // The name goes last, it may contain the separator
+            case NAME -> encode(NAME_PREFIX + last.getId() + ":" + last.getName());
+        };
+    }
+
+    /**
+     * The last customer of the previous page, with only its id and sorted field set, or null for the first page
+     */
+    static Customer decode(CustomerSort sort, String cursor) {
+        String prefix = switch (sort) {
+            case ID -> ID_PREFIX;
+            case AGE -> AGE_PREFIX;
+            case NAME -> NAME_PREFIX;
+        };
+        String value = decode(prefix, cursor);
+        if (value == null) {
+            return null;
+        }
+        Customer last = new Customer();
+        if (sort == CustomerSort.ID) {
+            last.setId(parseInt(value, cursor));
+            return last;
+        }
+        int separator = value.indexOf(':');
+        if (separator < 0) {
+            throw invalid(cursor);
+        }
+        last.setId(parseInt(value.substring(0, separator), cursor));
+        if (sort == CustomerSort.AGE) {
+            last.setAge(parseInt(value.substring(separator + 1), cursor));
+        } else {
+            last.setName(value.substring(separator + 1));
+        }
+        return last;
+    }
+
+    /**
+     * Cursor after the search result at position
+     */
+    static String encode(CustomerSearchPosition position) {
+        // The key goes last, it may contain the separator
+        return encode(SEARCH_PREFIX + position.rank() + ":" + position.id() + ":" + position.key());
+    }
+
+    /**
+     * The position of the last result of the previous search page, or null for the first page
+     */
+    static CustomerSearchPosition decodeSearchPosition(String cursor) {
+        String value = decode(SEARCH_PREFIX, cursor);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(":", 3);
+        if (parts.length != 3) {
+            throw invalid(cursor);
+        }
+        int rank = parseInt(parts[0], cursor);
+        if (rank < CustomerSearch.NAME_PREFIX || rank > CustomerSearch.CONTAINS) {
+            throw invalid(cursor);
+        }
+        return new CustomerSearchPosition(rank, parts[2], parseInt(parts[1], cursor));
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The cursor content after prefix, or null when there is no cursor
+     */
+    private static String decode(String prefix, String cursor) {
+        // No cursor means start from the beginning
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw invalid(cursor);
+        }
+        if (!value.startsWith(prefix)) {
+            throw invalid(cursor);
+        }
+        return value.substring(prefix.length());
+    }
+
+    private static int parseInt(String value, String cursor) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid(cursor);
+        }
+    }
+
+    private static RequestValidationException invalid(String cursor) {
+        return new RequestValidationException("Invalid cursor %s".formatted(cursor));
+    }
+}
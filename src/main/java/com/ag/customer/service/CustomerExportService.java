@@ -0,0 +1,234 @@
+package com.ag.customer.service;
+
+import com.ag.config.ReadRouting;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.exceptions.ServiceUnavailableException;
+import com.ag.exceptions.UnsupportedBackendException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes every customer as CSV or NDJSON while the rows are read, so memory does not grow with the table. CSV comes
+ * from COPY TO STDOUT: the database formats the rows and their bytes are passed through as they arrive. NDJSON reads
+ * the rows through a server side cursor, in the same shape as the customer stream. Reading never blocks writers,
+ * the export sees the table as it was when its query started.
+ * <p>
+ * An export holds its connection and transaction for as long as the client takes to download it, so it is bounded:
+ * at most customers.export.max-concurrent run at once, its query ends after customers.export.statement-timeout and
+ * its transaction after waiting customers.export.idle-timeout on the client. With read replicas it reads from one.
+ * Not available with the sharded backend, whose customers are not in the table of the main database it reads
+ */
+@Service
+public class CustomerExportService {
+    // Rows pulled per round trip by the NDJSON cursor
+    private static final int FETCH_SIZE = 1000;
+    // COPY hands over one row at a time, the buffer turns them into large writes
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerRowMapper customerRowMapper;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate snapshotTransaction;
+    private final ObjectWriter customerWriter;
+    // Separate from the permits of the pool, so slow downloads can only ever hold a few of its connections
+    private final Semaphore exportPermits;
+    private final Duration statementTimeout;
+    private final Duration idleTimeout;
+    // Null without read replicas
+    private final ReadRouting readRouting;
+    private final boolean sharded;
+
+    @Autowired
+    public CustomerExportService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 CustomerRowMapper customerRowMapper,
+                                 ObjectMapper objectMapper,
+                                 @Value("${customers.export.max-concurrent:2}") int maxConcurrent,
+                                 @Value("${customers.export.statement-timeout:30m}") Duration statementTimeout,
+                                 @Value("${customers.export.idle-timeout:1m}") Duration idleTimeout,
+                                 ObjectProvider<ReadRouting> readRouting,
+                                 @Value("${customers.dao.backend:jdbc}") String backend) {
+        this(jdbcTemplate, transactionManager, customerRowMapper, objectMapper, maxConcurrent, statementTimeout, idleTimeout,
+                readRouting.getIfAvailable(), backend);
+    }
+
+    CustomerExportService(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          CustomerRowMapper customerRowMapper,
+                          ObjectMapper objectMapper,
+                          int maxConcurrent,
+                          Duration statementTimeout,
+                          Duration idleTimeout,
+                          ReadRouting readRouting,
+                          String backend) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerRowMapper = customerRowMapper;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setReadOnly(true);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.customerWriter = objectMapper.writerFor(CustomerView.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.exportPermits = new Semaphore(maxConcurrent);
+        this.statementTimeout = statementTimeout;
+        this.idleTimeout = idleTimeout;
+        this.readRouting = readRouting;
+        this.sharded = "sharded".equals(backend);
+    }
+
+    /**
+     * Where an export is written. Opened once the export knows its change feed position
+     */
+    @FunctionalInterface
+    public interface ExportTarget {
+        /**
+         * changesSince is the change feed position of a snapshot export, null otherwise
+         */
+        OutputStream open(Long changesSince) throws IOException;
+    }
+
+    /**
+     * Writes every customer ordered by id and closes the target. Without snapshot the rows are those of one query,
+     * consistent among themselves. With snapshot the export runs in a REPEATABLE READ transaction and first reads
+     * the change feed position in the same snapshot: every change after that position is missing from the export,
+     * so a mirror loads the export and then follows the changes since it without losing a write. When the export
+     * fails after the target was opened, the target is left unclosed and a gzip stream unfinished, so the truncated
+     * export can't end like a complete one. A ServiceUnavailableException when customers.export.max-concurrent
+     * exports are already running
+     */
+    public void exportCustomers(CustomerFileFormat format, boolean snapshot, ExportTarget target) {
+        if (sharded) {
+            throw new UnsupportedBackendException("Export is not available with the sharded backend");
+        }
+        if (!exportPermits.tryAcquire()) {
+            throw new ServiceUnavailableException("Too many exports are running, try again later");
+        }
+        try {
+            if (readRouting == null) {
+                export(format, snapshot, target);
+            } else {
+                // A replica as of the last check: its snapshot and change feed position are those of the primary
+                // at some recent point, which is all a mirror needs
+                readRouting.read(() -> {
+                    export(format, snapshot, target);
+                    return null;
+                });
+            }
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    /**
+     * Gzip at the fastest level. An export is large and written as fast as it is read, where the default level
+     * costs far more CPU for a few percent smaller output
+     */
+    public static OutputStream gzip(OutputStream out) throws IOException {
+        return new FastGzipOutputStream(out);
+    }
+
+    private void export(CustomerFileFormat format, boolean snapshot, ExportTarget target) {
+        (snapshot ? snapshotTransaction : readTransaction).executeWithoutResult(status -> {
+            // Local to the transaction, the pooled connection goes back without them
+            jdbcTemplate.execute("SET LOCAL statement_timeout = %d; SET LOCAL idle_in_transaction_session_timeout = %d;"
+                    .formatted(statementTimeout.toMillis(), idleTimeout.toMillis()));
+            Long changesSince = snapshot
+                    ? jdbcTemplate.queryForObject("SELECT coalesce(max(seq), 0) FROM customer_change;", Long.class)
+                    : null;
+            OutputStream opened = open(target, changesSince);
+            OutputStream out = new BufferedOutputStream(opened, OUTPUT_BUFFER_SIZE);
+            try {
+                if (format == CustomerFileFormat.CSV) {
+                    copyCsv(out);
+                } else {
+                    writeNdjson(out);
+                }
+            } catch (RuntimeException | Error e) {
+                if (opened instanceof FastGzipOutputStream gzip) {
+                    gzip.discard();
+                }
+                throw e;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static OutputStream open(ExportTarget target, Long changesSince) {
+        try {
+            return target.open(changesSince);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void copyCsv(OutputStream out) {
+        String sql = """
+                COPY (SELECT id, name, email, age FROM customer ORDER BY id) TO STDOUT (FORMAT csv, HEADER);
+                """;
+        // The connection of the current transaction, so the copy reads its snapshot
+        jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeNdjson(OutputStream out) {
+        String sql = """
+                SELECT %s FROM customer ORDER BY id;
+                """.formatted(CustomerRowMapper.COLUMNS);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, resultSet -> {
+            try {
+                customerWriter.writeValue(out, customerRowMapper.mapView(resultSet, resultSet.getRow() - 1));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        private FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, OUTPUT_BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+
+        /**
+         * Frees the deflater without writing the rest of the data or the trailer
+         */
+        private void discard() {
+            def.end();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.ag.customer.service;
+
+import com.ag.exceptions.RequestValidationException;
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+/**
+ * Formats of bulk imports and exports. CSV has a header row naming the columns, an import needs name, email and age
+ * in any order. NDJSON has one customer object per line, like a registration request
+ */
+public enum CustomerFileFormat {
+    CSV,
+    NDJSON;
+
+    public static final String CSV_MEDIA_TYPE = "text/csv";
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    public String mediaType() {
+        return this == CSV ? CSV_MEDIA_TYPE : NDJSON_MEDIA_TYPE;
+    }
+
+    public static CustomerFileFormat of(MediaType mediaType) {
+        if (mediaType.isCompatibleWith(MediaType.parseMediaType(CSV_MEDIA_TYPE))) {
+            return CSV;
+        }
+        if (mediaType.isCompatibleWith(MediaType.parseMediaType(NDJSON_MEDIA_TYPE))) {
+            return NDJSON;
+        }
+        throw new RequestValidationException("Unsupported import type %s, expected %s or %s".formatted(mediaType, CSV_MEDIA_TYPE, NDJSON_MEDIA_TYPE));
+    }
+
+    /**
+     * The format by its name in any case, csv or ndjson
+     */
+    public static CustomerFileFormat ofName(String name) {
+        for (CustomerFileFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name.strip())) {
+                return format;
+            }
+        }
+        throw new RequestValidationException("Unknown format %s, expected csv or ndjson".formatted(name));
+    }
+
+    /**
+     * The format of a file by its extension: .csv, or .ndjson and .jsonl
+     */
+    public static CustomerFileFormat ofFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        throw new IllegalArgumentException("Unknown import format of %s, expected a .csv, .ndjson or .jsonl file".formatted(fileName));
+    }
+}
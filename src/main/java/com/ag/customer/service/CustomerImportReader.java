@@ -0,0 +1,186 @@
+package com.ag.customer.service;
+
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.exceptions.RequestValidationException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the customers of an import upload one row at a time, so memory stays flat whatever the size of the upload.
+ * Rows that can't be read are rejected here; checking the values is left to the handler
+ */
+final class CustomerImportReader {
+    interface RowHandler {
+        void accept(long row, String name, String email, Integer age) throws IOException;
+
+        void reject(long row, String email, String reason);
+    }
+
+    private CustomerImportReader() {
+    }
+
+    /**
+     * requestReader reads a {@link CustomerRegistrationRequest}, it is only used for NDJSON
+     */
+    static void read(Reader reader, CustomerFileFormat format, ObjectReader requestReader, RowHandler handler) throws IOException {
+        switch (format) {
+            case CSV -> readCsv(reader, handler);
+            case NDJSON -> readNdjson(new BufferedReader(reader), requestReader, handler);
+        }
+    }
+
+    private static void readCsv(Reader reader, RowHandler handler) throws IOException {
+        CsvRecords records = new CsvRecords(reader);
+        List<String> header = records.next();
+        if (header == null) {
+            return;
+        }
+        int nameColumn = column(header, "name");
+        int emailColumn = column(header, "email");
+        int ageColumn = column(header, "age");
+        long row = 0;
+        List<String> record;
+        while ((record = records.next()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                // Blank line
+                continue;
+            }
+            row++;
+            if (record.size() != header.size()) {
+                handler.reject(row, null, "expected %s fields, got %s".formatted(header.size(), record.size()));
+                continue;
+            }
+            String email = emptyToNull(record.get(emailColumn));
+            String age = record.get(ageColumn).strip();
+            Integer parsedAge = null;
+            if (!age.isEmpty()) {
+                try {
+                    parsedAge = Integer.valueOf(age);
+                } catch (NumberFormatException e) {
+                    handler.reject(row, email, "age must be a whole number");
+                    continue;
+                }
+            }
+            handler.accept(row, emptyToNull(record.get(nameColumn)), email, parsedAge);
+        }
+    }
+
+    private static void readNdjson(BufferedReader reader, ObjectReader requestReader, RowHandler handler) throws IOException {
+        long row = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            row++;
+            CustomerRegistrationRequest request;
+            try {
+                request = requestReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                handler.reject(row, null, "not a customer object: %s".formatted(e.getOriginalMessage()));
+                continue;
+            }
+            if (request == null) {
+                handler.reject(row, null, "not a customer object");
+                continue;
+            }
+            handler.accept(row, request.name(), request.email(), request.age());
+        }
+    }
+
+    private static int column(List<String> header, String name) {
+        for (int column = 0; column < header.size(); column++) {
+            // A byte order mark may come before the first name
+            if (header.get(column).replace("\uFEFF", "").strip().toLowerCase(Locale.ROOT).equals(name)) {
+                return column;
+            }
+        }
+        throw new RequestValidationException("The CSV header must name the columns name, email and age, got %s".formatted(header));
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * RFC 4180 records: fields separated by commas, optionally in double quotes, where a quoted field may hold commas,
+     * line breaks and doubled quotes
+     */
+    private static final class CsvRecords {
+        private final Reader reader;
+        private final char[] buffer = new char[1 << 16];
+        private final StringBuilder field = new StringBuilder();
+        private int position;
+        private int limit;
+
+        CsvRecords(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * The fields of the next record, null at the end of the upload
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>(4);
+            field.setLength(0);
+            boolean quoted = false;
+            boolean fieldStart = true;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        // An unterminated quote runs to the end of the upload
+                        fields.add(field.toString());
+                        return fields;
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            // Closing quote, whatever follows is read unquoted
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && fieldStart) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    fieldStart = true;
+                    c = read();
+                    continue;
+                } else if (c == '\n' || c == -1) {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                fieldStart = false;
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+    }
+}
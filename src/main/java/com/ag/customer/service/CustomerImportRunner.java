@@ -0,0 +1,54 @@
+package com.ag.customer.service;
+
+import com.ag.dto.CustomerImportResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Imports a file at startup, for loads run from the command line, e.g.
+ * {@code java -jar customers.jar --spring.main.web-application-type=none --customers.import.file=partners.csv}.
+ * The format comes from the file extension unless customers.import.format says otherwise
+ */
+@Component
+@ConditionalOnProperty("customers.import.file")
+public class CustomerImportRunner implements ApplicationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerImportRunner.class);
+    private final CustomerImportService customerImportService;
+    private final Path file;
+    private final String format;
+
+    public CustomerImportRunner(CustomerImportService customerImportService,
+                                @Value("${customers.import.file}") Path file,
+                                @Value("${customers.import.format:}") String format) {
+        this.customerImportService = customerImportService;
+        this.file = file;
+        this.format = format;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        CustomerFileFormat fileFormat = format.isEmpty()
+                ? CustomerFileFormat.ofFileName(file.getFileName().toString())
+                : CustomerFileFormat.ofName(format);
+        long start = System.nanoTime();
+        CustomerImportResult result;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+            result = customerImportService.importCustomers(input, fileFormat);
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Imported {} of {} customers from {} in {} ms ({} rows/s), {} rejected",
+                result.imported(), result.rows(), file, millis, result.rows() * 1000 / millis, result.rejected());
+        result.rejections().forEach(rejection -> LOGGER.warn("Row {} ({}) rejected: {}", rejection.row(), rejection.email(), rejection.reason()));
+    }
+}
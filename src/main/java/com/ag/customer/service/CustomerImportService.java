@@ -0,0 +1,244 @@
+package com.ag.customer.service;
+
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.dto.CustomerImportRejection;
+import com.ag.dto.CustomerImportResult;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.exceptions.UnsupportedBackendException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Loads large uploads of customers. Rows are read as they arrive and copied into a temporary staging table with
+ * COPY FROM STDIN, then one INSERT moves the rows whose email is new to the customer table. Emails that already
+ * exist, or that came earlier in the same upload, are rejected by the database in that one pass instead of a lookup
+ * per row. The whole import is one transaction: either every accepted row is stored or none is. Not available with
+ * the sharded backend, whose customers are not in the table of the main database it would copy into
+ */
+@Service
+public class CustomerImportService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomerImportService.class);
+    // Rows read between two progress reports
+    static final long PROGRESS_INTERVAL = 100_000;
+    // Rejected rows listed in the result, the others are only counted
+    static final int MAX_REPORTED_REJECTIONS = 1000;
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CustomerIdAllocator customerIdAllocator;
+    private final ObjectReader requestReader;
+    private final boolean sharded;
+
+    public CustomerImportService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 CustomerIdAllocator customerIdAllocator,
+                                 ObjectMapper objectMapper,
+                                 @Value("${customers.dao.backend:jdbc}") String backend) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.customerIdAllocator = customerIdAllocator;
+        this.requestReader = objectMapper.readerFor(CustomerRegistrationRequest.class);
+        this.sharded = "sharded".equals(backend);
+    }
+
+    public CustomerImportResult importCustomers(InputStream input, CustomerFileFormat format) {
+        return importCustomers(input, format, rows -> LOGGER.info("Customer import read {} rows", rows));
+    }
+
+    /**
+     * Imports the UTF-8 upload. progress is told the number of rows read every {@link #PROGRESS_INTERVAL} rows
+     */
+    public CustomerImportResult importCustomers(InputStream input, CustomerFileFormat format, LongConsumer progress) {
+        if (sharded) {
+            throw new UnsupportedBackendException("Import is not available with the sharded backend");
+        }
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("""
+                    CREATE TEMPORARY TABLE customer_import (row BIGINT NOT NULL, name TEXT NOT NULL, email TEXT NOT NULL, age INTEGER NOT NULL)
+                    ON COMMIT DROP;
+                    """);
+            Staging staging = stage(input, format, progress);
+            // Statistics for the staging table, the planner would otherwise guess its size
+            jdbcTemplate.execute("ANALYZE customer_import;");
+
+            // The staged rows whose email is taken or repeats an earlier row. Taken emails are looked up in customer_email,
+            // like insertStaged does, the partitioned customer table has no index on email. The count is over all of them
+            List<CustomerImportRejection> rejections = new ArrayList<>(staging.rejections);
+            long[] duplicates = {0};
+            jdbcTemplate.query("""
+                    SELECT staged.row, staged.email, customer_email.customer_id IS NOT NULL AS taken, count(*) OVER () AS duplicates
+                    FROM (SELECT row, email, row_number() OVER (PARTITION BY email ORDER BY row) AS occurrence FROM customer_import) staged
+                    LEFT JOIN customer_email ON customer_email.email = staged.email
+                    WHERE staged.occurrence > 1 OR customer_email.customer_id IS NOT NULL
+                    ORDER BY staged.row LIMIT ?;
+                    """, resultSet -> {
+                duplicates[0] = resultSet.getLong(4);
+                rejections.add(new CustomerImportRejection(resultSet.getLong(1), resultSet.getString(2),
+                        resultSet.getBoolean(3) ? "email already exists" : "email repeats an earlier row"));
+            }, MAX_REPORTED_REJECTIONS);
+
+            long imported = insertStaged(staging.staged - duplicates[0]);
+            rejections.sort(Comparator.comparingLong(CustomerImportRejection::row));
+            return new CustomerImportResult(staging.rows, imported, staging.rows - imported,
+                    List.copyOf(rejections.subList(0, Math.min(rejections.size(), MAX_REPORTED_REJECTIONS))));
+        });
+    }
+
+    /**
+     * Streams the valid rows of the upload into customer_import on the connection of the current transaction
+     */
+    private Staging stage(InputStream input, CustomerFileFormat format, LongConsumer progress) {
+        Staging staging = new Staging();
+        try {
+            PGConnection connection = DataSourceUtils.getConnection(dataSource()).unwrap(PGConnection.class);
+            try (Writer copy = new BufferedWriter(new OutputStreamWriter(new PGCopyOutputStream(connection,
+                    "COPY customer_import (row, name, email, age) FROM STDIN (FORMAT csv);", COPY_BUFFER_SIZE), StandardCharsets.UTF_8))) {
+                CustomerImportReader.read(new InputStreamReader(input, StandardCharsets.UTF_8), format, requestReader, new CustomerImportReader.RowHandler() {
+                    @Override
+                    public void accept(long row, String name, String email, Integer age) throws IOException {
+                        count(row);
+                        String problem = check(name, email, age);
+                        if (problem != null) {
+                            reject(row, email, problem);
+                            return;
+                        }
+                        staging.staged++;
+                        copy.write(Long.toString(row));
+                        copy.write(',');
+                        writeQuoted(copy, name);
+                        copy.write(',');
+                        writeQuoted(copy, email);
+                        copy.write(',');
+                        copy.write(Integer.toString(age));
+                        copy.write('\n');
+                    }
+
+                    @Override
+                    public void reject(long row, String email, String reason) {
+                        count(row);
+                        if (staging.rejections.size() < MAX_REPORTED_REJECTIONS) {
+                            staging.rejections.add(new CustomerImportRejection(row, email, reason));
+                        }
+                    }
+
+                    private void count(long row) {
+                        staging.rows = row;
+                        if (row % PROGRESS_INTERVAL == 0) {
+                            progress.accept(row);
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Customer import needs a PostgreSQL connection", e);
+        }
+        return staging;
+    }
+
+    /**
+     * Stores the first staged row of every email that is not taken yet, numbered from blocks of customer ids
+     * reserved up front. Returns the number of customers stored
+     */
+    private long insertStaged(long accepted) {
+        if (accepted == 0) {
+            return 0;
+        }
+        int[] blocks = customerIdAllocator.reserveBlocks(Math.toIntExact(accepted));
+        int blockSize = customerIdAllocator.blockSize();
+        // Emails are reserved in customer_email first: one registered by someone else while the import ran is
+        // skipped there, and only the customers whose email was reserved are inserted
+        String sql = """
+                WITH accepted AS (
+                    SELECT (?::integer[])[n / ? + 1] + n % ? AS id, name, email, age
+                    FROM (SELECT name, email, age, row_number() OVER (ORDER BY row) - 1 AS n
+                          FROM (SELECT DISTINCT ON (email) row, name, email, age FROM customer_import ORDER BY email, row) first
+                          WHERE NOT EXISTS (SELECT 1 FROM customer_email WHERE customer_email.email = first.email)) numbered
+                ), reserved AS (
+                    INSERT INTO customer_email (email, customer_id)
+                    SELECT email, id FROM accepted
+                    ON CONFLICT (email) DO NOTHING
+                    RETURNING customer_id
+                )
+                INSERT INTO customer (id, name, email, age)
+                SELECT accepted.id, name, email, age FROM accepted JOIN reserved ON reserved.customer_id = accepted.id;
+                """;
+        return jdbcTemplate.update(connection -> {
+            var statement = connection.prepareStatement(sql);
+            Integer[] firstIds = new Integer[blocks.length];
+            for (int i = 0; i < blocks.length; i++) {
+                firstIds[i] = blocks[i];
+            }
+            statement.setArray(1, connection.createArrayOf("integer", firstIds));
+            statement.setInt(2, blockSize);
+            statement.setInt(3, blockSize);
+            return statement;
+        });
+    }
+
+    private DataSource dataSource() {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("JdbcTemplate has no DataSource");
+        }
+        return dataSource;
+    }
+
+    /**
+     * The reason a row can't be stored, null when it can
+     */
+    private static String check(String name, String email, Integer age) {
+        if (name == null || email == null || age == null || name.isBlank() || email.isBlank()) {
+            return "name, email and age are required";
+        }
+        // Text columns can't hold NUL, one such row would fail the whole COPY
+        if (name.indexOf('\0') >= 0 || email.indexOf('\0') >= 0) {
+            return "name and email must not contain NUL characters";
+        }
+        return null;
+    }
+
+    private static void writeQuoted(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static final class Staging {
+        private final List<CustomerImportRejection> rejections = new ArrayList<>();
+        private long rows;
+        private long staged;
+    }
+}
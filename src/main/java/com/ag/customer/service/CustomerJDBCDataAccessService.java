@@ -1,91 +1,303 @@
 package com.ag.customer.service;
 
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
 import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerQuery;
 import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.customer.repository.CustomerSearchPosition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Repository("jdbc")
+@ConditionalOnProperty(name = "customers.dao.backend", havingValue = "jdbc", matchIfMissing = true)
 public class CustomerJDBCDataAccessService implements CustomerDao {
+    // Rows pulled per round trip while streaming. Postgres only honours it inside a transaction
+    private static final int STREAM_FETCH_SIZE = 1000;
+    // Rows sent to the database per batch insert statement
+    private static final int INSERT_BATCH_SIZE = 500;
+    // One UPDATE per combination of changed columns, built once so every update of the same shape shares its SQL
+    private static final int UPDATE_NAME = 1;
+    private static final int UPDATE_EMAIL = 1 << 1;
+    private static final int UPDATE_AGE = 1 << 2;
+    // Only write when the stored version is the expected one
+    private static final int UPDATE_IF_VERSION = 1 << 3;
+    private static final String[] UPDATE_SQL = buildUpdateStatements();
     private final JdbcTemplate jdbcTemplate;
     private final CustomerRowMapper customerRowMapper;
+    private final CustomerIdAllocator customerIdAllocator;
 
-    public CustomerJDBCDataAccessService(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper) {
+    public CustomerJDBCDataAccessService(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper, CustomerIdAllocator customerIdAllocator) {
         this.jdbcTemplate = jdbcTemplate;
         this.customerRowMapper = customerRowMapper;
+        this.customerIdAllocator = customerIdAllocator;
     }
 
     @Override
     public List<Customer> selectAllCustomers() {
         String sql = """
-                SELECT * FROM customer;
-                """;
+                SELECT %s FROM customer;
+                """.formatted(CustomerRowMapper.COLUMNS);
         return jdbcTemplate.query(sql, customerRowMapper);
     }
 
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        String sql = """
+                SELECT %s FROM customer WHERE id > ? ORDER BY id LIMIT ?;
+                """.formatted(CustomerRowMapper.COLUMNS);
+        return jdbcTemplate.query(sql, customerRowMapper, afterId, limit);
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) {
+        CustomerQuery query = CustomerQuery.select(filter, after, limit);
+        return jdbcTemplate.query(query.sql(), customerRowMapper, query.args().toArray());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        String sql = """
+                SELECT %s FROM customer ORDER BY id;
+                """.formatted(CustomerRowMapper.COLUMNS);
+        // A fetch size makes the driver use a server side cursor instead of reading the whole result set
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, resultSet -> {
+            consumer.accept(customerRowMapper.mapView(resultSet, resultSet.getRow() - 1));
+        });
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer id) {
         String sql = """
-                SELECT id, name, email, age FROM customer WHERE id = ?;
-                """;
+                SELECT %s FROM customer WHERE id = ?;
+                """.formatted(CustomerRowMapper.COLUMNS);
         return jdbcTemplate.query(sql, customerRowMapper, id).stream().findFirst();
     }
 
     @Override
-    public void insertCustomer(Customer customer) {
+    public List<Customer> selectCustomersByIds(Collection<Integer> ids) {
+        // One array parameter whatever the number of ids, so every lookup shares one prepared statement. Joined
+        // with the ids instead of id = ANY(?), each id is looked up in its own partition even under a generic plan
         String sql = """
-                INSERT INTO customer (name, email, age)
-                VALUES(?, ?, ?);
+                SELECT %s FROM unnest(?::integer[]) AS ids(id) JOIN customer USING (id);
+                """.formatted(CustomerRowMapper.COLUMNS);
+        return jdbcTemplate.query(sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", ids.toArray())),
+                customerRowMapper);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) {
+        String prefix = CustomerQuery.prefix(query);
+        String upperBound = CustomerQuery.upperBound(prefix);
+        // The row comparisons resume inside the prefix indexes on (key, id) right after the previous page
+        return CustomerSearch.search(after, limit, (rank, from, rankLimit) -> switch (rank) {
+            case CustomerSearch.NAME_PREFIX -> jdbcTemplate.query("""
+                    SELECT %s FROM customer
+                    WHERE lower(name) COLLATE "C" >= ? AND lower(name) COLLATE "C" < ? AND (lower(name) COLLATE "C", id) > (?, ?)
+                    ORDER BY lower(name) COLLATE "C", id LIMIT ?;
+                    """.formatted(CustomerRowMapper.COLUMNS), customerRowMapper, prefix, upperBound, from.key(), from.id(), rankLimit);
+            case CustomerSearch.EMAIL_PREFIX -> jdbcTemplate.query("""
+                    SELECT %s FROM customer
+                    WHERE lower(email) COLLATE "C" >= ? AND lower(email) COLLATE "C" < ? AND (lower(email) COLLATE "C", id) > (?, ?)
+                    AND NOT starts_with(lower(name), ?)
+                    ORDER BY lower(email) COLLATE "C", id LIMIT ?;
+                    """.formatted(CustomerRowMapper.COLUMNS), customerRowMapper, prefix, upperBound, from.key(), from.id(), prefix, rankLimit);
+            default -> jdbcTemplate.query("""
+                    SELECT %s FROM customer
+                    WHERE (name ILIKE ? OR email ILIKE ?) AND NOT starts_with(lower(name), ?) AND NOT starts_with(lower(email), ?) AND id > ?
+                    ORDER BY id LIMIT ?;
+                    """.formatted(CustomerRowMapper.COLUMNS), customerRowMapper, CustomerSearch.containsPattern(query), CustomerSearch.containsPattern(query), prefix, prefix, from.id(), rankLimit);
+        });
+    }
+
+    @Override
+    public boolean insertCustomer(Customer customer) {
+        // The email is reserved in customer_email first and the customer only inserted when that worked. Like ON
+        // CONFLICT (email) DO NOTHING, which a partitioned table can't offer, a taken email inserts nothing
+        String sql = """
+                WITH reserved AS (
+                    INSERT INTO customer_email (email, customer_id) VALUES(?, ?)
+                    ON CONFLICT (email) DO NOTHING
+                    RETURNING customer_id
+                )
+                INSERT INTO customer (id, name, email, age)
+                SELECT customer_id, ?, ?, ? FROM reserved
+                RETURNING id;
                 """;
-        jdbcTemplate.update(sql, customer.getName(), customer.getEmail(), customer.getAge());
+        Integer id = customerIdAllocator.nextId();
+        boolean inserted = !jdbcTemplate.queryForList(sql, Integer.class, customer.getEmail(), id, customer.getName(), customer.getEmail(), customer.getAge()).isEmpty();
+        if (inserted) {
+            customer.setId(id);
+        }
+        return inserted;
+    }
+
+    @Override
+    @Transactional
+    public List<Customer> insertCustomers(List<Customer> customers) {
+        // Each batch reserves its emails in customer_email like insertCustomer and only inserts the customers whose
+        // email it got, so an email registered since the caller checked skips its customer instead of failing the
+        // batch. The rows go as array parameters, one statement per batch whatever its size
+        String sql = """
+                WITH batch AS (
+                    SELECT * FROM unnest(?::integer[], ?::text[], ?::text[], ?::integer[]) AS batch(id, name, email, age)
+                ), reserved AS (
+                    INSERT INTO customer_email (email, customer_id)
+                    SELECT email, id FROM batch
+                    ON CONFLICT (email) DO NOTHING
+                    RETURNING customer_id
+                )
+                INSERT INTO customer (id, name, email, age)
+                SELECT batch.id, batch.name, batch.email, batch.age FROM batch JOIN reserved ON reserved.customer_id = batch.id
+                RETURNING id;
+                """;
+        // Ids come from the allocator so the batch needs no sequence call per row
+        customers.forEach(customer -> customer.setId(customerIdAllocator.nextId()));
+        Set<Integer> inserted = new HashSet<>();
+        for (int from = 0; from < customers.size(); from += INSERT_BATCH_SIZE) {
+            List<Customer> batch = customers.subList(from, Math.min(from + INSERT_BATCH_SIZE, customers.size()));
+            inserted.addAll(jdbcTemplate.query(sql, statement -> {
+                Connection connection = statement.getConnection();
+                statement.setArray(1, connection.createArrayOf("integer", batch.stream().map(Customer::getId).toArray()));
+                statement.setArray(2, connection.createArrayOf("text", batch.stream().map(Customer::getName).toArray()));
+                statement.setArray(3, connection.createArrayOf("text", batch.stream().map(Customer::getEmail).toArray()));
+                statement.setArray(4, connection.createArrayOf("integer", batch.stream().map(Customer::getAge).toArray()));
+            }, (resultSet, rowNum) -> resultSet.getInt(1)));
+        }
+        return inserted(customers, inserted);
     }
 
     @Override
     public boolean existsPersonWithEmail(String email) {
+        // customer_email answers with one index probe, the customer partitions would each need one
         String sql = """
-        SELECT count(id) FROM customer WHERE email = ?;
+        SELECT EXISTS(SELECT 1 FROM customer_email WHERE email = ?);
         """;
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, email);
-        return count != null && count > 0;
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, email));
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        String sql = """
+                SELECT email FROM customer_email WHERE email = ANY(?);
+                """;
+        // One array parameter instead of an IN list keeps the statement the same for any number of emails
+        return new HashSet<>(jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setArray(1, connection.createArrayOf("text", emails.toArray()));
+            return statement;
+        }, (resultSet, rowNum) -> resultSet.getString("email")));
     }
 
     @Override
-    public void deleteCustomerById(Integer id) {
+    public boolean deleteCustomerById(Integer id) {
         String sql = """
                 DELETE FROM customer WHERE id = ?;
                 """;
-        jdbcTemplate.update(sql, id);
+        // The affected row count tells whether the customer existed, no separate check needed
+        return jdbcTemplate.update(sql, id) > 0;
     }
 
     @Override
     public boolean existsPersonById(Integer id) {
         // TODO: Fix Method Name, not consistent
         String sql = """
-        SELECT count(id) FROM customer WHERE id = ?;
+        SELECT EXISTS(SELECT 1 FROM customer WHERE id = ?);
         """;
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, id);
-        return count != null && count > 0;
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, id));
     }
 
     @Override
-    public void updateCustomer(Customer updatedCustomer) {
+    public Optional<Customer> updateCustomer(Customer updatedCustomer) {
+        List<Object> values = new ArrayList<>(3);
+        int shape = 0;
         if (updatedCustomer.getName() != null) {
-            String sql = "UPDATE customer SET name = ? WHERE id = ?;";
-            jdbcTemplate.update(sql, updatedCustomer.getName(), updatedCustomer.getId());
+            values.add(updatedCustomer.getName());
+            shape |= UPDATE_NAME;
         }
-
         if (updatedCustomer.getEmail() != null) {
-            String sql = "UPDATE customer SET email = ? WHERE id = ?;";
-            jdbcTemplate.update(sql, updatedCustomer.getEmail(), updatedCustomer.getId());
+            values.add(updatedCustomer.getEmail());
+            shape |= UPDATE_EMAIL;
         }
-
         if (updatedCustomer.getAge() != null) {
-            String sql = "UPDATE customer SET age = ? WHERE id = ?;";
-            jdbcTemplate.update(sql, updatedCustomer.getAge(), updatedCustomer.getId());
+            values.add(updatedCustomer.getAge());
+            shape |= UPDATE_AGE;
+        }
+        if (shape == 0) {
+            return Optional.empty();
+        }
+        // The values are bound twice: once for SET and once to skip the write when nothing changes
+        List<Object> args = new ArrayList<>(values.size() * 2 + 2);
+        args.addAll(values);
+        args.add(updatedCustomer.getId());
+        if (updatedCustomer.getVersion() != null) {
+            args.add(updatedCustomer.getVersion());
+            shape |= UPDATE_IF_VERSION;
+        }
+        args.addAll(values);
+        return jdbcTemplate.query(UPDATE_SQL[shape], customerRowMapper, args.toArray()).stream().findFirst();
+    }
+
+    /**
+     * The customers whose id is in insertedIds, in order. The others weren't saved and get their id cleared
+     */
+    static List<Customer> inserted(List<Customer> customers, Set<Integer> insertedIds) {
+        List<Customer> inserted = new ArrayList<>(insertedIds.size());
+        for (Customer customer : customers) {
+            if (insertedIds.contains(customer.getId())) {
+                inserted.add(customer);
+            } else {
+                customer.setId(null);
+            }
+        }
+        return inserted;
+    }
+
+    private static String[] buildUpdateStatements() {
+        String[] columns = {"name", "email", "age"};
+        String[] statements = new String[UPDATE_IF_VERSION << 1];
+        for (int shape = 1; shape < statements.length; shape++) {
+            if ((shape & ~UPDATE_IF_VERSION) == 0) {
+                continue;
+            }
+            List<String> assignments = new ArrayList<>();
+            List<String> changes = new ArrayList<>();
+            for (int column = 0; column < columns.length; column++) {
+                if ((shape & (1 << column)) != 0) {
+                    assignments.add(columns[column] + " = ?");
+                    changes.add(columns[column] + " IS DISTINCT FROM ?");
+                }
+            }
+            assignments.add("version = version + 1");
+            statements[shape] = """
+                    UPDATE customer SET %s WHERE id = ?%s AND (%s) RETURNING %s;
+                    """.formatted(String.join(", ", assignments),
+                    (shape & UPDATE_IF_VERSION) != 0 ? " AND version = ?" : "",
+                    String.join(" OR ", changes), CustomerRowMapper.COLUMNS);
         }
+        return statements;
     }
 }
@@ -1,15 +1,36 @@
 package com.ag.customer.service;
 
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerQuery;
 import com.ag.customer.repository.CustomerRepository;
+import com.ag.customer.repository.CustomerSearchPosition;
 import com.ag.customer.repository.CustomerDao;
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Repository("jpa")
+// Hibernate and the repositories only exist on this backend, see JpaAutoConfigurationFilter
+@ConditionalOnProperty(name = "customers.dao.backend", havingValue = "jpa")
 public class CustomerJPADataAccessService implements CustomerDao {
+    // Customers loaded per keyset page while streaming
+    private static final int STREAM_PAGE_SIZE = 1000;
+    // Bind parameters per IN list when looking up existing emails or customers by id
+    private static final int EMAIL_LOOKUP_CHUNK_SIZE = 1000;
+    private static final int ID_LOOKUP_CHUNK_SIZE = 1000;
     private final CustomerRepository customerRepository;
 
     public CustomerJPADataAccessService(CustomerRepository customerRepository) {
@@ -20,14 +41,100 @@ public class CustomerJPADataAccessService implements CustomerDao {
         return customerRepository.findAll();
     }
 
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) {
+        return customerRepository.findByQuery(CustomerQuery.select(filter, after, limit));
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        // Walk the table page by page. Views are not entities, so the persistence context keeps no copy of them
+        int afterId = 0;
+        List<CustomerView> page;
+        do {
+            page = customerRepository.findViewsByIdGreaterThanOrderByIdAsc(afterId, Limit.of(STREAM_PAGE_SIZE));
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).id();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+    }
+
     @Override
     public Optional<Customer> selectCustomerById(Integer id) {
         return customerRepository.findById(Math.toIntExact(id));
     }
 
     @Override
-    public void insertCustomer(Customer customer) {
-        customerRepository.save(customer);
+    public List<Customer> selectCustomersByIds(Collection<Integer> ids) {
+        // findAllById is one IN query; hibernate.query.in_clause_parameter_padding keeps the number of distinct
+        // statements, and so of cached plans, down to one per power of two
+        List<Customer> customers = new ArrayList<>();
+        List<Integer> pending = new ArrayList<>(ids);
+        for (int from = 0; from < pending.size(); from += ID_LOOKUP_CHUNK_SIZE) {
+            int to = Math.min(from + ID_LOOKUP_CHUNK_SIZE, pending.size());
+            customers.addAll(customerRepository.findAllById(pending.subList(from, to)));
+        }
+        return customers;
+    }
+
+    @Override
+    public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) {
+        String prefix = CustomerQuery.prefix(query);
+        String upperBound = CustomerQuery.upperBound(prefix);
+        return CustomerSearch.search(after, limit, (rank, from, rankLimit) -> switch (rank) {
+            case CustomerSearch.NAME_PREFIX -> customerRepository.findByNamePrefix(prefix, upperBound, from.key(), from.id(), rankLimit);
+            case CustomerSearch.EMAIL_PREFIX -> customerRepository.findByEmailPrefix(prefix, upperBound, from.key(), from.id(), rankLimit);
+            default -> customerRepository.findContaining(CustomerSearch.containsPattern(query), prefix, from.id(), rankLimit);
+        });
+    }
+
+    @Override
+    public boolean insertCustomer(Customer customer) {
+        try {
+            // Flush so the unique email constraint is checked now and not at some later commit
+            customerRepository.saveAndFlush(customer);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            if (!isUniqueViolation(e)) {
+                throw e;
+            }
+            customer.setId(null);
+            customer.setVersion(null);
+            return false;
+        }
+    }
+
+    @Override
+    public List<Customer> insertCustomers(List<Customer> customers) {
+        List<Customer> pending = new ArrayList<>(customers);
+        while (true) {
+            try {
+                // saveAll runs in one transaction and Hibernate groups the inserts using hibernate.jdbc.batch_size
+                customerRepository.saveAll(pending);
+                return pending;
+            } catch (DataIntegrityViolationException e) {
+                if (!isUniqueViolation(e)) {
+                    throw e;
+                }
+                // An email was registered since the caller checked and the batch rolled back. Leave out the emails
+                // taken by now and save the rest again; every round drops at least one customer
+                pending.forEach(customer -> {
+                    customer.setId(null);
+                    customer.setVersion(null);
+                });
+                Set<String> taken = selectExistingEmails(pending.stream().map(Customer::getEmail).toList());
+                if (taken.isEmpty()) {
+                    throw e;
+                }
+                pending.removeIf(customer -> taken.contains(customer.getEmail()));
+            }
+        }
     }
 
     @Override
@@ -36,8 +143,20 @@ public class CustomerJPADataAccessService implements CustomerDao {
     }
 
     @Override
-    public void deleteCustomerById(Integer id) {
-        customerRepository.deleteById(Math.toIntExact(id));
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        List<String> pending = new ArrayList<>(emails);
+        for (int from = 0; from < pending.size(); from += EMAIL_LOOKUP_CHUNK_SIZE) {
+            int to = Math.min(from + EMAIL_LOOKUP_CHUNK_SIZE, pending.size());
+            existing.addAll(customerRepository.findExistingEmails(pending.subList(from, to)));
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer id) {
+        // A bulk delete is one statement, deleteById would load the entity first
+        return customerRepository.deleteCustomerById(id) > 0;
     }
 
     @Override
@@ -46,8 +165,39 @@ public class CustomerJPADataAccessService implements CustomerDao {
     }
 
     @Override
-    public void updateCustomer(Customer updatedCustomer) {
-        // update the customer
-        customerRepository.save(updatedCustomer);
+    @Transactional
+    public Optional<Customer> updateCustomer(Customer updatedCustomer) {
+        Optional<Customer> stored = customerRepository.findById(updatedCustomer.getId());
+        if (stored.isEmpty()) {
+            return Optional.empty();
+        }
+        Customer customer = stored.get();
+        if (updatedCustomer.getVersion() != null && !updatedCustomer.getVersion().equals(customer.getVersion())) {
+            return Optional.empty();
+        }
+        boolean changes = false;
+        if (updatedCustomer.getName() != null && !updatedCustomer.getName().equals(customer.getName())) {
+            customer.setName(updatedCustomer.getName());
+            changes = true;
+        }
+        if (updatedCustomer.getEmail() != null && !updatedCustomer.getEmail().equals(customer.getEmail())) {
+            customer.setEmail(updatedCustomer.getEmail());
+            changes = true;
+        }
+        if (updatedCustomer.getAge() != null && !updatedCustomer.getAge().equals(customer.getAge())) {
+            customer.setAge(updatedCustomer.getAge());
+            changes = true;
+        }
+        if (!changes) {
+            return Optional.empty();
+        }
+        // Flush so a duplicate email fails here and not at commit. The @Version check of the UPDATE catches a
+        // concurrent write between the read above and this flush
+        return Optional.of(customerRepository.saveAndFlush(customer));
+    }
+
+    private static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        // 23505 is the Postgres SQLSTATE for unique_violation
+        return e.getMostSpecificCause() instanceof SQLException sqlException && "23505".equals(sqlException.getSQLState());
     }
 }
@@ -0,0 +1,299 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerQuery;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.customer.repository.CustomerSearchPosition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The jdbc backend on {@link NamedParameterJdbcTemplate}. Every operation runs one SQL constant, built once: the
+ * template parses a statement's named parameters the first time it sees its text and reuses the parse after that,
+ * and the PostgreSQL driver keeps a server side prepared statement per connection for each text it has run
+ * prepareThreshold times. So no call builds, parses or plans its SQL again once the application is warm. Compare
+ * with the jdbc backend using customers.dao.backend=jdbc-named
+ */
+@Repository("jdbc-named")
+@ConditionalOnProperty(name = "customers.dao.backend", havingValue = "jdbc-named")
+public class CustomerNamedJdbcDataAccessService implements CustomerDao {
+    // Rows pulled per round trip while streaming. Postgres only honours it inside a transaction
+    private static final int STREAM_FETCH_SIZE = 1000;
+    // Rows sent to the database per batch insert statement
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final String SELECT_ALL = """
+            SELECT %s FROM customer
+            """.formatted(CustomerRowMapper.COLUMNS);
+    private static final String SELECT_AFTER_ID = """
+            SELECT %s FROM customer WHERE id > :afterId ORDER BY id LIMIT :limit
+            """.formatted(CustomerRowMapper.COLUMNS);
+    private static final String STREAM_ALL = """
+            SELECT %s FROM customer ORDER BY id
+            """.formatted(CustomerRowMapper.COLUMNS);
+    private static final String SELECT_BY_ID = """
+            SELECT %s FROM customer WHERE id = :id
+            """.formatted(CustomerRowMapper.COLUMNS);
+    // One array parameter whatever the number of ids, an expanded IN list would be a new statement per size. The
+    // join looks each id up in its own partition, which id = ANY(:ids) only does under a custom plan
+    private static final String SELECT_BY_IDS = """
+            SELECT %s FROM unnest(:ids::integer[]) AS ids(id) JOIN customer USING (id)
+            """.formatted(CustomerRowMapper.COLUMNS);
+    private static final String SEARCH_NAME_PREFIX = """
+            SELECT %s FROM customer
+            WHERE lower(name) COLLATE "C" >= :prefix AND lower(name) COLLATE "C" < :upperBound
+            AND (lower(name) COLLATE "C", id) > (:afterKey, :afterId)
+            ORDER BY lower(name) COLLATE "C", id LIMIT :limit
+            """.formatted(CustomerRowMapper.COLUMNS);
+    private static final String SEARCH_EMAIL_PREFIX = """
+            SELECT %s FROM customer
+            WHERE lower(email) COLLATE "C" >= :prefix AND lower(email) COLLATE "C" < :upperBound AND NOT starts_with(lower(name), :prefix)
+            AND (lower(email) COLLATE "C", id) > (:afterKey, :afterId)
+            ORDER BY lower(email) COLLATE "C", id LIMIT :limit
+            """.formatted(CustomerRowMapper.COLUMNS);
+    private static final String SEARCH_CONTAINS = """
+            SELECT %s FROM customer
+            WHERE (name ILIKE :pattern OR email ILIKE :pattern) AND NOT starts_with(lower(name), :prefix) AND NOT starts_with(lower(email), :prefix)
+            AND id > :afterId
+            ORDER BY id LIMIT :limit
+            """.formatted(CustomerRowMapper.COLUMNS);
+    // Inserts nothing when the email can't be reserved in customer_email, see CustomerJDBCDataAccessService
+    private static final String INSERT = """
+            WITH reserved AS (
+                INSERT INTO customer_email (email, customer_id) VALUES (:email, :id)
+                ON CONFLICT (email) DO NOTHING
+                RETURNING customer_id
+            )
+            INSERT INTO customer (id, name, email, age)
+            SELECT customer_id, :name, :email, :age FROM reserved
+            RETURNING id
+            """;
+    // Inserts the rows of the arrays whose email it could reserve, see CustomerJDBCDataAccessService. One statement
+    // per batch of INSERT_BATCH_SIZE customers, sent as array parameters rather than a JDBC batch
+    private static final String INSERT_BATCH = """
+            WITH batch AS (
+                SELECT * FROM unnest(:ids::integer[], :names::text[], :emails::text[], :ages::integer[]) AS batch(id, name, email, age)
+            ), reserved AS (
+                INSERT INTO customer_email (email, customer_id)
+                SELECT email, id FROM batch
+                ON CONFLICT (email) DO NOTHING
+                RETURNING customer_id
+            )
+            INSERT INTO customer (id, name, email, age)
+            SELECT batch.id, batch.name, batch.email, batch.age FROM batch JOIN reserved ON reserved.customer_id = batch.id
+            RETURNING id
+            """;
+    private static final String EXISTS_WITH_EMAIL = """
+            SELECT EXISTS(SELECT 1 FROM customer_email WHERE email = :email)
+            """;
+    private static final String SELECT_EXISTING_EMAILS = """
+            SELECT email FROM customer_email WHERE email = ANY(:emails)
+            """;
+    private static final String DELETE_BY_ID = """
+            DELETE FROM customer WHERE id = :id
+            """;
+    private static final String EXISTS_WITH_ID = """
+            SELECT EXISTS(SELECT 1 FROM customer WHERE id = :id)
+            """;
+    // One UPDATE per combination of changed columns, as in the jdbc backend. Named parameters bind a value used
+    // twice, for SET and for the check that skips writes without a change, from one entry
+    private static final int UPDATE_NAME = 1;
+    private static final int UPDATE_EMAIL = 1 << 1;
+    private static final int UPDATE_AGE = 1 << 2;
+    private static final int UPDATE_IF_VERSION = 1 << 3;
+    private static final String[] UPDATE_SQL = buildUpdateStatements();
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final CustomerRowMapper customerRowMapper;
+    private final CustomerIdAllocator customerIdAllocator;
+
+    public CustomerNamedJdbcDataAccessService(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper, CustomerIdAllocator customerIdAllocator) {
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.jdbcTemplate = jdbcTemplate;
+        this.customerRowMapper = customerRowMapper;
+        this.customerIdAllocator = customerIdAllocator;
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return namedJdbcTemplate.query(SELECT_ALL, customerRowMapper);
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        return namedJdbcTemplate.query(SELECT_AFTER_ID, new MapSqlParameterSource("afterId", afterId).addValue("limit", limit), customerRowMapper);
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) {
+        // CustomerQuery builds positional SQL, one text per filter and sort shape
+        CustomerQuery query = CustomerQuery.select(filter, after, limit);
+        return jdbcTemplate.query(query.sql(), customerRowMapper, query.args().toArray());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        // A fetch size makes the driver use a server side cursor instead of reading the whole result set
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(STREAM_ALL);
+            statement.setFetchSize(STREAM_FETCH_SIZE);
+            return statement;
+        }, resultSet -> {
+            consumer.accept(customerRowMapper.mapView(resultSet, resultSet.getRow() - 1));
+        });
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        return namedJdbcTemplate.query(SELECT_BY_ID, new MapSqlParameterSource("id", id), customerRowMapper).stream().findFirst();
+    }
+
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> ids) {
+        return namedJdbcTemplate.query(SELECT_BY_IDS, new MapSqlParameterSource("ids", ids.toArray(Integer[]::new)), customerRowMapper);
+    }
+
+    @Override
+    public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) {
+        String prefix = CustomerQuery.prefix(query);
+        MapSqlParameterSource params = new MapSqlParameterSource("prefix", prefix)
+                .addValue("upperBound", CustomerQuery.upperBound(prefix))
+                .addValue("pattern", CustomerSearch.containsPattern(query));
+        return CustomerSearch.search(after, limit, (rank, from, rankLimit) -> {
+            String sql = switch (rank) {
+                case CustomerSearch.NAME_PREFIX -> SEARCH_NAME_PREFIX;
+                case CustomerSearch.EMAIL_PREFIX -> SEARCH_EMAIL_PREFIX;
+                default -> SEARCH_CONTAINS;
+            };
+            params.addValue("afterKey", from.key()).addValue("afterId", from.id()).addValue("limit", rankLimit);
+            return namedJdbcTemplate.query(sql, params, customerRowMapper);
+        });
+    }
+
+    @Override
+    public boolean insertCustomer(Customer customer) {
+        Integer id = customerIdAllocator.nextId();
+        boolean inserted = !namedJdbcTemplate.queryForList(INSERT, customerParams(id, customer), Integer.class).isEmpty();
+        if (inserted) {
+            customer.setId(id);
+        }
+        return inserted;
+    }
+
+    @Override
+    @Transactional
+    public List<Customer> insertCustomers(List<Customer> customers) {
+        // Ids come from the allocator so the batch needs no sequence call per row
+        customers.forEach(customer -> customer.setId(customerIdAllocator.nextId()));
+        Set<Integer> inserted = new HashSet<>();
+        for (int from = 0; from < customers.size(); from += INSERT_BATCH_SIZE) {
+            List<Customer> batch = customers.subList(from, Math.min(from + INSERT_BATCH_SIZE, customers.size()));
+            MapSqlParameterSource params = new MapSqlParameterSource("ids", batch.stream().map(Customer::getId).toArray(Integer[]::new))
+                    .addValue("names", batch.stream().map(Customer::getName).toArray(String[]::new))
+                    .addValue("emails", batch.stream().map(Customer::getEmail).toArray(String[]::new))
+                    .addValue("ages", batch.stream().map(Customer::getAge).toArray(Integer[]::new));
+            inserted.addAll(namedJdbcTemplate.queryForList(INSERT_BATCH, params, Integer.class));
+        }
+        return CustomerJDBCDataAccessService.inserted(customers, inserted);
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        return Boolean.TRUE.equals(namedJdbcTemplate.queryForObject(EXISTS_WITH_EMAIL, new MapSqlParameterSource("email", email), Boolean.class));
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(namedJdbcTemplate.queryForList(SELECT_EXISTING_EMAILS,
+                new MapSqlParameterSource("emails", emails.toArray(String[]::new)), String.class));
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer id) {
+        // The affected row count tells whether the customer existed, no separate check needed
+        return namedJdbcTemplate.update(DELETE_BY_ID, new MapSqlParameterSource("id", id)) > 0;
+    }
+
+    @Override
+    public boolean existsPersonById(Integer id) {
+        return Boolean.TRUE.equals(namedJdbcTemplate.queryForObject(EXISTS_WITH_ID, new MapSqlParameterSource("id", id), Boolean.class));
+    }
+
+    @Override
+    public Optional<Customer> updateCustomer(Customer updatedCustomer) {
+        MapSqlParameterSource params = new MapSqlParameterSource("id", updatedCustomer.getId());
+        int shape = 0;
+        if (updatedCustomer.getName() != null) {
+            params.addValue("name", updatedCustomer.getName());
+            shape |= UPDATE_NAME;
+        }
+        if (updatedCustomer.getEmail() != null) {
+            params.addValue("email", updatedCustomer.getEmail());
+            shape |= UPDATE_EMAIL;
+        }
+        if (updatedCustomer.getAge() != null) {
+            params.addValue("age", updatedCustomer.getAge());
+            shape |= UPDATE_AGE;
+        }
+        if (shape == 0) {
+            return Optional.empty();
+        }
+        if (updatedCustomer.getVersion() != null) {
+            params.addValue("version", updatedCustomer.getVersion());
+            shape |= UPDATE_IF_VERSION;
+        }
+        return namedJdbcTemplate.query(UPDATE_SQL[shape], params, customerRowMapper).stream().findFirst();
+    }
+
+    private static MapSqlParameterSource customerParams(Integer id, Customer customer) {
+        return new MapSqlParameterSource("id", id)
+                .addValue("name", customer.getName())
+                .addValue("email", customer.getEmail())
+                .addValue("age", customer.getAge());
+    }
+
+    private static String[] buildUpdateStatements() {
+        String[] columns = {"name", "email", "age"};
+        String[] statements = new String[UPDATE_IF_VERSION << 1];
+        for (int shape = 1; shape < statements.length; shape++) {
+            if ((shape & ~UPDATE_IF_VERSION) == 0) {
+                continue;
+            }
+            List<String> assignments = new ArrayList<>();
+            List<String> changes = new ArrayList<>();
+            for (int column = 0; column < columns.length; column++) {
+                if ((shape & (1 << column)) != 0) {
+                    assignments.add("%1$s = :%1$s".formatted(columns[column]));
+                    changes.add("%1$s IS DISTINCT FROM :%1$s".formatted(columns[column]));
+                }
+            }
+            assignments.add("version = version + 1");
+            statements[shape] = """
+                    UPDATE customer SET %s WHERE id = :id%s AND (%s) RETURNING %s
+                    """.formatted(String.join(", ", assignments),
+                    (shape & UPDATE_IF_VERSION) != 0 ? " AND version = :version" : "",
+                    String.join(" OR ", changes), CustomerRowMapper.COLUMNS);
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,175 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.ReactiveCustomerDao;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository("r2dbc")
+// Only the WebFlux variant reads through R2DBC, see R2dbcAutoConfigurationFilter
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class CustomerR2DBCDataAccessService implements ReactiveCustomerDao {
+    // Rows pulled per round trip while streaming. The next batch is only asked for once the subscriber wants more
+    private static final int STREAM_FETCH_SIZE = 1000;
+    // One UPDATE per combination of changed columns, built once so every update of the same shape shares its SQL
+    private static final int UPDATE_NAME = 1;
+    private static final int UPDATE_EMAIL = 1 << 1;
+    private static final int UPDATE_AGE = 1 << 2;
+    private static final String[] UPDATE_SQL = buildUpdateStatements();
+    private final DatabaseClient databaseClient;
+
+    public CustomerR2DBCDataAccessService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Flux<Customer> selectAllCustomers() {
+        String sql = """
+                SELECT id, name, email, age, version FROM customer ORDER BY id;
+                """;
+        return databaseClient.sql(sql)
+                .filter(statement -> statement.fetchSize(STREAM_FETCH_SIZE))
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        String sql = """
+                SELECT id, name, email, age, version FROM customer WHERE id > :afterId ORDER BY id LIMIT :limit;
+                """;
+        return databaseClient.sql(sql)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .all();
+    }
+
+    @Override
+    public Mono<Customer> selectCustomerById(Integer id) {
+        String sql = """
+                SELECT id, name, email, age, version FROM customer WHERE id = :id;
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .map(CustomerR2DBCDataAccessService::mapCustomer)
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> insertCustomer(Customer customer) {
+        // CustomerIdAllocator blocks, so the id comes straight from the sequence. Under either Hibernate optimizer
+        // the value is the edge of a block nobody else was handed, so it can't collide with the other backends
+        // The email is reserved in customer_email first, a taken email inserts nothing
+        String sql = """
+                WITH reserved AS (
+                    INSERT INTO customer_email (email, customer_id) VALUES(:email, nextval('customer_id_seq'))
+                    ON CONFLICT (email) DO NOTHING
+                    RETURNING customer_id
+                )
+                INSERT INTO customer (id, name, email, age)
+                SELECT customer_id, :name, :email, :age FROM reserved
+                RETURNING id;
+                """;
+        return databaseClient.sql(sql)
+                .bind("name", customer.getName())
+                .bind("email", customer.getEmail())
+                .bind("age", customer.getAge())
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .map(id -> {
+                    customer.setId(id);
+                    return true;
+                })
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public Mono<Boolean> deleteCustomerById(Integer id) {
+        String sql = """
+                DELETE FROM customer WHERE id = :id;
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    @Override
+    public Mono<Boolean> existsPersonById(Integer id) {
+        String sql = """
+                SELECT EXISTS(SELECT 1 FROM customer WHERE id = :id) AS present;
+                """;
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .map(row -> Boolean.TRUE.equals(row.get("present", Boolean.class)))
+                .one();
+    }
+
+    @Override
+    public Mono<Customer> updateCustomer(Customer updatedCustomer) {
+        int shape = 0;
+        if (updatedCustomer.getName() != null) {
+            shape |= UPDATE_NAME;
+        }
+        if (updatedCustomer.getEmail() != null) {
+            shape |= UPDATE_EMAIL;
+        }
+        if (updatedCustomer.getAge() != null) {
+            shape |= UPDATE_AGE;
+        }
+        if (shape == 0) {
+            return Mono.empty();
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(UPDATE_SQL[shape]).bind("id", updatedCustomer.getId());
+        if (updatedCustomer.getName() != null) {
+            spec = spec.bind("name", updatedCustomer.getName());
+        }
+        if (updatedCustomer.getEmail() != null) {
+            spec = spec.bind("email", updatedCustomer.getEmail());
+        }
+        if (updatedCustomer.getAge() != null) {
+            spec = spec.bind("age", updatedCustomer.getAge());
+        }
+        return spec.map(CustomerR2DBCDataAccessService::mapCustomer).one();
+    }
+
+    private static Customer mapCustomer(Readable row) {
+        return new Customer(
+                row.get("id", Integer.class),
+                row.get("name", String.class),
+                row.get("email", String.class),
+                row.get("age", Integer.class),
+                row.get("version", Long.class)
+        );
+    }
+
+    private static String[] buildUpdateStatements() {
+        String[] columns = {"name", "email", "age"};
+        String[] statements = new String[1 << columns.length];
+        for (int shape = 1; shape < statements.length; shape++) {
+            List<String> assignments = new ArrayList<>();
+            List<String> changes = new ArrayList<>();
+            for (int column = 0; column < columns.length; column++) {
+                if ((shape & (1 << column)) != 0) {
+                    // A named parameter used twice is bound once
+                    assignments.add("%s = :%s".formatted(columns[column], columns[column]));
+                    changes.add("%s IS DISTINCT FROM :%s".formatted(columns[column], columns[column]));
+                }
+            }
+            assignments.add("version = version + 1");
+            statements[shape] = """
+                    UPDATE customer SET %s WHERE id = :id AND (%s) RETURNING id, name, email, age, version;
+                    """.formatted(String.join(", ", assignments), String.join(" OR ", changes));
+        }
+        return statements;
+    }
+}
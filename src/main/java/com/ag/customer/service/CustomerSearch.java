@@ -0,0 +1,66 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerQuery;
+import com.ag.customer.repository.CustomerSearchPosition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ranking shared by the DAO searches. Customers whose name starts with the query come first, then those whose
+ * email does, then those containing it anywhere, each rank ordered by the matched column and id. Ranks are read
+ * one query at a time and the later ones only when the page isn't full yet: the prefix ranks come straight out of
+ * an index in order, the contains rank needs the trigram index and sorting, so it is only paid when needed.
+ * Pages are keysets: a page resumes after the position of the previous one inside its rank, so no page reads the
+ * results before it
+ */
+final class CustomerSearch {
+    static final int NAME_PREFIX = 0;
+    static final int EMAIL_PREFIX = 1;
+    static final int CONTAINS = 2;
+
+    @FunctionalInterface
+    interface RankQuery {
+        /**
+         * At most limit customers of the given rank that come after the (key, id) of after, in rank order
+         */
+        List<Customer> select(int rank, CustomerSearchPosition after, int limit);
+    }
+
+    private CustomerSearch() {}
+
+    static List<Customer> search(CustomerSearchPosition after, int limit, RankQuery rankQuery) {
+        CustomerSearchPosition from = after == null ? CustomerSearchPosition.startOf(NAME_PREFIX) : after;
+        List<Customer> matches = new ArrayList<>();
+        for (int rank = from.rank(); rank <= CONTAINS && matches.size() < limit; rank++) {
+            // Only the rank the previous page ended in resumes in the middle, the later ones start at their beginning
+            CustomerSearchPosition rankStart = rank == from.rank() ? from : CustomerSearchPosition.startOf(rank);
+            matches.addAll(rankQuery.select(rank, rankStart, limit - matches.size()));
+        }
+        return matches;
+    }
+
+    /**
+     * The position of a search result for query, which a page ending with it resumes after
+     */
+    static CustomerSearchPosition position(String query, Customer customer) {
+        String prefix = CustomerQuery.prefix(query);
+        String name = CustomerQuery.prefix(customer.getName());
+        if (name.startsWith(prefix)) {
+            return new CustomerSearchPosition(NAME_PREFIX, name, customer.getId());
+        }
+        String email = CustomerQuery.prefix(customer.getEmail());
+        if (email.startsWith(prefix)) {
+            return new CustomerSearchPosition(EMAIL_PREFIX, email, customer.getId());
+        }
+        return new CustomerSearchPosition(CONTAINS, "", customer.getId());
+    }
+
+    /**
+     * ILIKE pattern for the query anywhere, with its wildcards escaped
+     */
+    static String containsPattern(String query) {
+        return "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+}
@@ -1,17 +1,45 @@
 package com.ag.customer.service;
 
+import com.ag.config.ReadRouting;
 import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
 import com.ag.customer.repository.CustomerRepository;
+import com.ag.customer.repository.CustomerSearchPosition;
+import com.ag.customer.repository.CustomerSort;
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.dto.CustomerListRequest;
+import com.ag.dto.CustomerLookupResult;
+import com.ag.dto.CustomerPage;
 import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerRegistrationResult;
 import com.ag.dto.CustomerUpdateRequest;
 import com.ag.exceptions.DuplicateResourceException;
+import com.ag.exceptions.PreconditionFailedException;
 import com.ag.exceptions.RequestValidationException;
 import com.ag.exceptions.ResourceNotFoundException;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Business Logic
@@ -19,65 +47,289 @@ import java.util.List;
  */
 @Service
 public class CustomerService {
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_REGISTRATION_BATCH_SIZE = 10_000;
+    static final int MIN_SEARCH_QUERY_LENGTH = 3;
+    static final int MAX_LOOKUP_SIZE = 1000;
     private final CustomerDao customerDao;
+    private final CustomerCache customerCache;
+    // Loads a single customer on a cache miss
+    private final Function<Integer, Optional<Customer>> customerLoader;
 
-    public CustomerService(/*@Qualifier("jpa")*/ @Qualifier("jdbc") CustomerDao customerDao/*, CustomerRepository customerRepository*/) {
+    /**
+     * customers.dao.backend picks the CustomerDao by bean name (jdbc, jdbc-named, jpa or sharded). Only that backend
+     * is created, the others are conditional on it and so is their infrastructure, such as Hibernate for jpa. With a
+     * customers.lookup.coalescing-window concurrent cache misses are read together by a {@link CustomerBatchLoader},
+     * except those of callers that read from the primary after a write when there are read replicas
+     */
+    @Autowired
+    public CustomerService(Map<String, CustomerDao> customerDaos,
+                           @Value("${customers.dao.backend:jdbc}") String backend,
+                           CustomerCache customerCache,
+                           @Value("${customers.lookup.coalescing-window:0ms}") Duration coalescingWindow,
+                           ObjectProvider<ReadRouting> readRouting) {
+        this(selectCustomerDao(customerDaos, backend), customerCache, coalescingWindow, readRouting.getIfAvailable());
+    }
+
+    CustomerService(CustomerDao customerDao, CustomerCache customerCache) {
+        this(customerDao, customerCache, Duration.ZERO, null);
+    }
+
+    CustomerService(CustomerDao customerDao, CustomerCache customerCache, Duration coalescingWindow, ReadRouting readRouting) {
         this.customerDao = customerDao;
+        this.customerCache = customerCache;
+        this.customerLoader = coalescingWindow.isZero()
+                ? customerDao::selectCustomerById
+                : new CustomerBatchLoader(customerDao, coalescingWindow, MAX_LOOKUP_SIZE,
+                        readRouting == null ? () -> false : readRouting::callerOnPrimary)::load;
+    }
+
+    private static CustomerDao selectCustomerDao(Map<String, CustomerDao> customerDaos, String backend) {
+        CustomerDao customerDao = customerDaos.get(backend);
+        if (customerDao == null) {
+            throw new IllegalArgumentException("Unknown customer dao backend %s, expected one of %s".formatted(backend, customerDaos.keySet()));
+        }
+        return customerDao;
     }
 
     public List<Customer> getAllCustomers() {
         return customerDao.selectAllCustomers();
     }
 
+    public CustomerPage getCustomersPage(String cursor, Integer limit) {
+        int pageSize = pageSize(limit);
+        // Ask for one extra row to find out if there is a next page without a count query
+        List<Customer> customers = customerDao.selectCustomersAfterId(CustomerCursor.decode(cursor), pageSize + 1);
+        if (customers.size() <= pageSize) {
+            return new CustomerPage(customers, null);
+        }
+        List<Customer> page = customers.subList(0, pageSize);
+        return new CustomerPage(page, CustomerCursor.encode(page.get(pageSize - 1).getId()));
+    }
+
+    /**
+     * One page of the customers matching the filters, in the requested order. The cursor only resumes a listing
+     * with the same sort
+     */
+    public CustomerPage getCustomersPage(CustomerListRequest request, String cursor, Integer limit) {
+        CustomerFilter filter = customerFilter(request);
+        if (filter.equals(CustomerFilter.NONE)) {
+            return getCustomersPage(cursor, limit);
+        }
+        int pageSize = pageSize(limit);
+        List<Customer> customers = customerDao.selectCustomers(filter, CustomerCursor.decode(filter.sort(), cursor), pageSize + 1);
+        if (customers.size() <= pageSize) {
+            return new CustomerPage(customers, null);
+        }
+        List<Customer> page = customers.subList(0, pageSize);
+        return new CustomerPage(page, CustomerCursor.encode(filter.sort(), page.get(pageSize - 1)));
+    }
+
+    private static int pageSize(Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new RequestValidationException("limit must be between 1 and %s".formatted(MAX_PAGE_SIZE));
+        }
+        return pageSize;
+    }
+
+    private static CustomerFilter customerFilter(CustomerListRequest request) {
+        if (request.minAge() != null && request.maxAge() != null && request.minAge() > request.maxAge()) {
+            throw new RequestValidationException("minAge must not be greater than maxAge");
+        }
+        if (request.name() != null && request.name().isEmpty()) {
+            throw new RequestValidationException("name must not be empty");
+        }
+        // A listing reads the index of its sort and seeks it with the filter. A filter on another field could only
+        // be checked row by row along that index, which reads the whole table when few customers match
+        boolean byAge = request.minAge() != null || request.maxAge() != null;
+        boolean byName = request.name() != null;
+        if (byAge && byName) {
+            throw new RequestValidationException("Filter by age or by name, not both");
+        }
+        CustomerSort sort = parse(CustomerSort.class, "sort", request.sort());
+        if (byAge && sort != null && sort != CustomerSort.AGE) {
+            throw new RequestValidationException("A listing filtered by age must be sorted by age");
+        }
+        if (byName && sort != null && sort != CustomerSort.NAME) {
+            throw new RequestValidationException("A listing filtered by name must be sorted by name");
+        }
+        return new CustomerFilter(request.minAge(), request.maxAge(), request.name(), sort,
+                parse(Sort.Direction.class, "direction", request.direction()));
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String parameter, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            String expected = Arrays.stream(type.getEnumConstants()).map(constant -> constant.name().toLowerCase(Locale.ROOT)).toList().toString();
+            throw new RequestValidationException("Unknown %s %s, expected one of %s".formatted(parameter, value, expected));
+        }
+    }
+
+    /**
+     * Ranked search by name or email fragment. Shorter queries are rejected, they have no trigram to narrow the search
+     */
+    public CustomerPage searchCustomers(String query, String cursor, Integer limit) {
+        if (query == null || query.strip().length() < MIN_SEARCH_QUERY_LENGTH) {
+            throw new RequestValidationException("Search query must be at least %s characters".formatted(MIN_SEARCH_QUERY_LENGTH));
+        }
+        int pageSize = pageSize(limit);
+        String stripped = query.strip();
+        CustomerSearchPosition after = CustomerCursor.decodeSearchPosition(cursor);
+        // Ask for one extra result to find out if there is a next page
+        List<Customer> customers = customerDao.searchCustomers(stripped, after, pageSize + 1);
+        if (customers.size() <= pageSize) {
+            return new CustomerPage(customers, null);
+        }
+        List<Customer> page = customers.subList(0, pageSize);
+        return new CustomerPage(page, CustomerCursor.encode(CustomerSearch.position(stripped, page.get(pageSize - 1))));
+    }
+
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        customerDao.streamAllCustomers(consumer);
+    }
+
     public Customer getCustomerById(Integer id) {
-        return customerDao.selectCustomerById(id).orElseThrow(() -> new ResourceNotFoundException("customer with id[%s] not found".formatted(id)));
+        return customerCache.get(id, customerLoader).orElseThrow(() -> new ResourceNotFoundException("customer with id[%s] not found".formatted(id)));
+    }
+
+    /**
+     * The customers with the given ids in request order, each once, read from the cache or with one query.
+     * The ids that don't exist are reported as missing
+     */
+    public CustomerLookupResult lookupCustomers(List<Integer> ids) {
+        if (ids.size() > MAX_LOOKUP_SIZE) {
+            throw new RequestValidationException("At most %s customers can be looked up at once".formatted(MAX_LOOKUP_SIZE));
+        }
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new RequestValidationException("ids must not contain null");
+        }
+        Set<Integer> requested = new LinkedHashSet<>(ids);
+        Map<Integer, Customer> found = customerCache.getAll(requested, missing -> customerDao.selectCustomersByIds(missing).stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity())));
+        List<Customer> customers = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : requested) {
+            Customer customer = found.get(id);
+            if (customer == null) {
+                missing.add(id);
+            } else {
+                customers.add(customer);
+            }
+        }
+        return new CustomerLookupResult(customers, missing);
     }
 
     public void addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
-        // If the email exist, throw an exception
-        if (customerDao.existsPersonWithEmail(customerRegistrationRequest.email())) {
+        // Create the customer and save them to the database. The insert is skipped if the email exist
+        Customer customer = new Customer(customerRegistrationRequest.name(), customerRegistrationRequest.email(), customerRegistrationRequest.age());
+        if (!customerDao.insertCustomer(customer)) {
             throw new DuplicateResourceException("Customer with email %s already exist".formatted(customerRegistrationRequest.email()));
         }
-        // Create the customer and save them to the database
-        customerDao.insertCustomer(new Customer(customerRegistrationRequest.name(), customerRegistrationRequest.email(), customerRegistrationRequest.age()));
+        customerCache.invalidate(customer.getId());
+    }
+
+    /**
+     * Registers many customers with one email lookup and batched inserts. Invalid and duplicate customers are
+     * reported instead of failing the whole batch, including those whose email is registered concurrently after the
+     * lookup: the insert skips them
+     */
+    public List<CustomerRegistrationResult> addCustomers(List<CustomerRegistrationRequest> requests) {
+        if (requests.size() > MAX_REGISTRATION_BATCH_SIZE) {
+            throw new RequestValidationException("At most %s customers can be registered at once".formatted(MAX_REGISTRATION_BATCH_SIZE));
+        }
+        Set<String> existingEmails = customerDao.selectExistingEmails(requests.stream()
+                .filter(Objects::nonNull)
+                .map(CustomerRegistrationRequest::email)
+                .filter(Objects::nonNull)
+                .toList());
+
+        List<CustomerRegistrationResult> results = new ArrayList<>(requests.size());
+        List<Customer> customers = new ArrayList<>();
+        Set<String> batchEmails = new HashSet<>();
+        for (CustomerRegistrationRequest request : requests) {
+            if (request == null || request.email() == null || request.name() == null || request.age() == null) {
+                results.add(CustomerRegistrationResult.invalid(request == null ? null : request.email(), "name, email and age are required"));
+            } else if (existingEmails.contains(request.email()) || !batchEmails.add(request.email())) {
+                // Already stored or repeated earlier in the same batch
+                results.add(CustomerRegistrationResult.duplicate(request.email()));
+            } else {
+                customers.add(new Customer(request.name(), request.email(), request.age()));
+                // Decided by the insert below
+                results.add(null);
+            }
+        }
+        Set<String> createdEmails = new HashSet<>();
+        if (!customers.isEmpty()) {
+            for (Customer customer : customerDao.insertCustomers(customers)) {
+                createdEmails.add(customer.getEmail());
+                customerCache.invalidate(customer.getId());
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                String email = requests.get(i).email();
+                results.set(i, createdEmails.contains(email) ? CustomerRegistrationResult.created(email) : CustomerRegistrationResult.duplicate(email));
+            }
+        }
+        return results;
     }
 
     public void deleteCustomerById(Integer id) {
-        // Check if customer exist
-       if (!customerDao.existsPersonById(id)) {
+        // delete customer. Nothing deleted means the customer does not exist
+       if (!customerDao.deleteCustomerById(id)) {
            throw new ResourceNotFoundException("Customer with id[%s] not found".formatted(id));
        }
-       // delete customer
-       customerDao.deleteCustomerById(id);
+       customerCache.invalidate(id);
     }
 
-    public void updateCustomer(Integer id, CustomerUpdateRequest customerUpdateRequest) {
-        Customer customer = getCustomerById(id);
-
-        boolean changes = false;
+    /**
+     * Updates the customer with one statement. The unique email constraint detects taken emails, so the common path
+     * needs no read before the write
+     */
+    public Customer updateCustomer(Integer id, CustomerUpdateRequest customerUpdateRequest) {
+        return updateCustomer(id, customerUpdateRequest, null);
+    }
 
-        if (customerUpdateRequest.name() != null && !customerUpdateRequest.name().equals(customer.getName())) {
-            customer.setName(customerUpdateRequest.name());
-            changes = true;
+    /**
+     * Same update, only applied while the customer still has expectedVersion (any version when null). The version
+     * is checked by the write itself, so two clients updating from the same read can't both succeed
+     */
+    public Customer updateCustomer(Integer id, CustomerUpdateRequest customerUpdateRequest, Long expectedVersion) {
+        if (customerUpdateRequest.name() == null && customerUpdateRequest.email() == null && customerUpdateRequest.age() == null) {
+            throw new RequestValidationException("No data changes found");
         }
-
-        if (customerUpdateRequest.email() != null && !customerUpdateRequest.email().equals(customer.getEmail())) {
-            if (customerDao.existsPersonWithEmail(customerUpdateRequest.email())) {
-                throw new DuplicateResourceException("Email %s already exist".formatted(customerUpdateRequest.email()));
-            }
-            customer.setEmail(customerUpdateRequest.email());
-            changes = true;
+        Customer update = new Customer(id, customerUpdateRequest.name(), customerUpdateRequest.email(), customerUpdateRequest.age(), expectedVersion);
+        Optional<Customer> updated;
+        try {
+            updated = customerDao.updateCustomer(update);
+        } catch (OptimisticLockingFailureException e) {
+            throw new PreconditionFailedException("customer with id[%s] was changed by another request".formatted(id));
+        } catch (DataIntegrityViolationException e) {
+            throw new DuplicateResourceException("Email %s already exist".formatted(customerUpdateRequest.email()));
         }
-
-        if (customerUpdateRequest.age() != null && !customerUpdateRequest.age().equals(customer.getAge())) {
-            customer.setAge(customerUpdateRequest.age());
-            changes = true;
+        if (updated.isEmpty() && expectedVersion != null) {
+            // Nothing was written: the customer does not exist, has another version or already matches the request
+            Customer stored = customerDao.selectCustomerById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException("customer with id[%s] not found".formatted(id)));
+            if (!expectedVersion.equals(stored.getVersion())) {
+                throw new PreconditionFailedException("customer with id[%s] is at version %s, not %s".formatted(id, stored.getVersion(), expectedVersion));
+            }
+            throw new RequestValidationException("No data changes found");
         }
-
-        // if no change exist
-        if (!changes) {
+        // Nothing was written: either the customer does not exist or the request matches what is stored
+        if (updated.isEmpty()) {
+            if (!customerDao.existsPersonById(id)) {
+                throw new ResourceNotFoundException("customer with id[%s] not found".formatted(id));
+            }
             throw new RequestValidationException("No data changes found");
         }
-        customerDao.updateCustomer(customer);
+        customerCache.invalidate(id);
+        return updated.get();
     }
 }
@@ -0,0 +1,100 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.ReactiveCustomerDao;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerUpdateRequest;
+import com.ag.exceptions.DuplicateResourceException;
+import com.ag.exceptions.RequestValidationException;
+import com.ag.exceptions.ResourceNotFoundException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.ag.customer.service.CustomerService.DEFAULT_PAGE_SIZE;
+import static com.ag.customer.service.CustomerService.MAX_PAGE_SIZE;
+
+/**
+ * Same business rules as {@link CustomerService}, on top of the non-blocking ReactiveCustomerDao
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCustomerService {
+    private final ReactiveCustomerDao customerDao;
+    private final CustomerCache customerCache;
+
+    public ReactiveCustomerService(ReactiveCustomerDao customerDao, CustomerCache customerCache) {
+        this.customerDao = customerDao;
+        this.customerCache = customerCache;
+    }
+
+    public Mono<CustomerPage> getCustomersPage(String cursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            return Mono.error(new RequestValidationException("limit must be between 1 and %s".formatted(MAX_PAGE_SIZE)));
+        }
+        // Ask for one extra row to find out if there is a next page without a count query
+        return Mono.defer(() -> customerDao.selectCustomersAfterId(CustomerCursor.decode(cursor), pageSize + 1).collectList())
+                .map(customers -> {
+                    if (customers.size() <= pageSize) {
+                        return new CustomerPage(customers, null);
+                    }
+                    List<Customer> page = customers.subList(0, pageSize);
+                    return new CustomerPage(page, CustomerCursor.encode(page.get(pageSize - 1).getId()));
+                });
+    }
+
+    public Flux<Customer> streamAllCustomers() {
+        return customerDao.selectAllCustomers();
+    }
+
+    public Mono<Customer> getCustomerById(Integer id) {
+        return customerDao.selectCustomerById(id)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("customer with id[%s] not found".formatted(id))));
+    }
+
+    public Mono<Void> addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
+        // The insert is skipped if the email exist
+        Customer customer = new Customer(customerRegistrationRequest.name(), customerRegistrationRequest.email(), customerRegistrationRequest.age());
+        return customerDao.insertCustomer(customer)
+                .flatMap(inserted -> {
+                    if (!inserted) {
+                        return Mono.error(new DuplicateResourceException("Customer with email %s already exist".formatted(customerRegistrationRequest.email())));
+                    }
+                    customerCache.invalidate(customer.getId());
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Void> deleteCustomerById(Integer id) {
+        // Nothing deleted means the customer does not exist
+        return customerDao.deleteCustomerById(id)
+                .flatMap(deleted -> {
+                    if (!deleted) {
+                        return Mono.error(new ResourceNotFoundException("Customer with id[%s] not found".formatted(id)));
+                    }
+                    customerCache.invalidate(id);
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Customer> updateCustomer(Integer id, CustomerUpdateRequest customerUpdateRequest) {
+        if (customerUpdateRequest.name() == null && customerUpdateRequest.email() == null && customerUpdateRequest.age() == null) {
+            return Mono.error(new RequestValidationException("No data changes found"));
+        }
+        Customer update = new Customer(id, customerUpdateRequest.name(), customerUpdateRequest.email(), customerUpdateRequest.age());
+        return customerDao.updateCustomer(update)
+                .onErrorMap(DataIntegrityViolationException.class,
+                        e -> new DuplicateResourceException("Email %s already exist".formatted(customerUpdateRequest.email())))
+                .doOnNext(updated -> customerCache.invalidate(id))
+                // Nothing was written: either the customer does not exist or the request matches what is stored
+                .switchIfEmpty(Mono.defer(() -> customerDao.existsPersonById(id).flatMap(exists -> Mono.error(exists
+                        ? new RequestValidationException("No data changes found")
+                        : new ResourceNotFoundException("customer with id[%s] not found".formatted(id))))));
+    }
+}
@@ -0,0 +1,387 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerQuery;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.customer.repository.CustomerSearchPosition;
+import com.ag.customer.repository.CustomerShards;
+import com.ag.customer.repository.CustomerShards.Shard;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * CustomerDao over customers split across {@link CustomerShards} by id. A customer's own reads and writes go to its
+ * shard only, listings and searches ask every shard in parallel and merge the pages in the listing's order.
+ * <p>
+ * Emails are global: customer_email in the main database, the directory, maps every stored email to its customer, so
+ * the email checks are one query there and no shard is asked. The shards have no customer_email of their own. An email
+ * is reserved in the directory before the shard write and released after it, so a failure in between leaves at worst
+ * an email reserved for nobody, never two customers with one email. Ids come from customer_id_seq in the main database through the CustomerIdAllocator,
+ * which makes them unique across shards; the sequences of the shards are never used
+ */
+@Repository("sharded")
+@ConditionalOnProperty(name = "customers.dao.backend", havingValue = "sharded")
+public class ShardedCustomerDataAccessService implements CustomerDao {
+    // Rows read per shard and round trip while streaming
+    private static final int STREAM_PAGE_SIZE = 1000;
+    // Rows sent to a database per JDBC batch
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final String INSERT_SQL = """
+            INSERT INTO customer (id, name, email, age)
+            VALUES(?, ?, ?, ?);
+            """;
+    private static final String DELETE_SQL = """
+            DELETE FROM customer WHERE id = ? RETURNING email;
+            """;
+    private static final String DELETE_ALL_SQL = """
+            DELETE FROM customer WHERE id = ANY(?);
+            """;
+    private static final String RESERVE_EMAIL_SQL = """
+            INSERT INTO customer_email (email, customer_id)
+            VALUES(?, ?)
+            ON CONFLICT (email) DO NOTHING;
+            """;
+    private static final String RESERVE_EMAILS_SQL = """
+            INSERT INTO customer_email (email, customer_id)
+            SELECT * FROM unnest(?::text[], ?::integer[])
+            ON CONFLICT (email) DO NOTHING
+            RETURNING customer_id;
+            """;
+    private static final String EMAIL_OWNER_SQL = """
+            SELECT customer_id FROM customer_email WHERE email = ?;
+            """;
+    private static final String EXISTS_EMAIL_SQL = """
+            SELECT EXISTS(SELECT 1 FROM customer_email WHERE email = ?);
+            """;
+    private static final String EXISTING_EMAILS_SQL = """
+            SELECT email FROM customer_email WHERE email = ANY(?);
+            """;
+    private static final String RELEASE_EMAIL_SQL = """
+            DELETE FROM customer_email WHERE email = ? AND customer_id = ?;
+            """;
+    private static final String RELEASE_OTHER_EMAILS_SQL = """
+            DELETE FROM customer_email WHERE customer_id = ? AND email <> ?;
+            """;
+    private static final String RELEASE_CUSTOMER_EMAILS_SQL = """
+            DELETE FROM customer_email WHERE customer_id = ANY(?);
+            """;
+    private static final ParameterizedPreparedStatementSetter<Customer> INSERT_SETTER = (statement, customer) -> {
+        statement.setInt(1, customer.getId());
+        statement.setString(2, customer.getName());
+        statement.setString(3, customer.getEmail());
+        statement.setInt(4, customer.getAge());
+    };
+    // lower(...) COLLATE "C" orders by byte, which for UTF-8 is code point order
+    private static final Comparator<String> CODE_POINT_ORDER = ShardedCustomerDataAccessService::compareCodePoints;
+    private final JdbcTemplate directory;
+    private final TransactionTemplate directoryTransaction;
+    private final CustomerShards customerShards;
+    private final CustomerIdAllocator customerIdAllocator;
+    // The single shard queries, by shard index
+    private final List<CustomerDao> shardDaos;
+
+    public ShardedCustomerDataAccessService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                            CustomerShards customerShards, CustomerRowMapper customerRowMapper,
+                                            CustomerIdAllocator customerIdAllocator) {
+        this.directory = jdbcTemplate;
+        this.directoryTransaction = new TransactionTemplate(transactionManager);
+        this.customerShards = customerShards;
+        this.customerIdAllocator = customerIdAllocator;
+        this.shardDaos = customerShards.all().stream()
+                .<CustomerDao>map(shard -> new CustomerJDBCDataAccessService(shard.jdbcTemplate(), customerRowMapper, customerIdAllocator))
+                .toList();
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return customerShards.scatter(shard -> dao(shard).selectAllCustomers()).stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfterId(Integer afterId, int limit) {
+        return merge(customerShards.scatter(shard -> dao(shard).selectCustomersAfterId(afterId, limit)),
+                Comparator.comparing(Customer::getId), limit);
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) {
+        // Each shard returns its own first page after the same boundary, the global page is the first of their union
+        return merge(customerShards.scatter(shard -> dao(shard).selectCustomers(filter, after, limit)), order(filter), limit);
+    }
+
+    @Override
+    public void streamAllCustomers(Consumer<CustomerView> consumer) {
+        // Every shard is paged by its own keyset and the pages merged by id, so each row is read once
+        List<Shard> shards = customerShards.all();
+        List<ArrayDeque<Customer>> pages = new ArrayList<>(shards.size());
+        int[] lastIds = new int[shards.size()];
+        boolean[] exhausted = new boolean[shards.size()];
+        customerShards.scatter(shard -> dao(shard).selectCustomersAfterId(0, STREAM_PAGE_SIZE))
+                .forEach(page -> pages.add(new ArrayDeque<>(page)));
+        PriorityQueue<Integer> next = new PriorityQueue<>(Comparator.comparing((Integer shard) -> pages.get(shard).peekFirst().getId()));
+        for (int shard = 0; shard < shards.size(); shard++) {
+            exhausted[shard] = pages.get(shard).size() < STREAM_PAGE_SIZE;
+            if (!pages.get(shard).isEmpty()) {
+                next.add(shard);
+            }
+        }
+        while (!next.isEmpty()) {
+            int shard = next.poll();
+            ArrayDeque<Customer> page = pages.get(shard);
+            Customer customer = page.pollFirst();
+            lastIds[shard] = customer.getId();
+            consumer.accept(new CustomerView(customer.getId(), customer.getName(), customer.getEmail(), customer.getAge()));
+            if (page.isEmpty() && !exhausted[shard]) {
+                List<Customer> more = dao(shards.get(shard)).selectCustomersAfterId(lastIds[shard], STREAM_PAGE_SIZE);
+                exhausted[shard] = more.size() < STREAM_PAGE_SIZE;
+                page.addAll(more);
+            }
+            if (!page.isEmpty()) {
+                next.add(shard);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        return dao(id).selectCustomerById(id);
+    }
+
+    @Override
+    public List<Customer> selectCustomersByIds(Collection<Integer> ids) {
+        Map<Shard, List<Integer>> idsByShard = new LinkedHashMap<>();
+        for (Integer id : ids) {
+            idsByShard.computeIfAbsent(customerShards.shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        if (idsByShard.isEmpty()) {
+            return List.of();
+        }
+        // Only the shards holding one of the ids are asked
+        return customerShards.scatter(idsByShard.keySet(), shard -> dao(shard).selectCustomersByIds(idsByShard.get(shard))).stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    @Override
+    public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) {
+        // The ranking is the same on every shard, so each resumes after the same position and returns at most a page
+        return merge(customerShards.scatter(shard -> dao(shard).searchCustomers(query, after, limit)), searchOrder(query), limit);
+    }
+
+    @Override
+    public boolean insertCustomer(Customer customer) {
+        int id = customerIdAllocator.nextId();
+        if (directory.update(RESERVE_EMAIL_SQL, customer.getEmail(), id) == 0) {
+            return false;
+        }
+        try {
+            customerShards.shardOf(id).jdbcTemplate().update(INSERT_SQL, id, customer.getName(), customer.getEmail(), customer.getAge());
+        } catch (RuntimeException e) {
+            directory.update(RELEASE_EMAIL_SQL, customer.getEmail(), id);
+            throw e;
+        }
+        customer.setId(id);
+        return true;
+    }
+
+    /**
+     * The emails are reserved in one directory transaction before any shard is written, and a customer whose email
+     * is taken is left out. Every shard then inserts its customers in its own transaction; when one fails, the shards
+     * that committed are undone and the emails released. Readers may see the batch partly written until then
+     */
+    @Override
+    public List<Customer> insertCustomers(List<Customer> customers) {
+        if (customers.isEmpty()) {
+            return List.of();
+        }
+        customers.forEach(customer -> customer.setId(customerIdAllocator.nextId()));
+        Set<Integer> reservedIds = new HashSet<>();
+        directoryTransaction.executeWithoutResult(status -> {
+            for (int from = 0; from < customers.size(); from += INSERT_BATCH_SIZE) {
+                List<Customer> batch = customers.subList(from, Math.min(from + INSERT_BATCH_SIZE, customers.size()));
+                reservedIds.addAll(directory.query(RESERVE_EMAILS_SQL, statement -> {
+                    statement.setArray(1, statement.getConnection().createArrayOf("text", batch.stream().map(Customer::getEmail).toArray()));
+                    statement.setArray(2, statement.getConnection().createArrayOf("integer", batch.stream().map(Customer::getId).toArray()));
+                }, (resultSet, rowNum) -> resultSet.getInt(1)));
+            }
+        });
+        List<Customer> reserved = CustomerJDBCDataAccessService.inserted(customers, reservedIds);
+        if (reserved.isEmpty()) {
+            return reserved;
+        }
+        Map<Shard, List<Customer>> customersByShard = new LinkedHashMap<>();
+        for (Customer customer : reserved) {
+            customersByShard.computeIfAbsent(customerShards.shardOf(customer.getId()), shard -> new ArrayList<>()).add(customer);
+        }
+        try {
+            customerShards.scatter(customersByShard.keySet(), shard -> shard.transactionTemplate().execute(status ->
+                    shard.jdbcTemplate().batchUpdate(INSERT_SQL, customersByShard.get(shard), INSERT_BATCH_SIZE, INSERT_SETTER)));
+        } catch (RuntimeException e) {
+            customerShards.scatter(customersByShard.keySet(), shard -> updateWithIds(shard.jdbcTemplate(), DELETE_ALL_SQL, customersByShard.get(shard)));
+            updateWithIds(directory, RELEASE_CUSTOMER_EMAILS_SQL, reserved);
+            throw e;
+        }
+        return reserved;
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        return Boolean.TRUE.equals(directory.queryForObject(EXISTS_EMAIL_SQL, Boolean.class, email));
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(directory.query(EXISTING_EMAILS_SQL,
+                statement -> statement.setArray(1, statement.getConnection().createArrayOf("text", emails.toArray())),
+                (resultSet, rowNum) -> resultSet.getString("email")));
+    }
+
+    @Override
+    public boolean deleteCustomerById(Integer id) {
+        List<String> deleted = customerShards.shardOf(id).jdbcTemplate().queryForList(DELETE_SQL, String.class, id);
+        if (deleted.isEmpty()) {
+            return false;
+        }
+        directory.update(RELEASE_EMAIL_SQL, deleted.get(0), id);
+        return true;
+    }
+
+    @Override
+    public boolean existsPersonById(Integer id) {
+        return dao(id).existsPersonById(id);
+    }
+
+    @Override
+    public Optional<Customer> updateCustomer(Customer updatedCustomer) {
+        Integer id = updatedCustomer.getId();
+        String email = updatedCustomer.getEmail();
+        boolean reserved = email != null && reserveEmail(email, id);
+        Optional<Customer> updated;
+        try {
+            updated = dao(id).updateCustomer(updatedCustomer);
+        } catch (RuntimeException e) {
+            if (reserved) {
+                directory.update(RELEASE_EMAIL_SQL, email, id);
+            }
+            throw e;
+        }
+        if (reserved) {
+            // The customer now has the new email and the old one is free, or nothing was written and the new one is
+            if (updated.isPresent()) {
+                directory.update(RELEASE_OTHER_EMAILS_SQL, id, email);
+            } else {
+                directory.update(RELEASE_EMAIL_SQL, email, id);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Reserves email for the customer. False when the customer already has it, a DuplicateKeyException, like the
+     * unique constraint of a single database, when another customer has it
+     */
+    private boolean reserveEmail(String email, Integer id) {
+        while (true) {
+            if (directory.update(RESERVE_EMAIL_SQL, email, id) > 0) {
+                return true;
+            }
+            List<Integer> owner = directory.queryForList(EMAIL_OWNER_SQL, Integer.class, email);
+            if (!owner.isEmpty()) {
+                if (owner.get(0).equals(id)) {
+                    return false;
+                }
+                throw new DuplicateKeyException("Email %s already belongs to customer %s".formatted(email, owner.get(0)));
+            }
+            // Released in between, try again
+        }
+    }
+
+    private CustomerDao dao(Shard shard) {
+        return shardDaos.get(shard.index());
+    }
+
+    private CustomerDao dao(Integer id) {
+        return dao(customerShards.shardOf(id));
+    }
+
+    private static int updateWithIds(JdbcTemplate jdbcTemplate, String sql, List<Customer> customers) {
+        Object[] ids = customers.stream().map(Customer::getId).toArray();
+        return jdbcTemplate.update(sql, statement -> statement.setArray(1, statement.getConnection().createArrayOf("integer", ids)));
+    }
+
+    /**
+     * The first limit customers of the sorted shard pages, in order
+     */
+    private static List<Customer> merge(List<List<Customer>> pages, Comparator<Customer> order, int limit) {
+        List<Customer> merged = new ArrayList<>();
+        pages.forEach(merged::addAll);
+        merged.sort(order);
+        return merged.size() <= limit ? merged : merged.subList(0, limit);
+    }
+
+    /**
+     * The order of CustomerQuery's ORDER BY for the filter
+     */
+    private static Comparator<Customer> order(CustomerFilter filter) {
+        Comparator<Customer> order = switch (filter.sort()) {
+            case ID -> Comparator.comparing(Customer::getId);
+            case AGE -> Comparator.comparing(Customer::getAge).thenComparing(Customer::getId);
+            case NAME -> Comparator.comparing((Customer customer) -> CustomerQuery.prefix(customer.getName()), CODE_POINT_ORDER)
+                    .thenComparing(Customer::getId);
+        };
+        return filter.direction() == Sort.Direction.ASC ? order : order.reversed();
+    }
+
+    /**
+     * The ranking of {@link CustomerSearch}: rank, then the matched column, then id
+     */
+    private static Comparator<Customer> searchOrder(String query) {
+        return Comparator.comparing((Customer customer) -> CustomerSearch.position(query, customer),
+                Comparator.comparingInt(CustomerSearchPosition::rank)
+                        .thenComparing(CustomerSearchPosition::key, CODE_POINT_ORDER)
+                        .thenComparingInt(CustomerSearchPosition::id));
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+}
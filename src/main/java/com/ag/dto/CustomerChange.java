@@ -0,0 +1,12 @@
+package com.ag.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One write of a customer. type is insert, update or delete. changes is a JSON object of the new values: all of them
+ * for an insert, only those that changed for an update and none for a delete
+ */
+public record CustomerChange(long seq, int customerId, String type, @JsonRawValue String changes, OffsetDateTime changedAt) {
+}
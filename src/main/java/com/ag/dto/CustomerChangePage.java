@@ -0,0 +1,9 @@
+package com.ag.dto;
+
+import java.util.List;
+
+/**
+ * Changes in feed order. next is the since of the following request, it stays the same when there were no changes
+ */
+public record CustomerChangePage(List<CustomerChange> changes, long next) {
+}
@@ -0,0 +1,8 @@
+package com.ag.dto;
+
+/**
+ * A row of an import that was not stored. row is its position in the upload, from 1 and without the CSV header.
+ * email is null when the row had none or could not be read
+ */
+public record CustomerImportRejection(long row, String email, String reason) {
+}
@@ -0,0 +1,10 @@
+package com.ag.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. rows counts the customers in the upload, imported those that were stored and rejected
+ * the others. rejections lists the first rejected rows with their reason, in upload order
+ */
+public record CustomerImportResult(long rows, long imported, long rejected, List<CustomerImportRejection> rejections) {
+}
@@ -0,0 +1,8 @@
+package com.ag.dto;
+
+/**
+ * Filters of the customer listing, bound from the query string. name is a prefix, sort is id, name or age and
+ * direction is asc or desc. Filters are by age or by name, and the listing is sorted by the filtered field
+ */
+public record CustomerListRequest(Integer minAge, Integer maxAge, String name, String sort, String direction) {
+}
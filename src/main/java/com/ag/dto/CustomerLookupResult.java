@@ -0,0 +1,11 @@
+package com.ag.dto;
+
+import com.ag.customer.Customer;
+
+import java.util.List;
+
+/**
+ * Customers found by a lookup, in request order, and the requested ids that don't exist
+ */
+public record CustomerLookupResult(List<Customer> customers, List<Integer> missing) {
+}
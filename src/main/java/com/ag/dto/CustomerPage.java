@@ -0,0 +1,11 @@
+package com.ag.dto;
+
+import com.ag.customer.Customer;
+
+import java.util.List;
+
+/**
+ * One page of customers. nextCursor is null when there are no more customers
+ */
+public record CustomerPage(List<Customer> customers, String nextCursor) {
+}
@@ -0,0 +1,24 @@
+package com.ag.dto;
+
+/**
+ * Outcome of one customer in a batch registration, reported in request order
+ */
+public record CustomerRegistrationResult(String email, Status status, String message) {
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID
+    }
+
+    public static CustomerRegistrationResult created(String email) {
+        return new CustomerRegistrationResult(email, Status.CREATED, null);
+    }
+
+    public static CustomerRegistrationResult duplicate(String email) {
+        return new CustomerRegistrationResult(email, Status.DUPLICATE, "Customer with email %s already exist".formatted(email));
+    }
+
+    public static CustomerRegistrationResult invalid(String email, String message) {
+        return new CustomerRegistrationResult(email, Status.INVALID, message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.ag.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.NOT_IMPLEMENTED)
+public class UnsupportedBackendException extends RuntimeException {
+    public UnsupportedBackendException(String message) {
+        super(message);
+    }
+}
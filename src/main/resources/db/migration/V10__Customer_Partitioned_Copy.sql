@@ -0,0 +1,25 @@
+-- Copies the existing customers into customer_partitioned, committing every 10000 rows so no transaction holds
+-- locks or keeps old row versions alive for long. Runs outside a Flyway transaction (see the .conf file), which lets
+-- the block commit. FOR KEY SHARE makes a concurrent delete of a row being copied wait for the batch to commit, so
+-- the delete then reaches the copied row through customer_copy_trigger instead of the copy bringing it back
+DO $$
+DECLARE
+    last_id INTEGER := -2147483648;
+BEGIN
+    LOOP
+        WITH batch AS (
+            SELECT id, name, email, age, version FROM customer
+            WHERE id > last_id ORDER BY id LIMIT 10000
+            FOR KEY SHARE
+        ), copied AS (
+            INSERT INTO customer_partitioned (id, name, email, age, version)
+            SELECT id, name, email, age, version FROM batch
+            ON CONFLICT (id) DO NOTHING
+        )
+        SELECT max(id) INTO last_id FROM batch;
+        EXIT WHEN last_id IS NULL;
+        COMMIT;
+    END LOOP;
+END $$;
+
+ANALYZE customer_partitioned;
@@ -0,0 +1,21 @@
+-- Puts customer_partitioned in place of customer. Every row is there: V10 copied the old ones and
+-- customer_copy_trigger repeated every write since. Only renames happen under the lock, so writers wait for moments
+LOCK TABLE customer IN ACCESS EXCLUSIVE MODE;
+
+-- The sequence would go with the old table otherwise
+ALTER SEQUENCE customer_id_seq OWNED BY customer_partitioned.id;
+DROP TABLE customer;
+DROP FUNCTION copy_customer_write();
+
+ALTER TABLE customer_partitioned RENAME TO customer;
+ALTER INDEX customer_partitioned_pkey RENAME TO customer_pkey;
+ALTER INDEX customer_partitioned_name_prefix_idx RENAME TO customer_name_prefix_idx;
+ALTER INDEX customer_partitioned_email_prefix_idx RENAME TO customer_email_prefix_idx;
+ALTER INDEX customer_partitioned_name_trgm_idx RENAME TO customer_name_trgm_idx;
+ALTER INDEX customer_partitioned_email_trgm_idx RENAME TO customer_email_trgm_idx;
+ALTER INDEX customer_partitioned_age_idx RENAME TO customer_age_idx;
+
+-- The outbox trigger of V7 went with the old table
+CREATE TRIGGER customer_change_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON customer
+    FOR EACH ROW EXECUTE FUNCTION record_customer_change();
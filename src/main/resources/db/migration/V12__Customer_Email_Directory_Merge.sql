@@ -0,0 +1,11 @@
+-- customer_email becomes the only email uniqueness table: the sharded backend reserves its emails there instead of in
+-- customer_email_directory. The customer table of the main database stays empty with that backend, so
+-- keep_customer_email never writes there and the directory rows move over as they are. Elsewhere the directory is empty
+INSERT INTO customer_email (email, customer_id)
+SELECT email, customer_id FROM customer_email_directory
+ON CONFLICT (email) DO NOTHING;
+
+DROP TABLE customer_email_directory;
+
+-- The sharded backend releases the emails of a customer by its id
+CREATE INDEX customer_email_customer_id_idx ON customer_email (customer_id);
@@ -0,0 +1,2 @@
+-- Ids are handed out in blocks of 50 by Hibernate and CustomerIdAllocator. Must match allocationSize on Customer
+ALTER SEQUENCE customer_id_seq INCREMENT BY 50;
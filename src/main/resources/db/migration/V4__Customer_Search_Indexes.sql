@@ -0,0 +1,8 @@
+-- Search ranks customers whose name or email starts with the query first. Read in index order, a page of them
+-- costs a few index entries however many customers match. C collation keeps the order byte wise
+CREATE INDEX customer_name_prefix_idx ON customer ((lower(name) COLLATE "C"), id);
+CREATE INDEX customer_email_prefix_idx ON customer ((lower(email) COLLATE "C"), id);
+-- The query anywhere in the name or email is found through trigrams
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX customer_name_trgm_idx ON customer USING gin (name gin_trgm_ops);
+CREATE INDEX customer_email_trgm_idx ON customer USING gin (email gin_trgm_ops);
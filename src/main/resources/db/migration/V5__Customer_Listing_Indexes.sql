@@ -0,0 +1,3 @@
+-- Age filters of the customer listing. With id last, an age range comes out in (age, id) order, the keyset the
+-- listing pages by when sorted by age. Name filters and name order use customer_name_prefix_idx from V4
+CREATE INDEX customer_age_idx ON customer (age, id);
@@ -0,0 +1,3 @@
+-- Row version for optimistic concurrency. Every update bumps it; the API sends it as the ETag of a customer and
+-- compares If-Match against it, so a write based on a stale read is refused instead of overwriting a newer one
+ALTER TABLE customer ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
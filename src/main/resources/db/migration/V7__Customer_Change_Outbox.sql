@@ -0,0 +1,39 @@
+-- Outbox of customer writes. The trigger adds a row in the transaction of every insert, update and delete, whatever
+-- backend made it, so a change is recorded exactly when it commits. changes holds the new values: every column for
+-- an insert, only the columns that changed for an update, nothing for a delete
+CREATE TABLE customer_change (
+    id BIGSERIAL PRIMARY KEY,
+    -- Position in the change feed, set by CustomerChangeRelay after the writing transaction committed. Numbering
+    -- committed rows from a single relay keeps positions in commit order, so a reader never skips a late commit
+    seq BIGINT UNIQUE,
+    customer_id INTEGER NOT NULL,
+    type TEXT NOT NULL,
+    changes JSONB NOT NULL,
+    changed_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- The rows the relay still has to number
+CREATE INDEX customer_change_unpublished_idx ON customer_change (id) WHERE seq IS NULL;
+
+CREATE FUNCTION record_customer_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO customer_change (customer_id, type, changes) VALUES (NEW.id, 'insert', to_jsonb(NEW) - 'id');
+    ELSIF TG_OP = 'UPDATE' THEN
+        IF to_jsonb(NEW) = to_jsonb(OLD) THEN
+            RETURN NULL;
+        END IF;
+        INSERT INTO customer_change (customer_id, type, changes)
+        SELECT NEW.id, 'update', jsonb_object_agg(new_value.key, new_value.value)
+        FROM jsonb_each(to_jsonb(NEW)) new_value
+        WHERE to_jsonb(OLD) -> new_value.key IS DISTINCT FROM new_value.value;
+    ELSE
+        INSERT INTO customer_change (customer_id, type, changes) VALUES (OLD.id, 'delete', '{}');
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_change_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON customer
+    FOR EACH ROW EXECUTE FUNCTION record_customer_change();
@@ -0,0 +1,10 @@
+-- Global email index of the sharded backend, kept in the main database next to customer_id_seq, which hands out
+-- ids for every shard. An email is reserved here before its customer is written to a shard and released after the
+-- customer is gone, so the directory always holds every stored email and uniqueness holds across shards. Shards
+-- run the same migrations and leave this table empty
+CREATE TABLE customer_email_directory (
+    email TEXT PRIMARY KEY,
+    customer_id INTEGER NOT NULL
+);
+
+CREATE INDEX customer_email_directory_customer_id_idx ON customer_email_directory (customer_id);
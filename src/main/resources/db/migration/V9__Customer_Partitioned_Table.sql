@@ -0,0 +1,84 @@
+-- First of three migrations moving customer to a table hash partitioned by id, while the application keeps writing.
+-- Each partition is vacuumed, analyzed and reindexed on its own, so maintenance of a 100M row table works on ~6M
+-- rows at a time. Lookups by id go to one partition. V10 copies the existing rows in batches, V11 swaps the tables.
+CREATE TABLE customer_partitioned (
+    id INTEGER NOT NULL DEFAULT nextval('customer_id_seq'),
+    name TEXT NOT NULL,
+    email TEXT NOT NULL,
+    age INT NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (id)
+) PARTITION BY HASH (id);
+
+DO $$
+BEGIN
+    FOR remainder IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE customer_p%s PARTITION OF customer_partitioned FOR VALUES WITH (MODULUS 16, REMAINDER %s)',
+                       lpad(remainder::text, 2, '0'), remainder);
+    END LOOP;
+END $$;
+
+-- The indexes of V4 and V5, built per partition while the table is still empty. V11 gives them their old names
+CREATE INDEX customer_partitioned_name_prefix_idx ON customer_partitioned ((lower(name) COLLATE "C"), id);
+CREATE INDEX customer_partitioned_email_prefix_idx ON customer_partitioned ((lower(email) COLLATE "C"), id);
+CREATE INDEX customer_partitioned_name_trgm_idx ON customer_partitioned USING gin (name gin_trgm_ops);
+CREATE INDEX customer_partitioned_email_trgm_idx ON customer_partitioned USING gin (email gin_trgm_ops);
+CREATE INDEX customer_partitioned_age_idx ON customer_partitioned (age, id);
+
+-- A unique index of a partitioned table must contain the partition key, so emails are kept unique by this lookup
+-- table instead. It also answers the email checks with one index probe instead of one per partition
+CREATE TABLE customer_email (
+    email TEXT PRIMARY KEY,
+    customer_id INTEGER NOT NULL
+);
+
+-- Keeps customer_email in step with the customer writes of every backend. A taken email fails the write with the
+-- unique_violation the email constraint used to raise. A row that is already in customer_email for the same
+-- customer passes: inserts that reserve their email first, to skip taken emails like ON CONFLICT did, rely on that
+CREATE FUNCTION keep_customer_email() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        IF TG_OP = 'DELETE' OR NEW.email <> OLD.email THEN
+            DELETE FROM customer_email WHERE email = OLD.email AND customer_id = OLD.id;
+        END IF;
+        IF TG_OP = 'DELETE' OR NEW.email = OLD.email THEN
+            RETURN NULL;
+        END IF;
+    END IF;
+    INSERT INTO customer_email (email, customer_id) VALUES (NEW.email, NEW.id) ON CONFLICT (email) DO NOTHING;
+    IF NOT FOUND THEN
+        PERFORM FROM customer_email WHERE email = NEW.email AND customer_id = NEW.id;
+        IF NOT FOUND THEN
+            RAISE unique_violation USING
+                MESSAGE = 'duplicate key value violates unique constraint "customer_email_pkey"',
+                DETAIL = format('Key (email)=(%s) already exists.', NEW.email),
+                CONSTRAINT = 'customer_email_pkey',
+                TABLE = 'customer_email';
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_email_trigger
+    AFTER INSERT OR UPDATE OF email OR DELETE ON customer_partitioned
+    FOR EACH ROW EXECUTE FUNCTION keep_customer_email();
+
+-- Until the swap, every write to customer is repeated on customer_partitioned in the same transaction, so rows the
+-- copy already passed stay current. The copy skips the rows that got there this way
+CREATE FUNCTION copy_customer_write() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        DELETE FROM customer_partitioned WHERE id = OLD.id;
+    ELSE
+        INSERT INTO customer_partitioned (id, name, email, age, version)
+        VALUES (NEW.id, NEW.name, NEW.email, NEW.age, NEW.version)
+        ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name, email = EXCLUDED.email, age = EXCLUDED.age, version = EXCLUDED.version;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER customer_copy_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON customer
+    FOR EACH ROW EXECUTE FUNCTION copy_customer_write();
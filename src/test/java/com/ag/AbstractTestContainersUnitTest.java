@@ -1,6 +1,9 @@
 package com.ag;
 
 import com.github.javafaker.Faker;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
 import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.BeforeAll;
 import org.springframework.boot.jdbc.DataSourceBuilder;
@@ -44,6 +47,9 @@ public abstract class AbstractTestContainersUnitTest {
         registry.add("spring.datasource.url", postgreSQLContainer::getJdbcUrl);
         registry.add("spring.datasource.username", postgreSQLContainer::getUsername);
         registry.add("spring.datasource.password", postgreSQLContainer::getPassword);
+        registry.add("spring.r2dbc.url", AbstractTestContainersUnitTest::getR2dbcUrl);
+        registry.add("spring.r2dbc.username", postgreSQLContainer::getUsername);
+        registry.add("spring.r2dbc.password", postgreSQLContainer::getPassword);
     }
 
     private static DataSource getDataSource() {
@@ -60,5 +66,19 @@ public abstract class AbstractTestContainersUnitTest {
         return new JdbcTemplate(getDataSource());
     }
 
+    // The R2DBC url is the JDBC one with a different scheme and without the JDBC driver options
+    private static String getR2dbcUrl() {
+        String jdbcUrl = postgreSQLContainer.getJdbcUrl();
+        int options = jdbcUrl.indexOf('?');
+        return "r2dbc:" + jdbcUrl.substring("jdbc:".length(), options < 0 ? jdbcUrl.length() : options);
+    }
+
+    protected static ConnectionFactory getConnectionFactory() {
+        return ConnectionFactories.get(ConnectionFactoryOptions.parse(getR2dbcUrl()).mutate()
+                .option(ConnectionFactoryOptions.USER, postgreSQLContainer.getUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, postgreSQLContainer.getPassword())
+                .build());
+    }
+
     protected final Faker FAKER = new Faker();
 }
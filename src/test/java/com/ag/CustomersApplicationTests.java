@@ -1,13 +1,40 @@
 package com.ag;
 
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.ReactiveCustomerDao;
+import com.ag.customer.service.ReactiveCustomerService;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.persistence.EntityManagerFactory;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.ReactiveTransactionManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest
 class CustomersApplicationTests {
+	@Autowired
+	private ApplicationContext context;
 
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void onlyTheSelectedBackendIsCreated() {
+		// Given customers.dao.backend: jdbc
+		// When
+		String[] customerDaos = context.getBeanNamesForType(CustomerDao.class);
+		// Then
+		assertThat(customerDaos).containsExactly("jdbc");
+		assertThat(context.getBeanNamesForType(EntityManagerFactory.class)).isEmpty();
+		// The servlet variant keeps no R2DBC connections next to the JDBC pool
+		assertThat(context.getBeanNamesForType(ReactiveCustomerDao.class)).isEmpty();
+		assertThat(context.getBeanNamesForType(ReactiveCustomerService.class)).isEmpty();
+		assertThat(context.getBeanNamesForType(ConnectionFactory.class)).isEmpty();
+		assertThat(context.getBeanNamesForType(ReactiveTransactionManager.class)).isEmpty();
+	}
+
 }
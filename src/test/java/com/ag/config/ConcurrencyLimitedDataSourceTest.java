@@ -0,0 +1,60 @@
+package com.ag.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConcurrencyLimitedDataSourceTest {
+    private final DataSource dataSource = mock(DataSource.class);
+
+    @Test
+    void closingTheConnectionReleasesThePermit() throws SQLException {
+        // Given
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        ConcurrencyLimitedDataSource underTest = new ConcurrencyLimitedDataSource(dataSource, 2, Duration.ofMillis(10));
+        // When
+        Connection actual = underTest.getConnection();
+        // Then
+        assertThat(underTest.availablePermits()).isEqualTo(1);
+        actual.close();
+        actual.close();
+        assertThat(underTest.availablePermits()).isEqualTo(2);
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    void willThrowWhenNoPermitIsFreeInTime() throws SQLException {
+        // Given
+        when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+        ConcurrencyLimitedDataSource underTest = new ConcurrencyLimitedDataSource(dataSource, 1, Duration.ofMillis(10));
+        underTest.getConnection();
+        // When
+        // Then
+        assertThatThrownBy(underTest::getConnection)
+                .isInstanceOf(SQLTransientConnectionException.class)
+                .hasMessage("No database connection available after 10 ms");
+    }
+
+    @Test
+    void failedConnectionDoesNotKeepThePermit() throws SQLException {
+        // Given
+        when(dataSource.getConnection()).thenThrow(new SQLException("connection refused"));
+        ConcurrencyLimitedDataSource underTest = new ConcurrencyLimitedDataSource(dataSource, 1, Duration.ofMillis(10));
+        // When
+        assertThatThrownBy(underTest::getConnection).hasMessage("connection refused");
+        // Then
+        assertThat(underTest.availablePermits()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,48 @@
+package com.ag.config;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.service.CustomerService;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.sql.Connection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomersRuntimeHintsTest {
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void jacksonCanReadAndWriteTheCustomersAndTheDtos() throws Exception {
+        // Given
+        // When
+        new CustomersRuntimeHints().registerHints(hints, getClass().getClassLoader());
+        // Then
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(Customer.class, "getEmail")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(Customer.class, "setEmail")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onConstructor(CustomerView.class.getDeclaredConstructor(
+                int.class, String.class, String.class, int.class))).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(CustomerPage.class, "nextCursor")).accepts(hints);
+        // Nested types come along
+        assertThat(RuntimeHintsPredicates.reflection().onType(CustomerRegistrationResult.Status.class)).accepts(hints);
+    }
+
+    @Test
+    void proxiesBindingAndMigrationsAreCovered() {
+        // Given
+        // When
+        new CustomersRuntimeHints().registerHints(hints, getClass().getClassLoader());
+        // Then
+        assertThat(RuntimeHintsPredicates.reflection().onType(CustomerService.class)
+                .withMemberCategory(MemberCategory.INTROSPECT_DECLARED_METHODS)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(ExtraDataSourceProperties.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.proxies().forInterfaces(Connection.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("db/migration/V1__Initial_Setup.sql")).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("db/migration/V10__Customer_Partitioned_Copy.sql.conf")).accepts(hints);
+    }
+}
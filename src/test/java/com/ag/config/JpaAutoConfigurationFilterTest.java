@@ -0,0 +1,46 @@
+package com.ag.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JpaAutoConfigurationFilterTest {
+    private static final String[] AUTO_CONFIGURATIONS = {
+            "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+            null,
+            "org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration",
+            "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration"
+    };
+    private final JpaAutoConfigurationFilter underTest = new JpaAutoConfigurationFilter();
+
+    @Test
+    void keepsJpaForTheJpaBackend() {
+        // Given
+        underTest.setEnvironment(new MockEnvironment().withProperty("customers.dao.backend", "jpa"));
+        // When
+        boolean[] matches = underTest.match(AUTO_CONFIGURATIONS, null);
+        // Then
+        assertThat(matches).containsExactly(true, true, true, true);
+    }
+
+    @Test
+    void leavesOutHibernateAndTheRepositoriesForTheOtherBackends() {
+        // Given
+        underTest.setEnvironment(new MockEnvironment().withProperty("customers.dao.backend", "jdbc-named"));
+        // When
+        boolean[] matches = underTest.match(AUTO_CONFIGURATIONS, null);
+        // Then
+        assertThat(matches).containsExactly(false, true, false, true);
+    }
+
+    @Test
+    void leavesOutJpaWithoutABackend() {
+        // Given
+        underTest.setEnvironment(new MockEnvironment());
+        // When
+        boolean[] matches = underTest.match(AUTO_CONFIGURATIONS, null);
+        // Then
+        assertThat(matches).containsExactly(false, true, false, true);
+    }
+}
@@ -0,0 +1,93 @@
+package com.ag.config;
+
+import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerSearchPosition;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MeteredCustomerDaoTest {
+    private final MeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final CustomerDao customerDao = mock(CustomerDao.class);
+
+    @Test
+    void recordsEveryCallTaggedWithOperationAndBackend() {
+        // Given
+        Customer customer = new Customer(1, "alex", "alex@gmail.com", 20);
+        when(customerDao.selectCustomerById(1)).thenReturn(Optional.of(customer));
+        MeteredCustomerDao underTest = new MeteredCustomerDao(customerDao, registry, "jdbc", true);
+        // When
+        Optional<Customer> actual = underTest.selectCustomerById(1);
+        underTest.selectCustomerById(1);
+        // Then
+        assertThat(actual).hasValue(customer);
+        Timer timer = registry.get("customers.dao").tag("operation", "selectCustomerById").tag("backend", "jdbc").timer();
+        assertThat(timer.count()).isEqualTo(2);
+        assertThat(registry.get("customers.dao.errors").tag("operation", "selectCustomerById").counter().count()).isZero();
+    }
+
+    @Test
+    void countsFailedCalls() {
+        // Given
+        when(customerDao.existsPersonById(1)).thenThrow(new IllegalStateException("database is down"));
+        MeteredCustomerDao underTest = new MeteredCustomerDao(customerDao, registry, "jpa", true);
+        // When
+        assertThatThrownBy(() -> underTest.existsPersonById(1)).hasMessage("database is down");
+        // Then
+        assertThat(registry.get("customers.dao.errors").tag("operation", "existsPersonById").tag("backend", "jpa").counter().count()).isEqualTo(1);
+        assertThat(registry.get("customers.dao").tag("operation", "existsPersonById").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void lowOverheadRecordingDoesNotAllocate() {
+        // Given
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        MeteredCustomerDao underTest = new MeteredCustomerDao(new ExistsCustomerDao(), registry, "jdbc", false);
+        for (int i = 0; i < 100_000; i++) {
+            underTest.existsPersonById(1);
+        }
+        // When
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            underTest.existsPersonById(1);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        // Then a byte per call would already be 100 KB
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    // Mocks record every invocation, so the allocation test needs a delegate that allocates nothing itself
+    private static class ExistsCustomerDao implements CustomerDao {
+        @Override public List<Customer> selectAllCustomers() { throw new UnsupportedOperationException(); }
+        @Override public List<Customer> selectCustomersAfterId(Integer afterId, int limit) { throw new UnsupportedOperationException(); }
+        @Override public List<Customer> selectCustomers(CustomerFilter filter, Customer after, int limit) { throw new UnsupportedOperationException(); }
+        @Override public void streamAllCustomers(Consumer<CustomerView> consumer) { throw new UnsupportedOperationException(); }
+        @Override public Optional<Customer> selectCustomerById(Integer id) { throw new UnsupportedOperationException(); }
+        @Override public List<Customer> selectCustomersByIds(Collection<Integer> ids) { throw new UnsupportedOperationException(); }
+        @Override public List<Customer> searchCustomers(String query, CustomerSearchPosition after, int limit) { throw new UnsupportedOperationException(); }
+        @Override public boolean insertCustomer(Customer customer) { throw new UnsupportedOperationException(); }
+        @Override public List<Customer> insertCustomers(List<Customer> customers) { throw new UnsupportedOperationException(); }
+        @Override public boolean existsPersonWithEmail(String email) { throw new UnsupportedOperationException(); }
+        @Override public Set<String> selectExistingEmails(Collection<String> emails) { throw new UnsupportedOperationException(); }
+        @Override public boolean deleteCustomerById(Integer id) { throw new UnsupportedOperationException(); }
+        @Override public boolean existsPersonById(Integer id) { return true; }
+        @Override public Optional<Customer> updateCustomer(Customer updatedCustomer) { throw new UnsupportedOperationException(); }
+    }
+}
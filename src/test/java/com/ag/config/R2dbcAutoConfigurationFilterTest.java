@@ -0,0 +1,47 @@
+package com.ag.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class R2dbcAutoConfigurationFilterTest {
+    private static final String[] AUTO_CONFIGURATIONS = {
+            "org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration",
+            null,
+            "org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration",
+            "org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration",
+            "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration"
+    };
+    private final R2dbcAutoConfigurationFilter underTest = new R2dbcAutoConfigurationFilter();
+
+    @Test
+    void keepsR2dbcForTheReactiveWebApplication() {
+        // Given
+        underTest.setEnvironment(new MockEnvironment().withProperty("spring.main.web-application-type", "reactive"));
+        // When
+        boolean[] matches = underTest.match(AUTO_CONFIGURATIONS, null);
+        // Then
+        assertThat(matches).containsExactly(true, true, true, true, true);
+    }
+
+    @Test
+    void leavesOutR2dbcForTheServletWebApplication() {
+        // Given
+        underTest.setEnvironment(new MockEnvironment().withProperty("spring.main.web-application-type", "servlet"));
+        // When
+        boolean[] matches = underTest.match(AUTO_CONFIGURATIONS, null);
+        // Then
+        assertThat(matches).containsExactly(false, true, false, false, true);
+    }
+
+    @Test
+    void leavesOutR2dbcWithoutAWebApplicationType() {
+        // Given
+        underTest.setEnvironment(new MockEnvironment());
+        // When
+        boolean[] matches = underTest.match(AUTO_CONFIGURATIONS, null);
+        // Then
+        assertThat(matches).containsExactly(false, true, false, false, true);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ag.config;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReadYourWritesFilterTest {
+    private final Clock clock = mock(Clock.class);
+    private final ReadRouting readRouting = new ReadRouting(Duration.ofSeconds(5), clock);
+    private final ReadYourWritesFilter underTest = new ReadYourWritesFilter(readRouting);
+
+    @Test
+    void cookieFarInTheFutureKeepsTheCallerOnThePrimaryForOneWindowOnly() throws Exception {
+        // Given
+        when(clock.millis()).thenReturn(1_000_000L);
+        MockHttpServletRequest request = withCookie(Long.toString(Long.MAX_VALUE));
+        boolean[] onPrimary = new boolean[2];
+        // When
+        underTest.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            onPrimary[0] = readRouting.callerOnPrimary();
+            when(clock.millis()).thenReturn(1_005_000L);
+            onPrimary[1] = readRouting.callerOnPrimary();
+        });
+        // Then
+        assertThat(onPrimary).containsExactly(true, false);
+    }
+
+    @Test
+    void cookieThatIsNotANumberIsIgnored() throws Exception {
+        // Given
+        when(clock.millis()).thenReturn(1_000_000L);
+        MockHttpServletRequest request = withCookie("tomorrow");
+        boolean[] onPrimary = new boolean[1];
+        // When
+        underTest.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> onPrimary[0] = readRouting.callerOnPrimary());
+        // Then
+        assertThat(onPrimary).containsExactly(false);
+    }
+
+    private static MockHttpServletRequest withCookie(String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/customers/1");
+        request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, value));
+        return request;
+    }
+}
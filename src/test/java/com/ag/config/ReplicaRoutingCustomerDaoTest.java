@@ -0,0 +1,66 @@
+package com.ag.config;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingCustomerDaoTest {
+    private final CustomerDao customerDao = mock(CustomerDao.class);
+    private final ReadRouting readRouting = new ReadRouting(Duration.ofSeconds(5));
+    private final ReplicaRoutingCustomerDao underTest = new ReplicaRoutingCustomerDao(customerDao, readRouting);
+
+    @Test
+    void readsMayUseAReplica() {
+        // Given
+        AtomicBoolean replicaAllowed = new AtomicBoolean();
+        when(customerDao.searchCustomers("alex", null, 20)).thenAnswer(invocation -> {
+            replicaAllowed.set(readRouting.replicaAllowed());
+            return List.of();
+        });
+        // When
+        underTest.searchCustomers("alex", null, 20);
+        // Then
+        assertThat(replicaAllowed).isTrue();
+        assertThat(readRouting.replicaAllowed()).isFalse();
+    }
+
+    @Test
+    void existenceChecksBeforeWritesStayOnThePrimary() {
+        // Given
+        AtomicBoolean replicaAllowed = new AtomicBoolean(true);
+        when(customerDao.existsPersonWithEmail("alex@gmail.com")).thenAnswer(invocation -> {
+            replicaAllowed.set(readRouting.replicaAllowed());
+            return true;
+        });
+        // When
+        underTest.existsPersonWithEmail("alex@gmail.com");
+        // Then
+        assertThat(replicaAllowed).isFalse();
+    }
+
+    @Test
+    void readsAfterAnUpdateStayOnThePrimary() {
+        // Given
+        Customer customer = new Customer(7, "Alex", "alex@gmail.com", 20);
+        when(customerDao.updateCustomer(customer)).thenReturn(Optional.of(customer));
+        AtomicBoolean replicaAllowed = new AtomicBoolean(true);
+        when(customerDao.selectCustomerById(7)).thenAnswer(invocation -> {
+            replicaAllowed.set(readRouting.replicaAllowed());
+            return Optional.of(customer);
+        });
+        // When
+        underTest.updateCustomer(customer);
+        underTest.selectCustomerById(7);
+        // Then
+        assertThat(replicaAllowed).isFalse();
+    }
+}
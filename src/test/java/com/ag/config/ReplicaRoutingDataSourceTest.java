@@ -0,0 +1,166 @@
+package com.ag.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+    private final Clock clock = mock(Clock.class);
+    private final ReadRouting readRouting = new ReadRouting(Duration.ofSeconds(5), clock);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection firstReplicaConnection = mock(Connection.class);
+    private final Connection secondReplicaConnection = mock(Connection.class);
+    private final DataSource firstReplica = mock(DataSource.class);
+    private final DataSource secondReplica = mock(DataSource.class);
+    private ReplicaRoutingDataSource underTest;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(clock.millis()).thenReturn(1_000_000L);
+        DataSource primary = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(firstReplica.getConnection()).thenReturn(firstReplicaConnection);
+        when(secondReplica.getConnection()).thenReturn(secondReplicaConnection);
+        lagging(firstReplicaConnection, 0);
+        lagging(secondReplicaConnection, 0);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", firstReplica);
+        replicas.put("replica-1", secondReplica);
+        underTest = new ReplicaRoutingDataSource(primary, replicas, readRouting, Duration.ofSeconds(1));
+    }
+
+    @Test
+    void readsGoRoundRobinToTheHealthyReplicas() {
+        // Given
+        underTest.checkReplicas();
+        // When
+        List<Connection> actual = readRouting.read(() -> List.of(connection(), connection(), connection()));
+        // Then
+        assertThat(actual).containsExactly(firstReplicaConnection, secondReplicaConnection, firstReplicaConnection);
+    }
+
+    @Test
+    void queriesThatAreNotReadsGoToThePrimary() {
+        // Given
+        underTest.checkReplicas();
+        // When
+        Connection actual = connection();
+        // Then
+        assertThat(actual).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void readsGoToThePrimaryBeforeTheFirstCheck() {
+        // Given
+        // When
+        Connection actual = readRouting.read(this::connection);
+        // Then
+        assertThat(actual).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void callerReadsFromThePrimaryWithinTheWindowAfterItsWrite() {
+        // Given
+        underTest.checkReplicas();
+        readRouting.wrote(List.of());
+        // When
+        Connection withinWindow = readRouting.read(this::connection);
+        when(clock.millis()).thenReturn(1_005_000L);
+        Connection afterWindow = readRouting.read(this::connection);
+        // Then
+        assertThat(withinWindow).isSameAs(primaryConnection);
+        assertThat(afterWindow).isSameAs(firstReplicaConnection);
+    }
+
+    @Test
+    void boundCallerReadsFromThePrimaryForAtMostOneWindow() {
+        // Given
+        underTest.checkReplicas();
+        readRouting.bindCaller(Long.MAX_VALUE, until -> {});
+        // When
+        Connection withinWindow = readRouting.read(this::connection);
+        when(clock.millis()).thenReturn(1_005_000L);
+        Connection afterWindow = readRouting.read(this::connection);
+        readRouting.unbindCaller();
+        // Then
+        assertThat(withinWindow).isSameAs(primaryConnection);
+        assertThat(afterWindow).isSameAs(firstReplicaConnection);
+    }
+
+    @Test
+    void workHandedToAnotherThreadReadsForTheCallerThatWrote() throws Exception {
+        // Given
+        underTest.checkReplicas();
+        readRouting.wrote(List.of());
+        Connection[] connections = new Connection[2];
+        // When
+        Thread propagated = Thread.ofVirtual().start(readRouting.propagate(() -> connections[0] = readRouting.read(this::connection)));
+        Thread plain = Thread.ofVirtual().start(() -> connections[1] = readRouting.read(this::connection));
+        propagated.join();
+        plain.join();
+        // Then only the propagated work knows the caller wrote
+        assertThat(connections[0]).isSameAs(primaryConnection);
+        assertThat(connections[1]).isSameAs(firstReplicaConnection);
+    }
+
+    @Test
+    void readsOfARecentlyWrittenCustomerGoToThePrimaryForEveryCaller() throws Exception {
+        // Given
+        underTest.checkReplicas();
+        Thread writer = Thread.ofVirtual().start(() -> readRouting.wrote(List.of(7)));
+        writer.join();
+        // When
+        Connection written = readRouting.read(List.of(3, 7), this::connection);
+        Connection other = readRouting.read(List.of(3), this::connection);
+        // Then
+        assertThat(written).isSameAs(primaryConnection);
+        assertThat(other).isSameAs(firstReplicaConnection);
+    }
+
+    @Test
+    void unreachableAndLaggingReplicasAreSkipped() throws SQLException {
+        // Given
+        when(firstReplica.getConnection()).thenThrow(new SQLException("connection refused"));
+        // When
+        underTest.checkReplicas();
+        List<String> oneDown = underTest.healthyReplicas();
+        lagging(secondReplicaConnection, 3.5);
+        underTest.checkReplicas();
+        // Then
+        assertThat(oneDown).containsExactly("replica-1");
+        assertThat(underTest.healthyReplicas()).isEmpty();
+        assertThat(readRouting.read(this::connection)).isSameAs(primaryConnection);
+    }
+
+    private Connection connection() {
+        try {
+            return underTest.getConnection();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void lagging(Connection connection, double seconds) throws SQLException {
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(seconds);
+    }
+}
@@ -0,0 +1,136 @@
+package com.ag.customer.repository;
+
+import com.ag.AbstractTestContainersUnitTest;
+import com.ag.config.ConcurrencyLimitedDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerIdAllocatorTest extends AbstractTestContainersUnitTest {
+    // Every call to getJdbcTemplate opens a new pool, so the class shares one
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createJdbcTemplate() {
+        jdbcTemplate = getJdbcTemplate();
+    }
+
+    @Test
+    void idsAreUniqueAcrossConcurrentWriters() throws Exception {
+        // Given two allocators, like two running instances of the application
+        List<CustomerIdAllocator> allocators = List.of(
+                new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO),
+                new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO));
+        int threads = 8, idsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // When
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            CustomerIdAllocator allocator = allocators.get(i % allocators.size());
+            futures.add(executor.submit(() -> {
+                List<Integer> ids = new ArrayList<>();
+                for (int j = 0; j < idsPerThread; j++) {
+                    ids.add(allocator.nextId());
+                }
+                return ids;
+            }));
+        }
+        Set<Integer> allIds = new HashSet<>();
+        for (Future<List<Integer>> future : futures) {
+            allIds.addAll(future.get());
+        }
+        executor.shutdown();
+        // Then
+        assertThat(allIds).hasSize(threads * idsPerThread);
+    }
+
+    @Test
+    void callerHoldingTheLastConnectionGetsAnIdWhileAnotherWaitsForIt() throws Exception {
+        // Given a pool of one connection, like a saturated pool, and an allocator that needs a new block
+        ConcurrencyLimitedDataSource dataSource = new ConcurrencyLimitedDataSource(jdbcTemplate.getDataSource(), 1, Duration.ofSeconds(2));
+        JdbcTemplate limited = new JdbcTemplate(dataSource);
+        CustomerIdAllocator underTest = new CustomerIdAllocator(limited, CustomerIdAllocator.POOLED_LO);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // When a batch insert holding the connection asks for an id while a single insert waits for the connection
+        Future<Integer> waiting = new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+            limited.queryForObject("SELECT 1;", Integer.class);
+            Future<Integer> single = executor.submit(underTest::nextId);
+            while (dataSource.waitingCallers() == 0) {
+                Thread.onSpinWait();
+            }
+            assertThat(underTest.nextId()).isPositive();
+            return single;
+        });
+        // Then the waiting caller gets its id once the connection is back, instead of timing out
+        assertThat(waiting.get()).isPositive();
+        executor.shutdown();
+    }
+
+    @Test
+    void idsAreUniqueAcrossRestarts() {
+        // Given an allocator that used part of its block before the application stopped
+        CustomerIdAllocator beforeRestart = new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO);
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(beforeRestart.nextId());
+        }
+        // When a new allocator starts against the same sequence
+        CustomerIdAllocator afterRestart = new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO);
+        // Then it never hands out an id from the old block
+        for (int i = 0; i < 200; i++) {
+            assertThat(ids.add(afterRestart.nextId())).isTrue();
+        }
+    }
+
+    @Test
+    void idsDoNotCollideWithSequenceDefault() {
+        // Given
+        CustomerIdAllocator underTest = new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO);
+        int allocated = underTest.nextId();
+        // When a row is inserted using the column default
+        Integer defaultId = jdbcTemplate.queryForObject(
+                "INSERT INTO customer (name, email, age) VALUES (?, ?, ?) RETURNING id;",
+                Integer.class, FAKER.name().fullName(), UUID.randomUUID() + "@gmail.com", 20);
+        // Then
+        Set<Integer> ids = new HashSet<>();
+        ids.add(allocated);
+        for (int i = 0; i < 100; i++) {
+            ids.add(underTest.nextId());
+        }
+        assertThat(ids).doesNotContain(defaultId);
+    }
+
+    @Test
+    void reservedBlocksDoNotOverlapWithSingleIds() {
+        // Given
+        CustomerIdAllocator underTest = new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO);
+        int blockSize = underTest.blockSize();
+        // When
+        int[] blocks = underTest.reserveBlocks(blockSize * 2 + 1);
+        // Then
+        assertThat(blocks).hasSize(3);
+        Set<Integer> ids = new HashSet<>();
+        for (int first : blocks) {
+            for (int id = first; id < first + blockSize; id++) {
+                assertThat(ids.add(id)).isTrue();
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            assertThat(ids.add(underTest.nextId())).isTrue();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ag.customer.repository;
+
+import com.ag.AbstractTestContainersUnitTest;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Migrates a database of its own that held customers before the partitioning migrations
+class CustomerPartitioningMigrationTest extends AbstractTestContainersUnitTest {
+    private static final String DATABASE = "customer_partitioning";
+    private static final int CUSTOMERS = 25_000;
+    private static JdbcTemplate server;
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void migrate() {
+        server = getJdbcTemplate();
+        server.execute("DROP DATABASE IF EXISTS " + DATABASE);
+        server.execute("CREATE DATABASE " + DATABASE);
+        String url = postgreSQLContainer.getJdbcUrl();
+        int options = url.indexOf('?');
+        String base = options < 0 ? url : url.substring(0, options);
+        DataSource dataSource = DataSourceBuilder.create()
+                .url(base.substring(0, base.lastIndexOf('/') + 1) + DATABASE + (options < 0 ? "" : url.substring(options)))
+                .username(postgreSQLContainer.getUsername())
+                .password(postgreSQLContainer.getPassword())
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        Flyway.configure().dataSource(dataSource).target("8").load().migrate();
+        jdbcTemplate.update("""
+                INSERT INTO customer (name, email, age)
+                SELECT 'customer ' || n, 'customer' || n || '@example.com', 18 + n % 50 FROM generate_series(1, ?) n
+                """, CUSTOMERS);
+        // More than two batches of the copy, one of them partly deleted before it runs
+        jdbcTemplate.update("DELETE FROM customer WHERE name LIKE 'customer 1%5'");
+        Flyway.configure().dataSource(dataSource).load().migrate();
+    }
+
+    @AfterAll
+    static void dropDatabase() throws Exception {
+        ((AutoCloseable) jdbcTemplate.getDataSource()).close();
+        server.execute("DROP DATABASE " + DATABASE);
+    }
+
+    @Test
+    void everyCustomerIsCopiedWithItsEmail() {
+        // Given
+        int expected = CUSTOMERS - jdbcTemplate.queryForObject("""
+                SELECT count(*) FROM generate_series(1, ?) n WHERE 'customer ' || n LIKE 'customer 1%5'
+                """, Integer.class, CUSTOMERS);
+        // When
+        Map<String, Object> counts = jdbcTemplate.queryForMap("""
+                SELECT (SELECT count(*) FROM customer) AS customers,
+                       (SELECT count(*) FROM customer_email e JOIN customer c ON c.id = e.customer_id AND c.email = e.email) AS emails,
+                       (SELECT count(*) FROM pg_inherits WHERE inhparent = 'customer'::regclass) AS partitions
+                """);
+        // Then
+        assertThat(counts).containsEntry("customers", (long) expected)
+                .containsEntry("emails", (long) expected)
+                .containsEntry("partitions", 16L);
+    }
+
+    @Test
+    void newCustomersGetIdsFromTheSameSequenceAndRecordChanges() {
+        // Given
+        long changes = jdbcTemplate.queryForObject("SELECT count(*) FROM customer_change", Long.class);
+        // When
+        Integer id = jdbcTemplate.queryForObject("""
+                INSERT INTO customer (name, email, age) VALUES ('new', 'new@example.com', 30) RETURNING id
+                """, Integer.class);
+        // Then
+        assertThat(id).isGreaterThan(CUSTOMERS);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM customer_change", Long.class)).isEqualTo(changes + 1);
+    }
+
+    @Test
+    void emailsStayUniqueAcrossPartitions() {
+        // Given two customers that live in different partitions
+        List<Integer> ids = jdbcTemplate.queryForList("""
+                SELECT DISTINCT ON (tableoid) id FROM customer WHERE email LIKE 'customer2%' ORDER BY tableoid, id LIMIT 2
+                """, Integer.class);
+        String taken = jdbcTemplate.queryForObject("SELECT email FROM customer WHERE id = ?", String.class, ids.get(0));
+        // When
+        // Then
+        assertThatThrownBy(() -> jdbcTemplate.update("UPDATE customer SET email = ? WHERE id = ?", taken, ids.get(1)))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO customer (name, email, age) VALUES ('copy', ?, 30)", taken))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void emailIsFreedByUpdateAndDelete() {
+        // Given
+        List<Integer> ids = jdbcTemplate.queryForList("SELECT id FROM customer WHERE email LIKE 'customer3%' ORDER BY id LIMIT 2", Integer.class);
+        String renamed = jdbcTemplate.queryForObject("SELECT email FROM customer WHERE id = ?", String.class, ids.get(0));
+        String deleted = jdbcTemplate.queryForObject("SELECT email FROM customer WHERE id = ?", String.class, ids.get(1));
+        // When
+        jdbcTemplate.update("UPDATE customer SET email = 'renamed@example.com' WHERE id = ?", ids.get(0));
+        jdbcTemplate.update("DELETE FROM customer WHERE id = ?", ids.get(1));
+        // Then
+        assertThat(jdbcTemplate.queryForList("SELECT email FROM customer_email WHERE email IN (?, ?)", String.class, renamed, deleted)).isEmpty();
+        assertThat(jdbcTemplate.update("INSERT INTO customer (name, email, age) VALUES ('again', ?, 30), ('again', ?, 30)", renamed, deleted))
+                .isEqualTo(2);
+    }
+
+    @Test
+    void lookupByIdReadsOnePartition() {
+        // Given
+        // When
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN SELECT id, name, email, age, version FROM customer WHERE id = 42", String.class);
+        // Then
+        assertThat(plan).hasSize(2).first().asString().startsWith("Index Scan using customer_p");
+    }
+}
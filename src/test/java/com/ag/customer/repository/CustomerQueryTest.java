@@ -0,0 +1,144 @@
+package com.ag.customer.repository;
+
+import com.ag.AbstractTestContainersUnitTest;
+import com.ag.customer.Customer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerQueryTest extends AbstractTestContainersUnitTest {
+    // An index of one of the 16 partitions, named after the partition and its columns
+    private static final Pattern INDEX_SCAN = Pattern.compile("Index Scan (?:Backward )?using (\\S+) on customer_p\\d+");
+    private static final Map<CustomerSort, String> SORT_INDEX = Map.of(
+            CustomerSort.ID, "_pkey",
+            CustomerSort.AGE, "_age_id_idx",
+            CustomerSort.NAME, "_lower_id_idx");
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createJdbcTemplate() {
+        jdbcTemplate = getJdbcTemplate();
+    }
+
+    @Test
+    void everyFilterAndSortIsServedByAnIndex() {
+        // Given
+        Customer after = new Customer(10, "Alex", "alex@gmail.com", 30);
+        List<CustomerFilter> filters = new ArrayList<>();
+        // Every combination CustomerService accepts: any sort without a filter, a filter only with its own sort
+        for (Sort.Direction direction : Sort.Direction.values()) {
+            for (CustomerSort sort : CustomerSort.values()) {
+                filters.add(new CustomerFilter(null, null, null, sort, direction));
+            }
+            filters.add(new CustomerFilter(18, null, null, CustomerSort.AGE, direction));
+            filters.add(new CustomerFilter(null, 65, null, CustomerSort.AGE, direction));
+            filters.add(new CustomerFilter(18, 65, null, CustomerSort.AGE, direction));
+            filters.add(new CustomerFilter(null, null, "Al", CustomerSort.NAME, direction));
+        }
+        for (CustomerFilter filter : filters) {
+            for (Customer pageAfter : new Customer[]{null, after}) {
+                CustomerQuery query = CustomerQuery.select(filter, pageAfter, 100);
+                // When
+                String plan = explain(query);
+                // Then every partition is read through the index of the sort, seeking with the filter and the page boundary
+                String description = "%s after %s:%n%s".formatted(filter, pageAfter, plan);
+                List<String> scans = INDEX_SCAN.matcher(plan).results().map(scan -> scan.group(1)).toList();
+                assertThat(scans).as(description).hasSize(16)
+                        .allSatisfy(index -> assertThat(index).as(description).endsWith(SORT_INDEX.get(filter.sort())));
+                assertThat(plan).as(description).doesNotContain("Sort  (");
+                List<String> seeks = indexedPredicates(filter, pageAfter);
+                List<String> conditions = plan.lines().filter(line -> line.contains("Index Cond:")).toList();
+                assertThat(conditions).as(description).hasSize(seeks.isEmpty() ? 0 : 16)
+                        .allSatisfy(condition -> assertThat(condition).as(description).contains(seeks));
+            }
+        }
+    }
+
+    @Test
+    void ageRangeInAgeOrderIsReadFromTheAgeIndex() {
+        // Given
+        CustomerQuery query = CustomerQuery.select(new CustomerFilter(18, 65, null, CustomerSort.AGE, Sort.Direction.DESC),
+                new Customer(10, "Alex", "alex@gmail.com", 30), 100);
+        // When
+        String plan = explain(query);
+        // Then
+        // Every partition is read in order through its part of customer_age_idx and the pages merged, never sorted
+        assertThat(plan).contains("Merge Append").contains("Index Scan Backward using customer_p00_age_id_idx").doesNotContain("Sort  (");
+    }
+
+    @Test
+    void namePrefixInNameOrderIsReadFromTheNameIndex() {
+        // Given
+        CustomerQuery query = CustomerQuery.select(new CustomerFilter(null, null, "Al", CustomerSort.NAME, Sort.Direction.ASC),
+                new Customer(10, "Alex", "alex@gmail.com", 30), 100);
+        // When
+        String plan = explain(query);
+        // Then
+        assertThat(plan).contains("Merge Append").contains("Index Scan using customer_p00_lower_id_idx").doesNotContain("Sort  (");
+    }
+
+    /**
+     * What the Index Cond of the sort index must contain: every filter and the page boundary
+     */
+    private static List<String> indexedPredicates(CustomerFilter filter, Customer after) {
+        List<String> predicates = new ArrayList<>();
+        if (filter.minAge() != null) {
+            predicates.add("age >= " + filter.minAge());
+        }
+        if (filter.maxAge() != null) {
+            predicates.add("age <= " + filter.maxAge());
+        }
+        if (filter.namePrefix() != null) {
+            String prefix = CustomerQuery.prefix(filter.namePrefix());
+            predicates.add("'%s'".formatted(prefix));
+            predicates.add("'%s'".formatted(CustomerQuery.upperBound(prefix)));
+        }
+        if (after != null) {
+            String comparison = filter.direction() == Sort.Direction.ASC ? ">" : "<";
+            predicates.add(filter.sort() == CustomerSort.ID ? "id %s %s".formatted(comparison, after.getId()) : "ROW(");
+        }
+        return predicates;
+    }
+
+    /**
+     * The plan of query with sequential scans and sorts discouraged. The test table is small enough that a
+     * sequential scan would always win on cost, and with sorts allowed a scan of any index followed by a sort would
+     * do. Discouraged, the planner reads the rows in order from the index of the sort, and shows which predicates
+     * that index seeks with as its Index Cond and which it only filters by
+     */
+    private static String explain(CustomerQuery query) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET enable_seqscan = off");
+                statement.execute("SET enable_sort = off");
+                try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query.sql())) {
+                    for (int i = 0; i < query.args().size(); i++) {
+                        explain.setObject(i + 1, query.args().get(i));
+                    }
+                    StringBuilder plan = new StringBuilder();
+                    try (ResultSet resultSet = explain.executeQuery()) {
+                        while (resultSet.next()) {
+                            plan.append(resultSet.getString(1)).append('\n');
+                        }
+                    }
+                    return plan.toString();
+                } finally {
+                    statement.execute("RESET enable_seqscan");
+                    statement.execute("RESET enable_sort");
+                }
+            }
+        });
+    }
+}
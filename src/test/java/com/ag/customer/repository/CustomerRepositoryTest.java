@@ -2,18 +2,23 @@ package com.ag.customer.repository;
 
 import com.ag.AbstractTestContainersUnitTest;
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@DataJpaTest
+// Hibernate and the repositories are only set up for the jpa backend
+@DataJpaTest(properties = "customers.dao.backend=jpa")
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 class CustomerRepositoryTest extends AbstractTestContainersUnitTest {
     @Autowired
@@ -49,6 +54,80 @@ class CustomerRepositoryTest extends AbstractTestContainersUnitTest {
         assertThat(actual).isFalse();
     }
 
+    @Test
+    void findExistingEmails() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        String unknownEmail = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        underTest.save(new Customer(FAKER.name().fullName(), email, 20));
+        // When
+        var actual = underTest.findExistingEmails(List.of(email, unknownEmail));
+        // Then
+        assertThat(actual).containsExactly(email);
+    }
+
+    @Test
+    void searchQueriesMatchTheirRankOnly() {
+        // Given
+        Customer namePrefix = new Customer("Alex Smith", "smith-" + UUID.randomUUID() + "@gmail.com", 20);
+        Customer emailPrefix = new Customer("Sam", "alex-" + UUID.randomUUID() + "@gmail.com", 21);
+        Customer contains = new Customer("Sam Alexander", "sam-" + UUID.randomUUID() + "@gmail.com", 22);
+        underTest.saveAllAndFlush(List.of(namePrefix, emailPrefix, contains));
+        // When
+        var byName = underTest.findByNamePrefix("alex", "aley", "", 0, 10);
+        var byEmail = underTest.findByEmailPrefix("alex", "aley", "", 0, 10);
+        var containing = underTest.findContaining("%alex%", "alex", 0, 10);
+        // Then
+        assertThat(byName).extracting(Customer::getEmail).containsExactly(namePrefix.getEmail());
+        assertThat(byEmail).extracting(Customer::getEmail).containsExactly(emailPrefix.getEmail());
+        assertThat(containing).extracting(Customer::getEmail).containsExactly(contains.getEmail());
+    }
+
+    @Test
+    void searchQueriesResumeAfterTheKeyAndIdOfThePreviousPage() {
+        // Given two customers with the same name, ordered by id, then one later in name order
+        Customer first = new Customer("Alex", "first-" + UUID.randomUUID() + "@gmail.com", 20);
+        Customer second = new Customer("Alex", "second-" + UUID.randomUUID() + "@gmail.com", 21);
+        Customer third = new Customer("Alexa", "third-" + UUID.randomUUID() + "@gmail.com", 22);
+        Customer contains = new Customer("Sam Alexander", "sam-" + UUID.randomUUID() + "@gmail.com", 23);
+        Customer containsToo = new Customer("Kim Alexander", "kim-" + UUID.randomUUID() + "@gmail.com", 24);
+        underTest.saveAllAndFlush(List.of(first, second, third, contains, containsToo));
+        // When
+        var firstPage = underTest.findByNamePrefix("alex", "aley", "", 0, 1);
+        var secondPage = underTest.findByNamePrefix("alex", "aley", "alex", firstPage.get(0).getId(), 2);
+        var lastPage = underTest.findByNamePrefix("alex", "aley", "alexa", third.getId(), 2);
+        var containingAfter = underTest.findContaining("%alex%", "alex", contains.getId(), 10);
+        // Then
+        assertThat(firstPage).extracting(Customer::getEmail).containsExactly(first.getEmail());
+        assertThat(secondPage).extracting(Customer::getEmail).containsExactly(second.getEmail(), third.getEmail());
+        assertThat(lastPage).isEmpty();
+        assertThat(containingAfter).extracting(Customer::getEmail).containsExactly(containsToo.getEmail());
+    }
+
+    @Test
+    void findByQuery() {
+        // Given
+        Customer younger = new Customer("Alex Smith", "smith-" + UUID.randomUUID() + "@gmail.com", 20);
+        Customer older = new Customer("Alex Lee", "lee-" + UUID.randomUUID() + "@gmail.com", 40);
+        underTest.saveAllAndFlush(List.of(younger, older, new Customer("Sam", "sam-" + UUID.randomUUID() + "@gmail.com", 30)));
+        CustomerFilter filter = new CustomerFilter(null, null, "alex", CustomerSort.AGE, Sort.Direction.DESC);
+        // When
+        var actual = underTest.findByQuery(CustomerQuery.select(filter, null, 10));
+        // Then
+        assertThat(actual).extracting(Customer::getEmail).containsExactly(older.getEmail(), younger.getEmail());
+    }
+
+    @Test
+    void findViewsByIdGreaterThanOrderByIdAsc() {
+        // Given
+        Customer first = underTest.save(new Customer(FAKER.name().fullName(), "first-" + UUID.randomUUID() + "@gmail.com", 20));
+        Customer second = underTest.save(new Customer(FAKER.name().fullName(), "second-" + UUID.randomUUID() + "@gmail.com", 30));
+        // When
+        var actual = underTest.findViewsByIdGreaterThanOrderByIdAsc(first.getId(), Limit.of(10));
+        // Then
+        assertThat(actual).containsExactly(new CustomerView(second.getId(), second.getName(), second.getEmail(), 30));
+    }
+
     @Test
     void existsCustomerById() {
         // Given
@@ -82,4 +161,16 @@ class CustomerRepositoryTest extends AbstractTestContainersUnitTest {
         // Then
         assertThat(actual).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    void deleteCustomerById() {
+        // Given
+        String email = FAKER.internet().safeEmailAddress() + "-" + UUID.randomUUID();
+        Customer customer = underTest.save(new Customer(FAKER.name().fullName(), email, 20));
+        // When
+        int deleted = underTest.deleteCustomerById(customer.getId());
+        // Then
+        assertThat(deleted).isEqualTo(1);
+        assertThat(underTest.deleteCustomerById(customer.getId())).isZero();
+    }
+}
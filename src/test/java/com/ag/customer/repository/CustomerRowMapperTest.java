@@ -1,12 +1,15 @@
 package com.ag.customer.repository;
 
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
 import org.junit.jupiter.api.Test;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -16,16 +19,52 @@ class CustomerRowMapperTest {
     void mapRow() throws SQLException {
         // Given
         CustomerRowMapper customerRowMapper = new CustomerRowMapper();
-        ResultSet rs = mock(ResultSet.class);
-        when(rs.getInt("id")).thenReturn(1);
-        when(rs.getString("name")).thenReturn("sam");
-        when(rs.getString("email")).thenReturn("sam@gmail.com");
-        when(rs.getInt("age")).thenReturn(19);
+        ResultSet rs = customerRow("id", "name", "email", "age", "version");
 
         // When
-        Customer customer = customerRowMapper.mapRow(rs, 1);
+        Customer customer = customerRowMapper.mapRow(rs, 0);
         // Then
-        Customer expected  = new Customer(1, "sam", "sam@gmail.com", 19);
+        Customer expected  = new Customer(1, "sam", "sam@gmail.com", 19, 2L);
         assertThat(customer).isEqualTo(expected);
+        assertThat(customer.getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    void mapView() throws SQLException {
+        // Given
+        CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+        ResultSet rs = customerRow("id", "name", "email", "age", "version");
+        // When
+        CustomerView customer = customerRowMapper.mapView(rs, 0);
+        // Then
+        assertThat(customer).isEqualTo(new CustomerView(1, "sam", "sam@gmail.com", 19));
+    }
+
+    @Test
+    void willThrowWhenColumnsAreInAnotherOrder() throws SQLException {
+        // Given
+        CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+        ResultSet rs = customerRow("id", "email", "name", "age", "version");
+        // When
+        // Then
+        assertThatThrownBy(() -> customerRowMapper.mapRow(rs, 0))
+                .isInstanceOf(SQLException.class)
+                .hasMessage("Customer queries must select id, name, email, age, version in this order");
+    }
+
+    private static ResultSet customerRow(String... columns) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(columns.length);
+        for (int column = 1; column <= columns.length; column++) {
+            when(metaData.getColumnLabel(column)).thenReturn(columns[column - 1]);
+        }
+        when(rs.getInt(1)).thenReturn(1);
+        when(rs.getString(2)).thenReturn("sam");
+        when(rs.getString(3)).thenReturn("sam@gmail.com");
+        when(rs.getInt(4)).thenReturn(19);
+        when(rs.getLong(5)).thenReturn(2L);
+        return rs;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.ag.customer.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerShardsTest {
+
+    @Test
+    void consecutiveIdsSpreadEvenlyOverTheShards() {
+        // Given
+        int shards = 4;
+        int[] counts = new int[shards];
+        // When
+        for (int id = 1; id <= 100_000; id++) {
+            counts[CustomerShards.jumpHash(id, shards)]++;
+        }
+        // Then
+        for (int count : counts) {
+            assertThat(count).isBetween(24_000, 26_000);
+        }
+    }
+
+    @Test
+    void addingAShardOnlyMovesCustomersToTheNewShard() {
+        // Given
+        int shards = 3;
+        // When
+        int moved = 0;
+        for (int id = 1; id <= 100_000; id++) {
+            int before = CustomerShards.jumpHash(id, shards);
+            int after = CustomerShards.jumpHash(id, shards + 1);
+            if (before != after) {
+                // Then
+                assertThat(after).isEqualTo(shards);
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(24_000, 26_000);
+    }
+}
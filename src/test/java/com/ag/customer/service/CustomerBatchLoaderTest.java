@@ -0,0 +1,110 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerBatchLoaderTest {
+    private final CustomerDao customerDao = mock(CustomerDao.class);
+
+    @Test
+    void concurrentLookupsWithinTheWindowShareOneQuery() throws Exception {
+        // Given
+        Customer alex = new Customer(1, "alex", "alex@gmail.com", 20);
+        Customer sam = new Customer(2, "sam", "sam@gmail.com", 21);
+        when(customerDao.selectCustomersByIds(any())).thenReturn(List.of(alex, sam));
+        // Long enough for every caller to join before the leader reads
+        CustomerBatchLoader underTest = new CustomerBatchLoader(customerDao, Duration.ofMillis(500), 100);
+        List<Future<Optional<Customer>>> lookups = new ArrayList<>();
+        // When
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int id : new int[]{1, 2, 3, 1}) {
+                lookups.add(executor.submit(() -> underTest.load(id)));
+            }
+        }
+        // Then
+        assertThat(lookups.get(0).get()).contains(alex);
+        assertThat(lookups.get(1).get()).contains(sam);
+        assertThat(lookups.get(2).get()).isEmpty();
+        assertThat(lookups.get(3).get()).contains(alex);
+        verify(customerDao).selectCustomersByIds(Set.of(1, 2, 3));
+    }
+
+    @Test
+    void fullBatchIsReadWithoutWaitingForTheWindow() {
+        // Given
+        when(customerDao.selectCustomersByIds(any())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> new Customer(id, "alex", "alex@gmail.com", 20)).toList();
+        });
+        CustomerBatchLoader underTest = new CustomerBatchLoader(customerDao, Duration.ofMinutes(1), 1);
+        // When
+        Optional<Customer> first = underTest.load(1);
+        Optional<Customer> second = underTest.load(2);
+        // Then
+        assertThat(first).map(Customer::getId).contains(1);
+        assertThat(second).map(Customer::getId).contains(2);
+        verify(customerDao, times(2)).selectCustomersByIds(any());
+    }
+
+    @Test
+    void callerThatReadsAloneIsNotBatched() {
+        // Given
+        Customer alex = new Customer(1, "alex", "alex@gmail.com", 20);
+        when(customerDao.selectCustomerById(1)).thenReturn(Optional.of(alex));
+        CustomerBatchLoader underTest = new CustomerBatchLoader(customerDao, Duration.ofMinutes(1), 100, () -> true);
+        // When
+        Optional<Customer> actual = underTest.load(1);
+        // Then
+        assertThat(actual).contains(alex);
+        verify(customerDao, never()).selectCustomersByIds(any());
+    }
+
+    @Test
+    void failedQueryFailsEveryLookupOfTheBatch() {
+        // Given
+        when(customerDao.selectCustomersByIds(any())).thenThrow(new IllegalStateException("database is down"));
+        CustomerBatchLoader underTest = new CustomerBatchLoader(customerDao, Duration.ofMillis(1), 100);
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.load(1)).hasMessage("database is down");
+    }
+
+    @Test
+    void errorOfTheLeaderStillCompletesTheJoinedLookups() throws Exception {
+        // Given
+        when(customerDao.selectCustomersByIds(any())).thenThrow(new StackOverflowError("too deep"));
+        CustomerBatchLoader underTest = new CustomerBatchLoader(customerDao, Duration.ofMillis(500), 100);
+        List<Future<Optional<Customer>>> lookups = new ArrayList<>();
+        // When
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int id : new int[]{1, 2}) {
+                lookups.add(executor.submit(() -> underTest.load(id)));
+            }
+        }
+        // Then every lookup ends with the error instead of waiting forever
+        for (Future<Optional<Customer>> lookup : lookups) {
+            assertThatThrownBy(lookup::get).hasCauseInstanceOf(StackOverflowError.class);
+        }
+        verify(customerDao).selectCustomersByIds(Set.of(1, 2));
+    }
+}
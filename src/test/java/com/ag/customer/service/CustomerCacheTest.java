@@ -0,0 +1,198 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerCacheTest {
+    private final Customer alex = new Customer(1, "alex", "alex@gmail.com", 20);
+
+    @Test
+    void loadsOnceAndThenHits() {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+        // When
+        underTest.get(1, id -> { loads.incrementAndGet(); return Optional.of(alex); });
+        Optional<Customer> actual = underTest.get(1, id -> { loads.incrementAndGet(); return Optional.of(alex); });
+        // Then
+        assertThat(actual).contains(alex);
+        assertThat(loads).hasValue(1);
+        assertThat(underTest.stats().hitCount()).isEqualTo(1);
+        assertThat(underTest.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotCacheMissingCustomers() {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        // When
+        underTest.get(1, id -> Optional.empty());
+        Optional<Customer> actual = underTest.get(1, id -> Optional.of(alex));
+        // Then
+        assertThat(actual).contains(alex);
+    }
+
+    @Test
+    void getAllLoadsOnlyTheMissingIdsAtOnce() {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        Customer sam = new Customer(2, "sam", "sam@gmail.com", 21);
+        underTest.get(1, id -> Optional.of(alex));
+        List<Set<Integer>> loads = new ArrayList<>();
+        // When
+        Map<Integer, Customer> actual = underTest.getAll(List.of(1, 2, 3), ids -> {
+            loads.add(Set.copyOf(ids));
+            return Map.of(2, sam);
+        });
+        // Then
+        assertThat(actual).containsOnly(Map.entry(1, alex), Map.entry(2, sam));
+        assertThat(loads).containsExactly(Set.of(2, 3));
+        // Found customers are cached, missing ones are not
+        assertThat(underTest.getAll(List.of(2, 3), ids -> Map.of(3, alex))).containsOnlyKeys(2, 3);
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        underTest.get(1, id -> Optional.of(alex));
+        Customer updated = new Customer(1, "alex", "alex.1@gmail.com", 20);
+        // When
+        underTest.invalidate(1);
+        // Then
+        assertThat(underTest.get(1, id -> Optional.of(updated))).contains(updated);
+    }
+
+    @Test
+    void expiresAfterTtl() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        CustomerCache underTest = new CustomerCache(100, Duration.ofSeconds(10), nanos::get);
+        underTest.get(1, id -> Optional.of(alex));
+        Customer updated = new Customer(1, "alex", "alex.1@gmail.com", 20);
+        // When
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        // Then
+        assertThat(underTest.get(1, id -> Optional.of(updated))).contains(updated);
+    }
+
+    @Test
+    void staysWithinMaximumSize() {
+        // Given
+        CustomerCache underTest = new CustomerCache(10, Duration.ofMinutes(1));
+        // When
+        for (int i = 0; i < 100; i++) {
+            underTest.get(i, id -> Optional.of(new Customer(id, "alex", "alex@gmail.com", 20)));
+        }
+        underTest.cache().synchronous().cleanUp();
+        // Then
+        assertThat(underTest.cache().synchronous().estimatedSize()).isLessThanOrEqualTo(10);
+        assertThat(underTest.stats().evictionCount()).isGreaterThan(0);
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        // When
+        assertThatThrownBy(() -> underTest.get(1, id -> { throw new IllegalStateException("database down"); }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("database down");
+        // Then
+        assertThat(underTest.get(1, id -> Optional.of(alex))).contains(alex);
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // When
+        List<Future<Optional<Customer>>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> underTest.get(1, id -> {
+                loads.incrementAndGet();
+                try {
+                    // Hold the load open so the other threads arrive while it is in flight
+                    release.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Optional.of(alex);
+            })));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Optional<Customer>> future : futures) {
+            assertThat(future.get()).contains(alex);
+        }
+        executor.shutdown();
+        // Then
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void errorInLoadReachesTheCallersWaitingOnIt() throws Exception {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        // When
+        Future<Optional<Customer>> loader = executor.submit(() -> underTest.get(1, id -> {
+            loading.countDown();
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new StackOverflowError("deep mapping");
+        }));
+        loading.await(1, TimeUnit.SECONDS);
+        Future<Optional<Customer>> waiter = executor.submit(() -> underTest.get(1, id -> Optional.of(alex)));
+        Thread.sleep(100);
+        release.countDown();
+        // Then
+        for (Future<Optional<Customer>> future : List.of(loader, waiter)) {
+            assertThatThrownBy(() -> future.get(2, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .cause()
+                    .isInstanceOf(StackOverflowError.class)
+                    .hasMessage("deep mapping");
+        }
+        executor.shutdown();
+        assertThat(underTest.get(1, id -> Optional.of(alex))).contains(alex);
+    }
+
+    @Test
+    void errorInBulkLoadIsRethrownAndNotCached() {
+        // Given
+        CustomerCache underTest = new CustomerCache(100, Duration.ofMinutes(1));
+        // When
+        assertThatThrownBy(() -> underTest.getAll(List.of(1, 2), ids -> { throw new StackOverflowError("deep mapping"); }))
+                .isInstanceOf(StackOverflowError.class);
+        // Then
+        assertThat(underTest.getAll(List.of(1, 2), ids -> Map.of(1, alex))).containsOnlyKeys(1);
+    }
+}
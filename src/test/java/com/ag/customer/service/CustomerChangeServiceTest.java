@@ -0,0 +1,130 @@
+package com.ag.customer.service;
+
+import com.ag.AbstractTestContainersUnitTest;
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.dto.CustomerChange;
+import com.ag.dto.CustomerChangePage;
+import com.ag.exceptions.RequestValidationException;
+import com.ag.exceptions.UnsupportedBackendException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerChangeServiceTest extends AbstractTestContainersUnitTest {
+    // Every call to getJdbcTemplate opens a new pool, so the class shares one
+    private static JdbcTemplate jdbcTemplate;
+    private CustomerJDBCDataAccessService customerDao;
+    private CustomerChangeRelay relay;
+    private CustomerChangeService underTest;
+
+    @BeforeAll
+    static void createJdbcTemplate() {
+        jdbcTemplate = getJdbcTemplate();
+    }
+
+    @BeforeEach
+    void setUp() {
+        customerDao = new CustomerJDBCDataAccessService(
+                jdbcTemplate, new CustomerRowMapper(), new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO));
+        relay = new CustomerChangeRelay(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()), Duration.ofMillis(100));
+        underTest = new CustomerChangeService(jdbcTemplate, relay, Duration.ofMillis(200), "jdbc");
+    }
+
+    @Test
+    void getChangesReturnsEveryWriteInOrderWithOnlyTheChangedFields() {
+        // Given
+        long since = latestPosition();
+        Customer customer = new Customer("Alex", "alex-" + UUID.randomUUID() + "@gmail.com", 20);
+        customerDao.insertCustomer(customer);
+        customerDao.updateCustomer(new Customer(customer.getId(), null, null, 21));
+        customerDao.deleteCustomerById(customer.getId());
+        relay.relay();
+        // When
+        CustomerChangePage actual = underTest.getChanges(since, 10);
+        // Then
+        assertThat(actual.changes()).extracting(CustomerChange::type).containsExactly("insert", "update", "delete");
+        assertThat(actual.changes()).extracting(CustomerChange::customerId).containsOnly(customer.getId());
+        assertThat(actual.changes().get(0).changes()).contains("\"name\": \"Alex\"", "\"age\": 20", "\"version\": 0");
+        assertThat(actual.changes().get(1).changes()).isEqualTo("{\"age\": 21, \"version\": 1}");
+        assertThat(actual.changes().get(2).changes()).isEqualTo("{}");
+        assertThat(actual.next()).isEqualTo(actual.changes().get(2).seq());
+    }
+
+    @Test
+    void getChangesResumesAfterNext() {
+        // Given
+        long since = latestPosition();
+        customerDao.insertCustomer(new Customer("Sam", "sam-" + UUID.randomUUID() + "@gmail.com", 30));
+        customerDao.insertCustomer(new Customer("Mia", "mia-" + UUID.randomUUID() + "@gmail.com", 31));
+        relay.relay();
+        CustomerChangePage first = underTest.getChanges(since, 1);
+        // When
+        CustomerChangePage second = underTest.getChanges(first.next(), 1);
+        // Then
+        assertThat(first.changes()).hasSize(1);
+        assertThat(second.changes()).hasSize(1);
+        assertThat(second.changes().get(0).seq()).isGreaterThan(first.next());
+        assertThat(second.changes().get(0).changes()).contains("Mia");
+    }
+
+    @Test
+    void getChangesWaitsForTheNextChange() {
+        // Given
+        long since = latestPosition();
+        CompletableFuture<CustomerChangePage> waiting = CompletableFuture.supplyAsync(
+                () -> new CustomerChangeService(jdbcTemplate, relay, Duration.ofSeconds(10), "jdbc").getChanges(since, 10));
+        // When
+        customerDao.insertCustomer(new Customer("Noah", "noah-" + UUID.randomUUID() + "@gmail.com", 40));
+        relay.relay();
+        // Then
+        assertThat(waiting.join().changes()).extracting(CustomerChange::type).containsExactly("insert");
+    }
+
+    @Test
+    void getChangesReturnsNothingAfterTheTimeout() {
+        // Given
+        long since = latestPosition();
+        // When
+        CustomerChangePage actual = underTest.getChanges(since, 10);
+        // Then
+        assertThat(actual.changes()).isEmpty();
+        assertThat(actual.next()).isEqualTo(since);
+    }
+
+    @Test
+    void willThrowWhenSinceIsNegative() {
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.getChanges(-1L, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("since must not be negative");
+    }
+
+    @Test
+    void willThrowWithTheShardedBackend() {
+        // Given
+        CustomerChangeService sharded = new CustomerChangeService(jdbcTemplate, relay, Duration.ofSeconds(10), "sharded");
+        // When
+        // Then
+        assertThatThrownBy(() -> sharded.getChanges(0L, 10))
+                .isInstanceOf(UnsupportedBackendException.class)
+                .hasMessage("The change feed is not available with the sharded backend");
+    }
+
+    // Publishes whatever other tests left behind and returns the position after it
+    private long latestPosition() {
+        relay.relay();
+        return jdbcTemplate.queryForObject("SELECT coalesce(max(seq), 0) FROM customer_change;", Long.class);
+    }
+}
@@ -0,0 +1,187 @@
+package com.ag.customer.service;
+
+import com.ag.AbstractTestContainersUnitTest;
+import com.ag.config.ReadRouting;
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ag.exceptions.ServiceUnavailableException;
+import com.ag.exceptions.UnsupportedBackendException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class CustomerExportServiceTest extends AbstractTestContainersUnitTest {
+    // Every call to getJdbcTemplate opens a new pool, so the class shares one
+    private static JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CustomerJDBCDataAccessService customerDao;
+    private CustomerExportService underTest;
+
+    @BeforeAll
+    static void createJdbcTemplate() {
+        jdbcTemplate = getJdbcTemplate();
+    }
+
+    @BeforeEach
+    void setUp() {
+        CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+        customerDao = new CustomerJDBCDataAccessService(jdbcTemplate, customerRowMapper,
+                new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO));
+        underTest = exportService(2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void exportCustomersAsCsv() {
+        // Given
+        String email = UUID.randomUUID() + "@gmail.com";
+        Customer customer = new Customer("Smith, \"Alex\"", email, 20);
+        customerDao.insertCustomer(customer);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // When
+        underTest.exportCustomers(CustomerFileFormat.CSV, false, changesSince -> out);
+        // Then
+        String csv = out.toString(StandardCharsets.UTF_8);
+        assertThat(csv).startsWith("id,name,email,age\n");
+        Integer id = jdbcTemplate.queryForObject("SELECT id FROM customer WHERE email = ?;", Integer.class, email);
+        assertThat(csv).contains("\n%s,\"Smith, \"\"Alex\"\"\",%s,20\n".formatted(id, email));
+    }
+
+    @Test
+    void exportCustomersAsNdjson() throws Exception {
+        // Given
+        String email = UUID.randomUUID() + "@gmail.com";
+        customerDao.insertCustomer(new Customer("Alex", email, 20));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // When
+        underTest.exportCustomers(CustomerFileFormat.NDJSON, false, changesSince -> out);
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(jdbcTemplate.queryForObject("SELECT count(*) FROM customer;", Integer.class));
+        JsonNode exported = null;
+        for (String line : lines) {
+            JsonNode node = objectMapper.readTree(line);
+            if (node.get("email").asText().equals(email)) {
+                exported = node;
+            }
+        }
+        assertThat(exported).isNotNull();
+        assertThat(exported.get("name").asText()).isEqualTo("Alex");
+        assertThat(exported.get("age").asInt()).isEqualTo(20);
+    }
+
+    @Test
+    void snapshotExportLeavesOutLaterWritesAndTellsTheChangePosition() {
+        // Given
+        String email = UUID.randomUUID() + "@gmail.com";
+        Long position = jdbcTemplate.queryForObject("SELECT coalesce(max(seq), 0) FROM customer_change;", Long.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Long[] changesSince = {null};
+        // When
+        underTest.exportCustomers(CustomerFileFormat.CSV, true, since -> {
+            changesSince[0] = since;
+            // Committed by another transaction after the snapshot was taken
+            CompletableFuture.runAsync(() -> customerDao.insertCustomer(new Customer("Alex", email, 20))).join();
+            return out;
+        });
+        // Then
+        assertThat(changesSince[0]).isEqualTo(position);
+        assertThat(out.toString(StandardCharsets.UTF_8)).doesNotContain(email);
+        assertThat(customerDao.existsPersonWithEmail(email)).isTrue();
+    }
+
+    @Test
+    void exportWithoutSnapshotReadsWhenItsQueryStarts() {
+        // Given
+        String email = UUID.randomUUID() + "@gmail.com";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Long[] changesSince = {0L};
+        // When
+        underTest.exportCustomers(CustomerFileFormat.CSV, false, since -> {
+            changesSince[0] = since;
+            CompletableFuture.runAsync(() -> customerDao.insertCustomer(new Customer("Alex", email, 20))).join();
+            return out;
+        });
+        // Then
+        assertThat(changesSince[0]).isNull();
+        assertThat(out.toString(StandardCharsets.UTF_8)).contains(email);
+    }
+
+    @Test
+    void exportBeyondTheLimitIsRefusedWhileTheOthersRun() throws Exception {
+        // Given
+        CustomerExportService oneAtATime = exportService(1, Duration.ofMinutes(1));
+        CompletableFuture<Void> opened = new CompletableFuture<>();
+        CompletableFuture<Void> finish = new CompletableFuture<>();
+        CompletableFuture<Void> running = CompletableFuture.runAsync(() -> oneAtATime.exportCustomers(CustomerFileFormat.CSV, false, since -> {
+            opened.complete(null);
+            finish.join();
+            return new ByteArrayOutputStream();
+        }));
+        opened.join();
+        // When
+        Throwable refused = catchThrowable(() -> oneAtATime.exportCustomers(CustomerFileFormat.CSV, false, since -> new ByteArrayOutputStream()));
+        finish.complete(null);
+        running.join();
+        // Then the permit is back once the first export is done
+        assertThat(refused).isInstanceOf(ServiceUnavailableException.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        oneAtATime.exportCustomers(CustomerFileFormat.CSV, false, since -> out);
+        assertThat(out.toString(StandardCharsets.UTF_8)).startsWith("id,name,email,age\n");
+    }
+
+    @Test
+    void exportThatFailsMidwayLeavesTheGzipStreamUnfinished() {
+        // Given a client slower than the idle timeout of the export transaction
+        CustomerExportService impatient = exportService(2, Duration.ofMillis(200));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // When
+        assertThatThrownBy(() -> impatient.exportCustomers(CustomerFileFormat.CSV, false, since -> {
+            CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(1, TimeUnit.SECONDS)).join();
+            return CustomerExportService.gzip(out);
+        })).isInstanceOf(RuntimeException.class);
+        // Then
+        assertThatThrownBy(() -> new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes())
+                .isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void willThrowWithTheShardedBackend() {
+        // Given
+        CustomerExportService sharded = exportService(2, Duration.ofMinutes(1), "sharded");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // When
+        // Then
+        assertThatThrownBy(() -> sharded.exportCustomers(CustomerFileFormat.CSV, false, since -> out))
+                .isInstanceOf(UnsupportedBackendException.class)
+                .hasMessage("Export is not available with the sharded backend");
+        assertThat(out.size()).isZero();
+    }
+
+    private CustomerExportService exportService(int maxConcurrent, Duration idleTimeout) {
+        return exportService(maxConcurrent, idleTimeout, "jdbc");
+    }
+
+    private CustomerExportService exportService(int maxConcurrent, Duration idleTimeout, String backend) {
+        return new CustomerExportService(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                new CustomerRowMapper(), objectMapper, maxConcurrent, Duration.ofMinutes(1), idleTimeout, (ReadRouting) null, backend);
+    }
+}
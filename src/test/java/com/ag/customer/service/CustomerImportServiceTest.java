@@ -0,0 +1,169 @@
+package com.ag.customer.service;
+
+import com.ag.AbstractTestContainersUnitTest;
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.dto.CustomerImportRejection;
+import com.ag.dto.CustomerImportResult;
+import com.ag.exceptions.RequestValidationException;
+import com.ag.exceptions.UnsupportedBackendException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerImportServiceTest extends AbstractTestContainersUnitTest {
+    // Every call to getJdbcTemplate opens a new pool, so the class shares one
+    private static JdbcTemplate jdbcTemplate;
+    private CustomerJDBCDataAccessService customerDao;
+    private CustomerImportService underTest;
+
+    @BeforeAll
+    static void createJdbcTemplate() {
+        jdbcTemplate = getJdbcTemplate();
+    }
+
+    @BeforeEach
+    void setUp() {
+        CustomerIdAllocator customerIdAllocator = new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO);
+        customerDao = new CustomerJDBCDataAccessService(jdbcTemplate, new CustomerRowMapper(), customerIdAllocator);
+        underTest = new CustomerImportService(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                customerIdAllocator, new ObjectMapper(), "jdbc");
+    }
+
+    @Test
+    void importCustomersFromCsv() {
+        // Given
+        String prefix = UUID.randomUUID().toString();
+        String csv = """
+                age,name,email\r
+                20,"Smith, Alex",%1$s-alex@gmail.com\r
+                30,"Sam ""the man"" Lee",%1$s-sam@gmail.com\r
+                """.formatted(prefix);
+        // When
+        CustomerImportResult actual = underTest.importCustomers(input(csv), CustomerFileFormat.CSV);
+        // Then
+        assertThat(actual).isEqualTo(new CustomerImportResult(2, 2, 0, List.of()));
+        assertThat(customerByEmail(prefix + "-alex@gmail.com").getName()).isEqualTo("Smith, Alex");
+        assertThat(customerByEmail(prefix + "-sam@gmail.com").getName()).isEqualTo("Sam \"the man\" Lee");
+        assertThat(customerByEmail(prefix + "-sam@gmail.com").getAge()).isEqualTo(30);
+    }
+
+    @Test
+    void importCustomersRejectsInvalidAndDuplicateRows() {
+        // Given
+        String prefix = UUID.randomUUID().toString();
+        Customer existing = new Customer("Mia", prefix + "-mia@gmail.com", 40);
+        customerDao.insertCustomer(existing);
+        String csv = """
+                name,email,age
+                Alex,%1$s-alex@gmail.com,20
+                Noah,,21
+                Liam,%1$s-liam@gmail.com,old
+                Mia,%1$s-mia@gmail.com,40
+                Alex again,%1$s-alex@gmail.com,22
+                Ava,%1$s-ava@gmail.com
+                Emma,%1$s-emma@gmail.com,23
+                """.formatted(prefix);
+        // When
+        CustomerImportResult actual = underTest.importCustomers(input(csv), CustomerFileFormat.CSV);
+        // Then
+        assertThat(actual.rows()).isEqualTo(7);
+        assertThat(actual.imported()).isEqualTo(2);
+        assertThat(actual.rejected()).isEqualTo(5);
+        assertThat(actual.rejections()).containsExactly(
+                new CustomerImportRejection(2, null, "name, email and age are required"),
+                new CustomerImportRejection(3, prefix + "-liam@gmail.com", "age must be a whole number"),
+                new CustomerImportRejection(4, prefix + "-mia@gmail.com", "email already exists"),
+                new CustomerImportRejection(5, prefix + "-alex@gmail.com", "email repeats an earlier row"),
+                new CustomerImportRejection(6, null, "expected 3 fields, got 2"));
+        assertThat(customerByEmail(prefix + "-alex@gmail.com").getName()).isEqualTo("Alex");
+        assertThat(customerByEmail(prefix + "-emma@gmail.com").getAge()).isEqualTo(23);
+    }
+
+    @Test
+    void importCustomersFromNdjson() {
+        // Given
+        String prefix = UUID.randomUUID().toString();
+        String ndjson = """
+                {"name": "Alex", "email": "%1$s-alex@gmail.com", "age": 20}
+
+                {"name": "Sam", "email": "%1$s-sam@gmail.com", "age": "twenty"}
+                not json
+                {"name": "Yuki", "email": "%1$s-yuki@gmail.com", "age": 31}
+                """.formatted(prefix);
+        // When
+        CustomerImportResult actual = underTest.importCustomers(input(ndjson), CustomerFileFormat.NDJSON);
+        // Then
+        assertThat(actual.rows()).isEqualTo(4);
+        assertThat(actual.imported()).isEqualTo(2);
+        assertThat(actual.rejections()).extracting(CustomerImportRejection::row).containsExactly(2L, 3L);
+        assertThat(customerByEmail(prefix + "-yuki@gmail.com").getAge()).isEqualTo(31);
+    }
+
+    @Test
+    void importCustomersReportsProgress() {
+        // Given
+        StringBuilder csv = new StringBuilder("name,email,age\n");
+        String prefix = UUID.randomUUID().toString();
+        long rows = CustomerImportService.PROGRESS_INTERVAL + 1;
+        for (long row = 1; row <= rows; row++) {
+            csv.append("Customer ").append(row).append(',').append(prefix).append('-').append(row).append("@gmail.com,30\n");
+        }
+        List<Long> progress = new ArrayList<>();
+        // When
+        CustomerImportResult actual = underTest.importCustomers(input(csv.toString()), CustomerFileFormat.CSV, progress::add);
+        // Then
+        assertThat(progress).containsExactly(CustomerImportService.PROGRESS_INTERVAL);
+        assertThat(actual.imported()).isEqualTo(rows);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(DISTINCT id) FROM customer WHERE email LIKE ?;", Long.class, prefix + "-%"))
+                .isEqualTo(rows);
+    }
+
+    @Test
+    void willThrowWhenCsvHeaderMissesAColumn() {
+        // Given
+        String csv = """
+                name,email
+                Alex,alex@gmail.com
+                """;
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.importCustomers(input(csv), CustomerFileFormat.CSV))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("The CSV header must name the columns name, email and age, got [name, email]");
+    }
+
+    @Test
+    void willThrowWithTheShardedBackend() {
+        // Given
+        CustomerImportService sharded = new CustomerImportService(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO), new ObjectMapper(), "sharded");
+        // When
+        // Then
+        assertThatThrownBy(() -> sharded.importCustomers(input("name,email,age\n"), CustomerFileFormat.CSV))
+                .isInstanceOf(UnsupportedBackendException.class)
+                .hasMessage("Import is not available with the sharded backend");
+    }
+
+    private Customer customerByEmail(String email) {
+        return jdbcTemplate.queryForObject("SELECT id, name, email, age, version FROM customer WHERE email = ?;", new CustomerRowMapper(), email);
+    }
+
+    private static InputStream input(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,29 +2,56 @@ package com.ag.customer.service;
 
 import com.ag.AbstractTestContainersUnitTest;
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerIdAllocator;
 import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.customer.repository.CustomerSort;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 
 class CustomerJDBCDataAccessServiceTest extends AbstractTestContainersUnitTest {
-    private CustomerJDBCDataAccessService underTest;
+    private CustomerDao underTest;
     private final CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+    // Every call to getJdbcTemplate opens a new pool, so the class shares one
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createJdbcTemplate() {
+        jdbcTemplate = getJdbcTemplate();
+    }
 
     @BeforeEach
     void setUp() {
         // We do it like this because we want a new instance for each test
         // For the jdbc template we must define how we will connect to the database since it is not maintained by spring
-        underTest = new CustomerJDBCDataAccessService(
-                getJdbcTemplate(), customerRowMapper
-        );
+        underTest = createDao(jdbcTemplate, customerRowMapper, new CustomerIdAllocator(jdbcTemplate, CustomerIdAllocator.POOLED_LO));
+    }
+
+    // The jdbc-named backend runs these same tests
+    CustomerDao createDao(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper, CustomerIdAllocator customerIdAllocator) {
+        return new CustomerJDBCDataAccessService(jdbcTemplate, customerRowMapper, customerIdAllocator);
     }
 
     @Test
@@ -38,6 +65,120 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainersUnitTest {
         assertThat(customers).isNotEmpty();
     }
 
+    @Test
+    void selectCustomersAfterId() {
+        // Given
+        underTest.insertCustomer(generateCustomer());
+        underTest.insertCustomer(generateCustomer());
+        underTest.insertCustomer(generateCustomer());
+        List<Customer> firstPage = underTest.selectCustomersAfterId(0, 2);
+        Integer lastId = firstPage.get(firstPage.size() - 1).getId();
+        // When
+        List<Customer> nextPage = underTest.selectCustomersAfterId(lastId, 2);
+        // Then
+        assertThat(firstPage).hasSize(2);
+        assertThat(firstPage.get(0).getId()).isLessThan(lastId);
+        assertThat(nextPage).isNotEmpty().allSatisfy(c -> assertThat(c.getId()).isGreaterThan(lastId));
+    }
+
+    @Test
+    void selectCustomersPagesThroughAnAgeRangeInAgeOrder() {
+        // Given
+        String name = "Age " + UUID.randomUUID();
+        for (int age : new int[]{150, 152, 151, 152, 153}) {
+            underTest.insertCustomer(new Customer(name, UUID.randomUUID() + "@gmail.com", age));
+        }
+        CustomerFilter filter = new CustomerFilter(151, 152, name, CustomerSort.AGE, Sort.Direction.ASC);
+        List<Customer> firstPage = underTest.selectCustomers(filter, null, 2);
+        // When
+        List<Customer> nextPage = underTest.selectCustomers(filter, firstPage.get(1), 2);
+        // Then
+        assertThat(firstPage).extracting(Customer::getAge).containsExactly(151, 152);
+        assertThat(nextPage).extracting(Customer::getAge).containsExactly(152);
+        assertThat(nextPage.get(0).getId()).isGreaterThan(firstPage.get(1).getId());
+    }
+
+    @Test
+    void selectCustomersFiltersByNamePrefixInDescendingNameOrder() {
+        // Given
+        String prefix = "q" + UUID.randomUUID().toString().substring(0, 8);
+        Customer first = new Customer(prefix + "-b", UUID.randomUUID() + "@gmail.com", 20);
+        Customer second = new Customer(prefix.toUpperCase() + "-A", UUID.randomUUID() + "@gmail.com", 21);
+        underTest.insertCustomer(second);
+        underTest.insertCustomer(first);
+        underTest.insertCustomer(new Customer("Sam " + prefix, UUID.randomUUID() + "@gmail.com", 22));
+        CustomerFilter filter = new CustomerFilter(null, null, prefix, CustomerSort.NAME, Sort.Direction.DESC);
+        // When
+        List<Customer> actual = underTest.selectCustomers(filter, null, 10);
+        List<Customer> afterFirst = underTest.selectCustomers(filter, actual.get(0), 10);
+        // Then
+        assertThat(actual).extracting(Customer::getEmail).containsExactly(first.getEmail(), second.getEmail());
+        assertThat(afterFirst).extracting(Customer::getEmail).containsExactly(second.getEmail());
+    }
+
+    @Test
+    void searchCustomersRanksNamePrefixBeforeEmailPrefixBeforeContains() {
+        // Given
+        String token = "q" + UUID.randomUUID().toString().substring(0, 8);
+        Customer contains = new Customer("Sam " + token, "sam-" + UUID.randomUUID() + "@gmail.com", 20);
+        Customer emailPrefix = new Customer("Alex", token + "-" + UUID.randomUUID() + "@gmail.com", 21);
+        Customer namePrefix = new Customer(token.toUpperCase() + " Smith", "smith-" + UUID.randomUUID() + "@gmail.com", 22);
+        underTest.insertCustomer(contains);
+        underTest.insertCustomer(emailPrefix);
+        underTest.insertCustomer(namePrefix);
+        // When
+        List<Customer> actual = underTest.searchCustomers(token, null, 10);
+        // Then
+        assertThat(actual).extracting(Customer::getEmail)
+                .containsExactly(namePrefix.getEmail(), emailPrefix.getEmail(), contains.getEmail());
+    }
+
+    @Test
+    void searchCustomersPagesAcrossRanks() {
+        // Given
+        String token = "q" + UUID.randomUUID().toString().substring(0, 8);
+        underTest.insertCustomer(new Customer(token + " One", "one-" + UUID.randomUUID() + "@gmail.com", 20));
+        underTest.insertCustomer(new Customer("Two", token + "-" + UUID.randomUUID() + "@gmail.com", 21));
+        underTest.insertCustomer(new Customer("Three " + token, "three-" + UUID.randomUUID() + "@gmail.com", 22));
+        List<Customer> all = underTest.searchCustomers(token, null, 10);
+        // When
+        List<Customer> secondPage = underTest.searchCustomers(token, CustomerSearch.position(token, all.get(0)), 1);
+        List<Customer> thirdPage = underTest.searchCustomers(token, CustomerSearch.position(token, all.get(1)), 1);
+        List<Customer> pastTheEnd = underTest.searchCustomers(token, CustomerSearch.position(token, all.get(2)), 1);
+        // Then
+        assertThat(all).hasSize(3);
+        assertThat(secondPage).containsExactly(all.get(1));
+        assertThat(thirdPage).containsExactly(all.get(2));
+        assertThat(pastTheEnd).isEmpty();
+    }
+
+    @Test
+    void searchCustomersTreatsWildcardsLiterally() {
+        // Given
+        String token = "q" + UUID.randomUUID().toString().substring(0, 8);
+        Customer underscore = new Customer("Sam " + token + "_x", "sam-" + UUID.randomUUID() + "@gmail.com", 20);
+        underTest.insertCustomer(underscore);
+        underTest.insertCustomer(new Customer("Sam " + token + "ax", "sam-" + UUID.randomUUID() + "@gmail.com", 21));
+        // When
+        List<Customer> actual = underTest.searchCustomers(token + "_x", null, 10);
+        // Then
+        assertThat(actual).extracting(Customer::getEmail).containsExactly(underscore.getEmail());
+    }
+
+    @Test
+    void streamAllCustomers() {
+        // Given
+        underTest.insertCustomer(generateCustomer());
+        underTest.insertCustomer(generateCustomer());
+        List<CustomerView> streamed = new ArrayList<>();
+        // When
+        underTest.streamAllCustomers(streamed::add);
+        // Then
+        assertThat(streamed).containsExactlyElementsOf(underTest.selectCustomersAfterId(0, Integer.MAX_VALUE).stream()
+                .map(c -> new CustomerView(c.getId(), c.getName(), c.getEmail(), c.getAge()))
+                .toList());
+    }
+
     @Test
     void selectCustomerById() {
         // Given
@@ -76,14 +217,127 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainersUnitTest {
         assertThat(actual).isEmpty();
     }
 
+    @Test
+    void selectCustomersByIdsLeavesOutUnknownIds() {
+        // Given
+        Customer alex = generateCustomer();
+        Customer sam = generateCustomer();
+        underTest.insertCustomer(alex);
+        underTest.insertCustomer(sam);
+        // When
+        List<Customer> actual = underTest.selectCustomersByIds(List.of(sam.getId(), -1, alex.getId()));
+        // Then
+        assertThat(actual).extracting(Customer::getEmail).containsExactlyInAnyOrder(alex.getEmail(), sam.getEmail());
+    }
+
     @Test
     void insertCustomer() {
         // Given
         Customer customer = generateCustomer();
         // When
-        underTest.insertCustomer(customer);
+        boolean actual = underTest.insertCustomer(customer);
+        // Then
+        assertThat(actual).isTrue();
+        assertThat(underTest.selectCustomerById(customer.getId())).hasValue(customer);
+    }
+
+    @Test
+    void insertCustomerReturnsFalseWhenEmailIsTaken() {
+        // Given
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(generateCustomer(email));
+        Customer duplicate = generateCustomer(email);
+        // When
+        boolean actual = underTest.insertCustomer(duplicate);
+        // Then
+        assertThat(actual).isFalse();
+        assertThat(duplicate.getId()).isNull();
+    }
+
+    @Test
+    void onlyOneConcurrentInsertOfTheSameEmailSucceeds() throws Exception {
+        // Given
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        // When every thread registers the same email at the same moment
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return underTest.insertCustomer(generateCustomer(email));
+            }));
+        }
+        start.countDown();
+        int inserted = 0;
+        for (Future<Boolean> future : futures) {
+            // No thread may fail with a constraint violation
+            if (future.get()) {
+                inserted++;
+            }
+        }
+        executor.shutdown();
+        // Then
+        assertThat(inserted).isEqualTo(1);
+        assertThat(underTest.selectExistingEmails(List.of(email))).containsExactly(email);
+    }
+
+    @Test
+    void insertCustomers() {
+        // Given
+        List<Customer> customers = List.of(generateCustomer(), generateCustomer(), generateCustomer());
+        // When
+        List<Customer> inserted = underTest.insertCustomers(customers);
+        // Then
+        assertThat(inserted).isEqualTo(customers);
+        assertThat(customers).extracting(Customer::getId).doesNotContainNull().doesNotHaveDuplicates();
+        List<String> emails = customers.stream().map(Customer::getEmail).toList();
+        assertThat(underTest.selectExistingEmails(emails)).containsExactlyInAnyOrderElementsOf(emails);
+    }
+
+    @Test
+    void insertCustomersSkipsAnEmailRegisteredWhileTheBatchRuns() throws Exception {
+        // Given a registration of one of the batch's emails that is in flight and not committed yet
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch registered = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        Future<Boolean> single = executor.submit(() -> transactionTemplate.execute(status -> {
+            boolean inserted = underTest.insertCustomer(generateCustomer(email));
+            registered.countDown();
+            try {
+                commit.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return inserted;
+        }));
+        registered.await();
+        Customer raced = generateCustomer(email);
+        List<Customer> batch = List.of(generateCustomer(), raced, generateCustomer());
+        // When the batch runs into the email, which waits for the registration to commit
+        Future<List<Customer>> inserted = executor.submit(() -> underTest.insertCustomers(batch));
+        commit.countDown();
+        // Then the batch doesn't fail, it leaves out the customer whose email was taken
+        assertThat(single.get()).isTrue();
+        assertThat(inserted.get()).containsExactly(batch.get(0), batch.get(2));
+        assertThat(raced.getId()).isNull();
+        assertThat(underTest.selectCustomersByIds(List.of(batch.get(0).getId(), batch.get(2).getId()))).hasSize(2);
+        executor.shutdown();
+    }
+
+    @Test
+    void selectExistingEmails() {
+        // Given
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        String unknownEmail = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        underTest.insertCustomer(generateCustomer(email));
+        // When
+        var actual = underTest.selectExistingEmails(List.of(email, unknownEmail));
         // Then
-        assertThat(underTest.selectAllCustomers()).isNotEmpty();
+        assertThat(actual).containsExactly(email);
     }
 
     @Test
@@ -121,12 +375,23 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainersUnitTest {
                 .findFirst()
                 .orElseThrow();
         // When
-        underTest.deleteCustomerById(id);
+        boolean deleted = underTest.deleteCustomerById(id);
         // Then
         Optional<Customer> actual = underTest.selectCustomerById(id);
+        assertThat(deleted).isTrue();
         assertThat(actual).isNotPresent();
     }
 
+    @Test
+    void deleteCustomerByIdReturnsFalseWhenDoesNotExist() {
+        // Given
+        int id = -1;
+        // When
+        boolean actual = underTest.deleteCustomerById(id);
+        // Then
+        assertThat(actual).isFalse();
+    }
+
     @Test
     void existsCustomerWithId() {
         // Given
@@ -299,6 +564,107 @@ class CustomerJDBCDataAccessServiceTest extends AbstractTestContainersUnitTest {
             assertThat(c.getEmail()).isEqualTo(customer.getEmail());
         });
     }
+    @Test
+    void updateCustomerReturnsUpdatedCustomer() {
+        // Given
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        Customer customer = generateCustomer(email, 29);
+        underTest.insertCustomer(customer);
+        Customer update = new Customer();
+        update.setId(customer.getId());
+        update.setAge(30);
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(update);
+        // Then
+        assertThat(actual).hasValue(new Customer(customer.getId(), customer.getName(), email, 30));
+    }
+
+    @Test
+    void updateCustomerReturnsEmptyWhenNothingChanges() {
+        // Given
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        Customer customer = generateCustomer(email, 29);
+        underTest.insertCustomer(customer);
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(new Customer(customer.getId(), customer.getName(), email, 29));
+        // Then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void updateCustomerReturnsEmptyWhenCustomerDoesNotExist() {
+        // Given
+        Customer update = new Customer();
+        update.setId(-1);
+        update.setName("foo");
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(update);
+        // Then
+        assertThat(actual).isEmpty();
+    }
+
+    @Test
+    void updateCustomerBumpsTheVersion() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer);
+        Customer update = new Customer();
+        update.setId(customer.getId());
+        update.setName("foo");
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(update);
+        // Then
+        assertThat(actual).hasValueSatisfying(c -> assertThat(c.getVersion()).isEqualTo(1L));
+        assertThat(underTest.selectCustomerById(customer.getId())).hasValueSatisfying(c -> assertThat(c.getVersion()).isEqualTo(1L));
+    }
+
+    @Test
+    void updateCustomerWithExpectedVersion() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer);
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(new Customer(customer.getId(), "foo", null, null, 0L));
+        // Then
+        assertThat(actual).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("foo");
+            assertThat(c.getVersion()).isEqualTo(1L);
+        });
+    }
+
+    @Test
+    void updateCustomerReturnsEmptyWhenVersionIsStale() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer);
+        underTest.updateCustomer(new Customer(customer.getId(), "foo", null, null, 0L));
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(new Customer(customer.getId(), "bar", null, null, 0L));
+        // Then
+        assertThat(actual).isEmpty();
+        assertThat(underTest.selectCustomerById(customer.getId())).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("foo");
+            assertThat(c.getVersion()).isEqualTo(1L);
+        });
+    }
+
+    @Test
+    void updateCustomerWithTakenEmailFailsWithoutChangingTheCustomer() {
+        // Given
+        Customer customer = generateCustomer();
+        Customer other = generateCustomer();
+        underTest.insertCustomer(customer);
+        underTest.insertCustomer(other);
+        Customer update = new Customer();
+        update.setId(customer.getId());
+        update.setName("foo");
+        update.setEmail(other.getEmail());
+        // When
+        assertThatThrownBy(() -> underTest.updateCustomer(update)).isInstanceOf(DuplicateKeyException.class);
+        // Then the name was not written either
+        assertThat(underTest.selectCustomerById(customer.getId())).hasValue(customer);
+    }
+
     // Helper Method
     private Customer generateCustomer() {
         // Given
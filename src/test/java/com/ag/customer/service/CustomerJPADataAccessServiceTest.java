@@ -2,7 +2,12 @@ package com.ag.customer.service;
 
 import com.ag.AbstractTestContainersUnitTest;
 import com.ag.customer.Customer;
+import com.ag.customer.CustomerView;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerQuery;
 import com.ag.customer.repository.CustomerRepository;
+import com.ag.customer.repository.CustomerSearchPosition;
+import com.ag.customer.repository.CustomerSort;
 import com.github.javafaker.Faker;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -10,11 +15,24 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class CustomerJPADataAccessServiceTest extends AbstractTestContainersUnitTest {
     private CustomerJPADataAccessService underTest;
@@ -44,6 +62,83 @@ class CustomerJPADataAccessServiceTest extends AbstractTestContainersUnitTest {
      verify(customerRepository).findAll();
     }
 
+    @Test
+    void selectCustomersAfterId() {
+        // When
+        underTest.selectCustomersAfterId(10, 50);
+        // Then
+        verify(customerRepository).findByIdGreaterThanOrderByIdAsc(10, Limit.of(50));
+    }
+
+    @Test
+    void streamAllCustomersStopsAfterShortPage() {
+        // Given
+        CustomerView customer = new CustomerView(7, FAKER.name().fullName(), FAKER.internet().emailAddress(), 20);
+        when(customerRepository.findViewsByIdGreaterThanOrderByIdAsc(0, Limit.of(1000))).thenReturn(List.of(customer));
+        List<CustomerView> streamed = new ArrayList<>();
+        // When
+        underTest.streamAllCustomers(streamed::add);
+        // Then
+        assertEquals(List.of(customer), streamed);
+        verify(customerRepository).findViewsByIdGreaterThanOrderByIdAsc(0, Limit.of(1000));
+    }
+
+    @Test
+    void selectCustomers() {
+        // Given
+        CustomerFilter filter = new CustomerFilter(18, 30, null, CustomerSort.AGE, Sort.Direction.DESC);
+        Customer after = new Customer(7, "Alex", "alex@gmail.com", 25);
+        // When
+        underTest.selectCustomers(filter, after, 50);
+        // Then
+        verify(customerRepository).findByQuery(CustomerQuery.select(filter, after, 50));
+    }
+
+    @Test
+    void selectCustomersByIdsReadsInChunks() {
+        // Given
+        List<Integer> ids = IntStream.rangeClosed(1, 1500).boxed().toList();
+        // When
+        underTest.selectCustomersByIds(ids);
+        // Then
+        verify(customerRepository).findAllById(ids.subList(0, 1000));
+        verify(customerRepository).findAllById(ids.subList(1000, 1500));
+    }
+
+    @Test
+    void searchCustomersReadsRanksUntilThePageIsFull() {
+        // Given
+        Customer namePrefix = new Customer(1, "Alex Smith", "smith@gmail.com", 20);
+        Customer emailPrefix = new Customer(2, "Sam", "alex@gmail.com", 21);
+        when(customerRepository.findByNamePrefix("alex", "aley", "", 0, 2)).thenReturn(List.of(namePrefix));
+        when(customerRepository.findByEmailPrefix("alex", "aley", "", 0, 1)).thenReturn(List.of(emailPrefix));
+        // When
+        List<Customer> actual = underTest.searchCustomers("Alex", null, 2);
+        // Then
+        assertEquals(List.of(namePrefix, emailPrefix), actual);
+        verify(customerRepository, never()).findContaining(any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void searchCustomersResumesInsideTheRankOfThePreviousPage() {
+        // Given
+        CustomerSearchPosition after = new CustomerSearchPosition(1, "alex@gmail.com", 2);
+        // When
+        underTest.searchCustomers("Alex", after, 5);
+        // Then
+        verify(customerRepository, never()).findByNamePrefix(any(), any(), any(), anyInt(), anyInt());
+        verify(customerRepository).findByEmailPrefix("alex", "aley", "alex@gmail.com", 2, 5);
+        verify(customerRepository).findContaining("%Alex%", "alex", 0, 5);
+    }
+
+    @Test
+    void searchCustomersEscapesWildcardsOfContainsRank() {
+        // When
+        underTest.searchCustomers("50%_off", null, 5);
+        // Then
+        verify(customerRepository).findContaining("%50\\%\\_off%", "50%_off", 0, 5);
+    }
+
     @Test
     void selectCustomerById() {
         // Given
@@ -60,9 +155,70 @@ class CustomerJPADataAccessServiceTest extends AbstractTestContainersUnitTest {
         String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
         Customer customer = new Customer(FAKER.name().fullName(), email, 20);
         // When
-       underTest.insertCustomer(customer);
+        boolean actual = underTest.insertCustomer(customer);
         // Then
-        verify(customerRepository).save(customer);
+        verify(customerRepository).saveAndFlush(customer);
+        assertTrue(actual);
+    }
+
+    @Test
+    void insertCustomerReturnsFalseWhenEmailIsTaken() {
+        // Given
+        Customer customer = new Customer(FAKER.name().fullName(), FAKER.internet().emailAddress(), 20);
+        SQLException uniqueViolation = new SQLException("duplicate key value violates unique constraint", "23505");
+        when(customerRepository.saveAndFlush(customer)).thenThrow(new DataIntegrityViolationException("customer_email_key", uniqueViolation));
+        // When
+        boolean actual = underTest.insertCustomer(customer);
+        // Then
+        assertFalse(actual);
+    }
+
+    @Test
+    void insertCustomerRethrowsOtherConstraintViolations() {
+        // Given
+        Customer customer = new Customer(null, FAKER.internet().emailAddress(), 20);
+        SQLException notNullViolation = new SQLException("null value in column \"name\"", "23502");
+        when(customerRepository.saveAndFlush(customer)).thenThrow(new DataIntegrityViolationException("name", notNullViolation));
+        // When
+        // Then
+        assertThrows(DataIntegrityViolationException.class, () -> underTest.insertCustomer(customer));
+    }
+
+    @Test
+    void insertCustomers() {
+        // Given
+        List<Customer> customers = List.of(new Customer(FAKER.name().fullName(), FAKER.internet().emailAddress(), 20));
+        // When
+        List<Customer> inserted = underTest.insertCustomers(customers);
+        // Then
+        verify(customerRepository).saveAll(customers);
+        assertEquals(customers, inserted);
+    }
+
+    @Test
+    void insertCustomersSavesTheRestAgainWhenAnEmailWasTakenMeanwhile() {
+        // Given
+        Customer taken = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Customer free = new Customer(2, "Sam", "sam@gmail.com", 21);
+        SQLException uniqueViolation = new SQLException("duplicate key value violates unique constraint", "23505");
+        when(customerRepository.saveAll(List.of(taken, free))).thenThrow(new DataIntegrityViolationException("email", uniqueViolation));
+        when(customerRepository.findExistingEmails(List.of("alex@gmail.com", "sam@gmail.com"))).thenReturn(List.of("alex@gmail.com"));
+        // When
+        List<Customer> inserted = underTest.insertCustomers(List.of(taken, free));
+        // Then
+        assertEquals(List.of(free), inserted);
+        verify(customerRepository).saveAll(List.of(free));
+    }
+
+    @Test
+    void selectExistingEmails() {
+        // Given
+        List<String> emails = List.of("alex@gmail.com", "sam@gmail.com");
+        when(customerRepository.findExistingEmails(emails)).thenReturn(List.of("sam@gmail.com"));
+        // When
+        var actual = underTest.selectExistingEmails(emails);
+        // Then
+        assertEquals(Set.of("sam@gmail.com"), actual);
     }
 
     @Test
@@ -79,10 +235,12 @@ class CustomerJPADataAccessServiceTest extends AbstractTestContainersUnitTest {
     void deleteCustomerById() {
         // Given
         int id = 1;
+        when(customerRepository.deleteCustomerById(id)).thenReturn(1);
         // When
-        underTest.deleteCustomerById(id);
+        boolean actual = underTest.deleteCustomerById(id);
         // Then
-        verify(customerRepository).deleteById(id);
+        verify(customerRepository).deleteCustomerById(id);
+        assertTrue(actual);
 
     }
 
@@ -100,10 +258,42 @@ class CustomerJPADataAccessServiceTest extends AbstractTestContainersUnitTest {
     void updateCustomer() {
         // Given
         String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
-        Customer customer = new Customer(FAKER.name().fullName(), email, 20);
+        Customer stored = new Customer(1, FAKER.name().fullName(), email, 20);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(stored));
+        when(customerRepository.saveAndFlush(stored)).thenReturn(stored);
+        Customer update = new Customer();
+        update.setId(1);
+        update.setAge(30);
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(update);
+        // Then
+        verify(customerRepository).saveAndFlush(stored);
+        assertEquals(30, actual.orElseThrow().getAge());
+        assertEquals(email, actual.orElseThrow().getEmail());
+    }
+
+    @Test
+    void updateCustomerWithStaleVersionDoesNotSave() {
+        // Given
+        Customer stored = new Customer(1, "alex", "alex@gmail.com", 20, 3L);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(stored));
+        // When
+        Optional<Customer> actual = underTest.updateCustomer(new Customer(1, "sam", null, null, 2L));
+        // Then
+        assertTrue(actual.isEmpty());
+        assertEquals("alex", stored.getName());
+        verify(customerRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void updateCustomerWithoutChangesDoesNotSave() {
+        // Given
+        Customer stored = new Customer(1, "alex", "alex@gmail.com", 20);
+        when(customerRepository.findById(1)).thenReturn(Optional.of(stored));
         // When
-        underTest.updateCustomer(customer);
+        Optional<Customer> actual = underTest.updateCustomer(new Customer(1, "alex", "alex@gmail.com", 20));
         // Then
-        verify(customerRepository).save(customer);
+        assertTrue(actual.isEmpty());
+        verify(customerRepository, never()).saveAndFlush(any());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package com.ag.customer.service;
+
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class CustomerNamedJdbcDataAccessServiceTest extends CustomerJDBCDataAccessServiceTest {
+
+    @Override
+    CustomerDao createDao(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper, CustomerIdAllocator customerIdAllocator) {
+        return new CustomerNamedJdbcDataAccessService(jdbcTemplate, customerRowMapper, customerIdAllocator);
+    }
+}
@@ -0,0 +1,167 @@
+package com.ag.customer.service;
+
+import com.ag.AbstractTestContainersUnitTest;
+import com.ag.customer.Customer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerR2DBCDataAccessServiceTest extends AbstractTestContainersUnitTest {
+    private CustomerR2DBCDataAccessService underTest;
+    private static DatabaseClient databaseClient;
+
+    @BeforeAll
+    static void createDatabaseClient() {
+        databaseClient = DatabaseClient.create(getConnectionFactory());
+    }
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerR2DBCDataAccessService(databaseClient);
+    }
+
+    @Test
+    void selectAllCustomers() {
+        // Given
+        underTest.insertCustomer(generateCustomer()).block();
+        underTest.insertCustomer(generateCustomer()).block();
+        // When
+        List<Customer> customers = underTest.selectAllCustomers().collectList().block();
+        // Then
+        assertThat(customers).hasSizeGreaterThanOrEqualTo(2);
+        assertThat(customers).extracting(Customer::getId).isSorted();
+    }
+
+    @Test
+    void selectAllCustomersOnlyReadsWhatIsRequested() {
+        // Given
+        underTest.insertCustomer(generateCustomer()).block();
+        underTest.insertCustomer(generateCustomer()).block();
+        // When
+        List<Customer> customers = underTest.selectAllCustomers().limitRate(1).take(1).collectList().block();
+        // Then
+        assertThat(customers).hasSize(1);
+    }
+
+    @Test
+    void selectCustomersAfterId() {
+        // Given
+        underTest.insertCustomer(generateCustomer()).block();
+        underTest.insertCustomer(generateCustomer()).block();
+        underTest.insertCustomer(generateCustomer()).block();
+        List<Customer> firstPage = underTest.selectCustomersAfterId(0, 2).collectList().block();
+        Integer lastId = firstPage.get(firstPage.size() - 1).getId();
+        // When
+        List<Customer> nextPage = underTest.selectCustomersAfterId(lastId, 2).collectList().block();
+        // Then
+        assertThat(firstPage).hasSize(2);
+        assertThat(nextPage).isNotEmpty().allSatisfy(c -> assertThat(c.getId()).isGreaterThan(lastId));
+    }
+
+    @Test
+    void insertCustomerAndSelectById() {
+        // Given
+        Customer customer = generateCustomer();
+        // When
+        Boolean inserted = underTest.insertCustomer(customer).block();
+        // Then
+        assertThat(inserted).isTrue();
+        assertThat(customer.getId()).isNotNull();
+        assertThat(underTest.selectCustomerById(customer.getId()).block()).isEqualTo(customer);
+    }
+
+    @Test
+    void insertCustomerReturnsFalseWhenEmailIsTaken() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer).block();
+        Customer sameEmail = new Customer("other", customer.getEmail(), 30);
+        // When
+        Boolean inserted = underTest.insertCustomer(sameEmail).block();
+        // Then
+        assertThat(inserted).isFalse();
+        assertThat(sameEmail.getId()).isNull();
+    }
+
+    @Test
+    void willReturnEmptyWhenSelectCustomerById() {
+        // When
+        Customer actual = underTest.selectCustomerById(-1).block();
+        // Then
+        assertThat(actual).isNull();
+    }
+
+    @Test
+    void deleteCustomerById() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer).block();
+        // When
+        Boolean deleted = underTest.deleteCustomerById(customer.getId()).block();
+        // Then
+        assertThat(deleted).isTrue();
+        assertThat(underTest.existsPersonById(customer.getId()).block()).isFalse();
+        assertThat(underTest.deleteCustomerById(customer.getId()).block()).isFalse();
+    }
+
+    @Test
+    void updateCustomerReturnsUpdatedCustomer() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer).block();
+        Customer update = new Customer();
+        update.setId(customer.getId());
+        update.setName("foo");
+        update.setAge(99);
+        // When
+        Customer actual = underTest.updateCustomer(update).block();
+        // Then
+        assertThat(actual).isEqualTo(new Customer(customer.getId(), "foo", customer.getEmail(), 99));
+        assertThat(actual.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void updateCustomerReturnsEmptyWhenNothingChanges() {
+        // Given
+        Customer customer = generateCustomer();
+        underTest.insertCustomer(customer).block();
+        // When
+        Customer actual = underTest.updateCustomer(new Customer(customer.getId(), customer.getName(), customer.getEmail(), customer.getAge())).block();
+        // Then
+        assertThat(actual).isNull();
+    }
+
+    @Test
+    void updateCustomerWithTakenEmailFails() {
+        // Given
+        Customer customer = generateCustomer();
+        Customer other = generateCustomer();
+        underTest.insertCustomer(customer).block();
+        underTest.insertCustomer(other).block();
+        Customer update = new Customer();
+        update.setId(customer.getId());
+        update.setEmail(other.getEmail());
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(update).block()).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    // Helper Method
+    private Customer generateCustomer() {
+        Random r = new Random();
+        int low = 18, high = 60;
+        Integer age = r.nextInt(high - low) + low;
+        String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+        String name = FAKER.name().fullName() + "-" + UUID.randomUUID();
+        return new Customer(name, email, age);
+    }
+}
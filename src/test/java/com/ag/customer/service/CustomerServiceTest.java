@@ -1,11 +1,20 @@
 package com.ag.customer.service;
 
 import com.ag.AbstractTestContainersUnitTest;
+import com.ag.config.ReadRouting;
 import com.ag.customer.Customer;
 import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerFilter;
+import com.ag.customer.repository.CustomerSearchPosition;
+import com.ag.customer.repository.CustomerSort;
+import com.ag.dto.CustomerListRequest;
+import com.ag.dto.CustomerLookupResult;
+import com.ag.dto.CustomerPage;
 import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerRegistrationResult;
 import com.ag.dto.CustomerUpdateRequest;
 import com.ag.exceptions.DuplicateResourceException;
+import com.ag.exceptions.PreconditionFailedException;
 import com.ag.exceptions.RequestValidationException;
 import com.ag.exceptions.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,9 +23,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -25,6 +46,7 @@ import static org.mockito.Mockito.*;
 // This is another way to initialize the mock
 @ExtendWith(MockitoExtension.class)
 class CustomerServiceTest extends AbstractTestContainersUnitTest {
+    private static final ObjectProvider<ReadRouting> NO_READ_ROUTING = new StaticListableBeanFactory().getBeanProvider(ReadRouting.class);
     private CustomerService underTest;
 
     @Mock
@@ -34,7 +56,7 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
     @BeforeEach
     void setUp() {
         // Initialize the mock itself
-        underTest = new CustomerService(customerDao);
+        underTest = new CustomerService(customerDao, new CustomerCache(100, Duration.ofMinutes(1)));
     }
 
     @Test
@@ -45,6 +67,175 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
         verify(customerDao).selectAllCustomers();
     }
 
+    @Test
+    void getCustomersPageReturnsCursorWhenMoreCustomersExist() {
+        // Given
+        Customer first = new Customer(1, "alex", "alex@gmail.com", 20);
+        Customer second = new Customer(2, "sam", "sam@gmail.com", 21);
+        when(customerDao.selectCustomersAfterId(0, 2)).thenReturn(List.of(first, second));
+        // When
+        CustomerPage page = underTest.getCustomersPage(null, 1);
+        // Then
+        assertThat(page.customers()).containsExactly(first);
+        assertThat(page.nextCursor()).isNotNull();
+        // The cursor resumes after the last customer of the page
+        underTest.getCustomersPage(page.nextCursor(), 1);
+        verify(customerDao).selectCustomersAfterId(1, 2);
+    }
+
+    @Test
+    void getCustomersPageHasNoCursorOnLastPage() {
+        // Given
+        Customer first = new Customer(1, "alex", "alex@gmail.com", 20);
+        when(customerDao.selectCustomersAfterId(0, 101)).thenReturn(List.of(first));
+        // When
+        CustomerPage page = underTest.getCustomersPage(null, null);
+        // Then
+        assertThat(page.customers()).containsExactly(first);
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void willThrowWhenCursorIsInvalid() {
+        assertThatThrownBy(() -> underTest.getCustomersPage("not-a-cursor", 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Invalid cursor not-a-cursor");
+    }
+
+    @Test
+    void willThrowWhenPageLimitIsOutOfRange() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, 0))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("limit must be between 1 and 1000");
+        verify(customerDao, never()).selectCustomersAfterId(any(), anyInt());
+    }
+
+    @Test
+    void getFilteredCustomersPageResumesAfterTheLastSortedCustomer() {
+        // Given
+        CustomerListRequest request = new CustomerListRequest(18, 30, null, "age", "desc");
+        CustomerFilter filter = new CustomerFilter(18, 30, null, CustomerSort.AGE, Sort.Direction.DESC);
+        Customer first = new Customer(1, "alex", "alex@gmail.com", 30);
+        Customer second = new Customer(2, "sam", "sam@gmail.com", 29);
+        when(customerDao.selectCustomers(filter, null, 2)).thenReturn(List.of(first, second));
+        // When
+        CustomerPage page = underTest.getCustomersPage(request, null, 1);
+        // Then
+        assertThat(page.customers()).containsExactly(first);
+        // The cursor resumes after the id and age of the last customer of the page
+        underTest.getCustomersPage(request, page.nextCursor(), 1);
+        ArgumentCaptor<Customer> after = ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao, times(2)).selectCustomers(eq(filter), after.capture(), eq(2));
+        assertThat(after.getValue().getId()).isEqualTo(1);
+        assertThat(after.getValue().getAge()).isEqualTo(30);
+    }
+
+    @Test
+    void getCustomersPageWithoutFiltersUsesTheIdKeyset() {
+        // When
+        underTest.getCustomersPage(new CustomerListRequest(null, null, null, "id", null), null, 10);
+        // Then
+        verify(customerDao).selectCustomersAfterId(0, 11);
+        verify(customerDao, never()).selectCustomers(any(), any(), anyInt());
+    }
+
+    @Test
+    void willThrowWhenSortIsUnknown() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(new CustomerListRequest(null, null, null, "email", null), null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Unknown sort email, expected one of [id, name, age]");
+    }
+
+    @Test
+    void filteredListingIsSortedByTheFilteredFieldByDefault() {
+        // When
+        underTest.getCustomersPage(new CustomerListRequest(null, null, "al", null, null), null, 10);
+        // Then
+        verify(customerDao).selectCustomers(new CustomerFilter(null, null, "al", CustomerSort.NAME, Sort.Direction.ASC), null, 11);
+    }
+
+    @Test
+    void willThrowWhenFilterAndSortFieldDiffer() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(new CustomerListRequest(18, null, null, "id", null), null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("A listing filtered by age must be sorted by age");
+        assertThatThrownBy(() -> underTest.getCustomersPage(new CustomerListRequest(null, null, "al", "age", null), null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("A listing filtered by name must be sorted by name");
+        verify(customerDao, never()).selectCustomers(any(), any(), anyInt());
+    }
+
+    @Test
+    void willThrowWhenFilteringByAgeAndName() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(new CustomerListRequest(18, 30, "al", "age", null), null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Filter by age or by name, not both");
+    }
+
+    @Test
+    void willThrowWhenAgeRangeIsEmpty() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(new CustomerListRequest(40, 30, null, null, null), null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("minAge must not be greater than maxAge");
+    }
+
+    @Test
+    void willThrowWhenCursorBelongsToAnotherSort() {
+        // Given
+        String ageCursor = CustomerCursor.encode(CustomerSort.AGE, new Customer(1, "alex", "alex@gmail.com", 30));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.getCustomersPage(new CustomerListRequest(null, null, null, "name", null), ageCursor, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Invalid cursor %s".formatted(ageCursor));
+    }
+
+    @Test
+    void searchCustomersReturnsPositionCursorWhenMoreResultsExist() {
+        // Given
+        Customer first = new Customer(1, "Alex", "alex@gmail.com", 20);
+        Customer second = new Customer(2, "alexa", "alexa@gmail.com", 21);
+        when(customerDao.searchCustomers("alex", null, 2)).thenReturn(List.of(first, second));
+        // When
+        CustomerPage page = underTest.searchCustomers(" alex ", null, 1);
+        // Then
+        assertThat(page.customers()).containsExactly(first);
+        assertThat(page.nextCursor()).isNotNull();
+        // The cursor resumes inside the name rank after the last result returned
+        underTest.searchCustomers("alex", page.nextCursor(), 1);
+        verify(customerDao).searchCustomers("alex", new CustomerSearchPosition(0, "alex", 1), 2);
+    }
+
+    @Test
+    void willThrowWhenSearchQueryIsTooShort() {
+        assertThatThrownBy(() -> underTest.searchCustomers(" al ", null, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Search query must be at least 3 characters");
+        verify(customerDao, never()).searchCustomers(any(), any(), anyInt());
+    }
+
+    @Test
+    void willThrowWhenSearchCursorHasAnUnknownRank() {
+        // Given
+        String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString("search:7:1:alex".getBytes(StandardCharsets.UTF_8));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.searchCustomers("alex", cursor, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Invalid cursor %s".formatted(cursor));
+    }
+
+    @Test
+    void willThrowWhenSearchCursorIsAPageCursor() {
+        // Given
+        String pageCursor = CustomerCursor.encode(10);
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.searchCustomers("alex", pageCursor, 10))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("Invalid cursor %s".formatted(pageCursor));
+    }
+
     @Test
     void canGetCustomerById() {
         // Given
@@ -58,6 +249,49 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
         assertThat(actual).isEqualTo(customer);
     }
 
+    @Test
+    void getCustomerByIdIsServedFromCache() {
+        // Given
+        int id = 10;
+        Customer customer = new Customer(id, FAKER.name().fullName(), "alex@gmail.com", 20);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
+        // When
+        underTest.getCustomerById(id);
+        Customer actual = underTest.getCustomerById(id);
+        // Then
+        assertThat(actual).isEqualTo(customer);
+        verify(customerDao, times(1)).selectCustomerById(id);
+    }
+
+    @Test
+    void deleteCustomerByIdInvalidatesCache() {
+        // Given
+        int id = 10;
+        Customer customer = new Customer(id, FAKER.name().fullName(), "alex@gmail.com", 20);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer), Optional.empty());
+        when(customerDao.deleteCustomerById(id)).thenReturn(true);
+        underTest.getCustomerById(id);
+        // When
+        underTest.deleteCustomerById(id);
+        // Then
+        assertThatThrownBy(() -> underTest.getCustomerById(id)).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void updateCustomerInvalidatesCache() {
+        // Given
+        int id = 10;
+        Customer customer = new Customer(id, FAKER.name().fullName(), "alex@gmail.com", 20);
+        Customer updated = new Customer(id, customer.getName(), customer.getEmail(), 21);
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer), Optional.of(updated));
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.of(updated));
+        underTest.getCustomerById(id);
+        // When
+        underTest.updateCustomer(id, new CustomerUpdateRequest(null, null, 21));
+        // Then
+        assertThat(underTest.getCustomerById(id).getAge()).isEqualTo(21);
+    }
+
     @Test
     void willThrowWhenGetCustomerReturnsEmptyOptional() {
         // Given
@@ -72,11 +306,51 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
                         .formatted(id));
     }
 
+    @Test
+    void lookupCustomersKeepsRequestOrderAndReportsMissingIds() {
+        // Given
+        Customer alex = new Customer(1, "alex", "alex@gmail.com", 20);
+        Customer sam = new Customer(2, "sam", "sam@gmail.com", 21);
+        when(customerDao.selectCustomersByIds(Set.of(1, 2, 3))).thenReturn(List.of(alex, sam));
+        // When
+        CustomerLookupResult actual = underTest.lookupCustomers(List.of(2, 3, 1, 2));
+        // Then
+        assertThat(actual.customers()).containsExactly(sam, alex);
+        assertThat(actual.missing()).containsExactly(3);
+    }
+
+    @Test
+    void lookupCustomersOnlyReadsIdsThatAreNotCached() {
+        // Given
+        Customer alex = new Customer(1, "alex", "alex@gmail.com", 20);
+        Customer sam = new Customer(2, "sam", "sam@gmail.com", 21);
+        when(customerDao.selectCustomerById(1)).thenReturn(Optional.of(alex));
+        underTest.getCustomerById(1);
+        when(customerDao.selectCustomersByIds(Set.of(2))).thenReturn(List.of(sam));
+        // When
+        CustomerLookupResult actual = underTest.lookupCustomers(List.of(1, 2));
+        // Then
+        assertThat(actual.customers()).containsExactly(alex, sam);
+        verify(customerDao).selectCustomersByIds(Set.of(2));
+    }
+
+    @Test
+    void willThrowWhenLookupHasTooManyIds() {
+        // Given
+        List<Integer> ids = IntStream.rangeClosed(1, 1001).boxed().toList();
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.lookupCustomers(ids))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("At most 1000 customers can be looked up at once");
+        verify(customerDao, never()).selectCustomersByIds(any());
+    }
+
     @Test
     void addCustomer() {
         // Given
         String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(false);
+        when(customerDao.insertCustomer(any())).thenReturn(true);
         CustomerRegistrationRequest request = new CustomerRegistrationRequest("alex", email, 20);
         // When
         underTest.addCustomer(request);
@@ -94,76 +368,125 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
     void willThrowWhenEmailExistsWhileAddingACustomer() {
         // Given
         String email = FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
-        when(customerDao.existsPersonWithEmail(email)).thenReturn(true);
+        when(customerDao.insertCustomer(any())).thenReturn(false);
         CustomerRegistrationRequest request = new CustomerRegistrationRequest("alex", email, 20);
         // When
         assertThatThrownBy(() -> underTest.addCustomer(request))
                 .isInstanceOf(DuplicateResourceException.class)
                 .hasMessage("Customer with email %s already exist".formatted(email));
+        // Then the email is only checked by the insert itself
+        verify(customerDao, never()).existsPersonWithEmail(any());
+    }
+
+    @Test
+    void addCustomersReportsEveryRequestInOrder() {
+        // Given
+        CustomerRegistrationRequest created = new CustomerRegistrationRequest("alex", "alex@gmail.com", 20);
+        CustomerRegistrationRequest existing = new CustomerRegistrationRequest("sam", "sam@gmail.com", 21);
+        CustomerRegistrationRequest repeated = new CustomerRegistrationRequest("alex", "alex@gmail.com", 22);
+        CustomerRegistrationRequest invalid = new CustomerRegistrationRequest("jo", null, 23);
+        when(customerDao.selectExistingEmails(List.of("alex@gmail.com", "sam@gmail.com", "alex@gmail.com")))
+                .thenReturn(Set.of("sam@gmail.com"));
+        when(customerDao.insertCustomers(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        // When
+        List<CustomerRegistrationResult> results = underTest.addCustomers(List.of(created, existing, repeated, invalid));
         // Then
-        verify(customerDao, never()).insertCustomer(any());
+        assertThat(results).extracting(CustomerRegistrationResult::status).containsExactly(
+                CustomerRegistrationResult.Status.CREATED,
+                CustomerRegistrationResult.Status.DUPLICATE,
+                CustomerRegistrationResult.Status.DUPLICATE,
+                CustomerRegistrationResult.Status.INVALID);
+        verify(customerDao).insertCustomers(List.of(new Customer("alex", "alex@gmail.com", 20)));
+    }
+
+    @Test
+    void addCustomersReportsCustomersTheInsertSkippedAsDuplicates() {
+        // Given the email of sam is registered after the lookup, so the insert leaves sam out
+        CustomerRegistrationRequest alex = new CustomerRegistrationRequest("alex", "alex@gmail.com", 20);
+        CustomerRegistrationRequest sam = new CustomerRegistrationRequest("sam", "sam@gmail.com", 21);
+        when(customerDao.insertCustomers(any())).thenAnswer(invocation -> invocation.<List<Customer>>getArgument(0).subList(0, 1));
+        // When
+        List<CustomerRegistrationResult> results = underTest.addCustomers(List.of(alex, sam));
+        // Then
+        assertThat(results).containsExactly(
+                CustomerRegistrationResult.created("alex@gmail.com"),
+                CustomerRegistrationResult.duplicate("sam@gmail.com"));
+    }
+
+    @Test
+    void addCustomersSkipsInsertWhenNothingIsNew() {
+        // Given
+        CustomerRegistrationRequest existing = new CustomerRegistrationRequest("sam", "sam@gmail.com", 21);
+        when(customerDao.selectExistingEmails(List.of("sam@gmail.com"))).thenReturn(Set.of("sam@gmail.com"));
+        // When
+        underTest.addCustomers(List.of(existing));
+        // Then
+        verify(customerDao, never()).insertCustomers(any());
     }
 
     @Test
     void deleteCustomerById() {
         // Given
         int id = 10;
-        when(customerDao.existsPersonById(id)).thenReturn(true);
+        when(customerDao.deleteCustomerById(id)).thenReturn(true);
         // When
         underTest.deleteCustomerById(id);
         // Then
         verify(customerDao).deleteCustomerById(id);
+        verify(customerDao, never()).existsPersonById(id);
     }
 
     @Test
     void willThrowWhenDeleteCustomerByIdNotExist() {
         // Given
         int id = 10;
-        when(customerDao.existsPersonById(id)).thenReturn(false);
+        when(customerDao.deleteCustomerById(id)).thenReturn(false);
         // When
         assertThatThrownBy(() -> underTest
                 .deleteCustomerById(id))
                 .isInstanceOf(ResourceNotFoundException.class)
                 .hasMessage("Customer with id[%s] not found".formatted(id));
         // Then
-        verify(customerDao, never()).deleteCustomerById(id);
+        verify(customerDao, never()).existsPersonById(id);
     }
 
     @Test
     void canUpdateAllCustomersProperties() {
         // Given
         int id = 10;
-        Customer customer = new Customer(FAKER.name().fullName(), "alex@gmail.com", 20);
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
         String newEmail = "alex.1@gmail.com";
         CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", newEmail, 20);
-        when(customerDao.existsPersonWithEmail(newEmail)).thenReturn(false);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.of(new Customer(id, "Alex", newEmail, 20)));
         // When
-        underTest.updateCustomer(id, request);
+        Customer actual = underTest.updateCustomer(id, request);
         // Then
         ArgumentCaptor<Customer> customerCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(customerDao).updateCustomer(customerCaptor.capture());
         Customer capturedCustomer = customerCaptor.getValue();
+        assertThat(capturedCustomer.getId()).isEqualTo(id);
         assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
         assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
         assertThat(capturedCustomer.getName()).isEqualTo(request.name());
+        assertThat(actual).isEqualTo(new Customer(id, "Alex", newEmail, 20));
+        // No read or email check before the write
+        verify(customerDao, never()).selectCustomerById(any());
+        verify(customerDao, never()).existsPersonWithEmail(any());
     }
 
     @Test
     void canUpdateOnlyCustomerName() {
         // Given
         int id = 10;
-        Customer customer = new Customer(FAKER.name().fullName(), "alex@gmail.com", 20);
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
         CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20)));
         // When
         underTest.updateCustomer(id, request);
         // Then
         ArgumentCaptor<Customer> customerCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(customerDao).updateCustomer(customerCaptor.capture());
         Customer capturedCustomer = customerCaptor.getValue();
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
+        assertThat(capturedCustomer.getAge()).isNull();
+        assertThat(capturedCustomer.getEmail()).isNull();
         assertThat(capturedCustomer.getName()).isEqualTo(request.name());
     }
 
@@ -171,29 +494,27 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
     void canUpdateOnlyCustomerEmail() {
         // Given
         int id = 10;
-        Customer customer = new Customer(FAKER.name().fullName(), "alex@gmail.com", 20);
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
         String newEmail = "alex.1@gmail.com";
         CustomerUpdateRequest request = new CustomerUpdateRequest(null, newEmail, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.of(new Customer(id, "Alex", newEmail, 20)));
         // When
         underTest.updateCustomer(id, request);
         // Then
         ArgumentCaptor<Customer> customerCaptor = ArgumentCaptor.forClass(Customer.class);
         verify(customerDao).updateCustomer(customerCaptor.capture());
         Customer capturedCustomer = customerCaptor.getValue();
-        assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
+        assertThat(capturedCustomer.getAge()).isNull();
         assertThat(capturedCustomer.getEmail()).isEqualTo(request.email());
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
+        assertThat(capturedCustomer.getName()).isNull();
     }
 
     @Test
     void canUpdateOnlyCustomerAge() {
         // Given
         int id = 10;
-        Customer customer = new Customer(FAKER.name().fullName(), "alex@gmail.com", 20);
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
         int newAge = 22;
         CustomerUpdateRequest request = new CustomerUpdateRequest(null, null, newAge);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", newAge)));
         // When
         underTest.updateCustomer(id, request);
         // Then
@@ -201,43 +522,154 @@ class CustomerServiceTest extends AbstractTestContainersUnitTest {
         verify(customerDao).updateCustomer(customerCaptor.capture());
         Customer capturedCustomer = customerCaptor.getValue();
         assertThat(capturedCustomer.getAge()).isEqualTo(request.age());
-        assertThat(capturedCustomer.getEmail()).isEqualTo(customer.getEmail());
-        assertThat(capturedCustomer.getName()).isEqualTo(customer.getName());
+        assertThat(capturedCustomer.getEmail()).isNull();
+        assertThat(capturedCustomer.getName()).isNull();
     }
 
     @Test
     void willThrowWhenTryingToUpdateCustomerEmailWhenAlreadyTaken() {
         // Given
         int id = 10;
-        Customer customer = new Customer(FAKER.name().fullName(), "alex@gmail.com", 20);
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
         String newEmail = "alex.1@gmail.com";
         CustomerUpdateRequest request = new CustomerUpdateRequest(null, newEmail, null);
-        when(customerDao.existsPersonWithEmail(newEmail)).thenReturn(true);
+        when(customerDao.updateCustomer(any())).thenThrow(new DuplicateKeyException("customer_email_key"));
         // When
+        // Then
         assertThatThrownBy(() -> underTest
                 .updateCustomer(id, request))
                 .isInstanceOf(DuplicateResourceException.class)
                 .hasMessage("Email %s already exist".formatted(request.email()));
-        // Then
-        verify(customerDao, never()).updateCustomer(any());
     }
 
     @Test
     void willThrowWhenCustomerUpdatesHasNoChanges() {
         // Given
         int id = 10;
-        Customer customer = new Customer(FAKER.name().fullName(), "alex@gmail.com", 20);
-        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(customer));
-        CustomerUpdateRequest request = new CustomerUpdateRequest(customer.getName(), customer.getEmail(), customer.getAge());
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", "alex@gmail.com", 20);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.empty());
+        when(customerDao.existsPersonById(id)).thenReturn(true);
         // When
-       assertThatThrownBy(() -> underTest.updateCustomer(id, request))
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request))
                .isInstanceOf(RequestValidationException.class)
                .hasMessage("No data changes found");
+    }
+
+    @Test
+    void willThrowWhenCustomerUpdateIsEmpty() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest(null, null, null);
+        // When
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("No data changes found");
         // Then
         verify(customerDao, never()).updateCustomer(any());
     }
 
+    @Test
+    void willThrowWhenUpdatingCustomerThatDoesNotExist() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.empty());
+        when(customerDao.existsPersonById(id)).thenReturn(false);
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id[%s] not found".formatted(id));
+    }
 
+    @Test
+    void updateCustomerPassesTheExpectedVersion() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20, 4L)));
+        // When
+        Customer actual = underTest.updateCustomer(id, request, 3L);
+        // Then
+        ArgumentCaptor<Customer> customerCaptor = ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao).updateCustomer(customerCaptor.capture());
+        assertThat(customerCaptor.getValue().getVersion()).isEqualTo(3L);
+        assertThat(actual.getVersion()).isEqualTo(4L);
+    }
 
-}
\ No newline at end of file
+    @Test
+    void willThrowWhenExpectedVersionIsStale() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.empty());
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(new Customer(id, "Sam", "sam@gmail.com", 20, 4L)));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request, 3L))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("customer with id[%s] is at version 4, not 3".formatted(id));
+    }
+
+    @Test
+    void willThrowWhenUpdateWithCurrentVersionHasNoChanges() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.empty());
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.of(new Customer(id, "Alex", "alex@gmail.com", 20, 3L)));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request, 3L))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("No data changes found");
+    }
+
+    @Test
+    void willThrowWhenUpdateWithVersionTargetsMissingCustomer() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenReturn(Optional.empty());
+        when(customerDao.selectCustomerById(id)).thenReturn(Optional.empty());
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request, 3L))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id[%s] not found".formatted(id));
+    }
+
+    @Test
+    void willThrowWhenCustomerWasUpdatedConcurrently() {
+        // Given
+        int id = 10;
+        CustomerUpdateRequest request = new CustomerUpdateRequest("Alex", null, null);
+        when(customerDao.updateCustomer(any())).thenThrow(new ObjectOptimisticLockingFailureException(Customer.class, id));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(id, request))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessage("customer with id[%s] was changed by another request".formatted(id));
+    }
+
+    @Test
+    void usesTheConfiguredBackend() {
+        // Given
+        CustomerDao jpa = mock(CustomerDao.class);
+        CustomerService service = new CustomerService(Map.of("jdbc", customerDao, "jpa", jpa), "jpa", new CustomerCache(100, Duration.ofMinutes(1)), Duration.ZERO, NO_READ_ROUTING);
+        // When
+        service.getAllCustomers();
+        // Then
+        verify(jpa).selectAllCustomers();
+        verifyNoInteractions(customerDao);
+    }
+
+    @Test
+    void willThrowWhenBackendIsUnknown() {
+        // When
+        // Then
+        assertThatThrownBy(() -> new CustomerService(Map.of("jdbc", customerDao), "mongo", new CustomerCache(100, Duration.ofMinutes(1)), Duration.ZERO, NO_READ_ROUTING))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown customer dao backend mongo, expected one of [jdbc]");
+    }
+}
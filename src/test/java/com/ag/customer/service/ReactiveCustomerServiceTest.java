@@ -0,0 +1,151 @@
+package com.ag.customer.service;
+
+import com.ag.customer.Customer;
+import com.ag.customer.repository.ReactiveCustomerDao;
+import com.ag.dto.CustomerPage;
+import com.ag.dto.CustomerRegistrationRequest;
+import com.ag.dto.CustomerUpdateRequest;
+import com.ag.exceptions.DuplicateResourceException;
+import com.ag.exceptions.RequestValidationException;
+import com.ag.exceptions.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveCustomerServiceTest {
+    private ReactiveCustomerService underTest;
+
+    @Mock
+    private ReactiveCustomerDao customerDao;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ReactiveCustomerService(customerDao, new CustomerCache(100, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void getCustomersPageReturnsCursorWhenMoreCustomersExist() {
+        // Given
+        Customer first = new Customer(1, "alex", "alex@gmail.com", 20);
+        Customer second = new Customer(2, "sam", "sam@gmail.com", 21);
+        when(customerDao.selectCustomersAfterId(0, 2)).thenReturn(Flux.just(first, second));
+        // When
+        CustomerPage actual = underTest.getCustomersPage(null, 1).block();
+        // Then
+        assertThat(actual.customers()).containsExactly(first);
+        assertThat(actual.nextCursor()).isEqualTo(CustomerCursor.encode(1));
+    }
+
+    @Test
+    void getCustomersPageWillThrowWhenLimitIsTooLarge() {
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, CustomerService.MAX_PAGE_SIZE + 1).block())
+                .isInstanceOf(RequestValidationException.class);
+    }
+
+    @Test
+    void getCustomerByIdWillThrowWhenNotFound() {
+        // Given
+        when(customerDao.selectCustomerById(1)).thenReturn(Mono.empty());
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.getCustomerById(1).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id[1] not found");
+    }
+
+    @Test
+    void addCustomerWillThrowWhenEmailIsTaken() {
+        // Given
+        when(customerDao.insertCustomer(any())).thenReturn(Mono.just(false));
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest("alex", "alex@gmail.com", 20);
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.addCustomer(request).block())
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Customer with email alex@gmail.com already exist");
+    }
+
+    @Test
+    void deleteCustomerByIdWillThrowWhenNotFound() {
+        // Given
+        when(customerDao.deleteCustomerById(1)).thenReturn(Mono.just(false));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.deleteCustomerById(1).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("Customer with id[1] not found");
+    }
+
+    @Test
+    void updateCustomer() {
+        // Given
+        Customer updated = new Customer(1, "alex", "alex@gmail.com", 30);
+        when(customerDao.updateCustomer(any())).thenReturn(Mono.just(updated));
+        // When
+        Customer actual = underTest.updateCustomer(1, new CustomerUpdateRequest(null, null, 30)).block();
+        // Then
+        assertThat(actual).isEqualTo(updated);
+    }
+
+    @Test
+    void updateCustomerWillThrowWhenEmailIsTaken() {
+        // Given
+        when(customerDao.updateCustomer(any())).thenReturn(Mono.error(new DuplicateKeyException("customer_email_key")));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(1, new CustomerUpdateRequest(null, "sam@gmail.com", null)).block())
+                .isInstanceOf(DuplicateResourceException.class)
+                .hasMessage("Email sam@gmail.com already exist");
+    }
+
+    @Test
+    void updateCustomerWillThrowWhenCustomerDoesNotExist() {
+        // Given
+        when(customerDao.updateCustomer(any())).thenReturn(Mono.empty());
+        when(customerDao.existsPersonById(1)).thenReturn(Mono.just(false));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(1, new CustomerUpdateRequest("alex", null, null)).block())
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("customer with id[1] not found");
+    }
+
+    @Test
+    void updateCustomerWillThrowWhenNothingChanges() {
+        // Given
+        when(customerDao.updateCustomer(any())).thenReturn(Mono.empty());
+        when(customerDao.existsPersonById(1)).thenReturn(Mono.just(true));
+        // When
+        // Then
+        assertThatThrownBy(() -> underTest.updateCustomer(1, new CustomerUpdateRequest("alex", null, null)).block())
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("No data changes found");
+    }
+
+    @Test
+    void streamAllCustomers() {
+        // Given
+        Customer customer = new Customer(1, "alex", "alex@gmail.com", 20);
+        when(customerDao.selectAllCustomers()).thenReturn(Flux.just(customer));
+        // When
+        List<Customer> actual = underTest.streamAllCustomers().collectList().block();
+        // Then
+        assertThat(actual).containsExactly(customer);
+    }
+}
@@ -0,0 +1,171 @@
+package com.ag.customer.service;
+
+import com.ag.config.V12_1__Shard_Without_Main_Database_Tables;
+import com.ag.customer.Customer;
+import com.ag.customer.repository.CustomerDao;
+import com.ag.customer.repository.CustomerIdAllocator;
+import com.ag.customer.repository.CustomerRowMapper;
+import com.ag.customer.repository.CustomerShards;
+import com.ag.customer.repository.CustomerShards.Shard;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the jdbc tests against two shards, databases of their own on the same server
+class ShardedCustomerDataAccessServiceTest extends CustomerJDBCDataAccessServiceTest {
+    private static final int SHARDS = 2;
+    private static CustomerShards customerShards;
+    private CustomerDao sharded;
+
+    @BeforeAll
+    static void createShards() {
+        JdbcTemplate server = getJdbcTemplate();
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            String database = "customer_shard_" + i;
+            server.execute("DROP DATABASE IF EXISTS " + database);
+            server.execute("CREATE DATABASE " + database);
+            DataSource dataSource = DataSourceBuilder.create()
+                    .url(shardUrl(database))
+                    .username(postgreSQLContainer.getUsername())
+                    .password(postgreSQLContainer.getPassword())
+                    .build();
+            Flyway.configure().javaMigrations(new V12_1__Shard_Without_Main_Database_Tables()).dataSource(dataSource).load().migrate();
+            dataSources.add(dataSource);
+        }
+        customerShards = new CustomerShards(dataSources);
+    }
+
+    @AfterAll
+    static void closeShards() throws Exception {
+        customerShards.close();
+    }
+
+    @Override
+    CustomerDao createDao(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper, CustomerIdAllocator customerIdAllocator) {
+        sharded = new ShardedCustomerDataAccessService(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()),
+                customerShards, customerRowMapper, customerIdAllocator);
+        return sharded;
+    }
+
+    @Test
+    void customersAreStoredOnTheShardOfTheirIdOnly() {
+        // Given
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            customers.add(customer(uniqueEmail()));
+        }
+        // When
+        sharded.insertCustomers(customers);
+        // Then every shard got some of them, and each one is on its own shard only
+        for (Shard shard : customerShards.all()) {
+            List<Integer> stored = shard.jdbcTemplate().queryForList("SELECT id FROM customer WHERE id = ANY(?)", Integer.class,
+                    (Object) customers.stream().map(Customer::getId).toArray(Integer[]::new));
+            assertThat(stored).isNotEmpty().allSatisfy(id -> assertThat(customerShards.shardOf(id)).isEqualTo(shard));
+        }
+    }
+
+    @Test
+    void emailTakenOnOneShardCantBeRegisteredOnAnother() {
+        // Given
+        String email = uniqueEmail();
+        sharded.insertCustomer(customer(email));
+        // When every new id lands on some shard, both shards get a try
+        List<Boolean> inserted = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            inserted.add(sharded.insertCustomer(customer(email)));
+        }
+        // Then
+        assertThat(inserted).containsOnly(false);
+        assertThat(customerShards.scatter(shard -> shard.jdbcTemplate().queryForObject(
+                "SELECT count(*) FROM customer WHERE email = ?", Integer.class, email)).stream().mapToInt(Integer::intValue).sum())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void insertCustomersSkipsATakenEmail() {
+        // Given
+        Customer existing = customer(uniqueEmail());
+        sharded.insertCustomer(existing);
+        List<Customer> batch = List.of(customer(uniqueEmail()), customer(uniqueEmail()), customer(existing.getEmail()));
+        // When
+        List<Customer> inserted = sharded.insertCustomers(batch);
+        // Then
+        assertThat(inserted).containsExactly(batch.get(0), batch.get(1));
+        assertThat(batch.get(2).getId()).isNull();
+        assertThat(sharded.selectCustomersByIds(inserted.stream().map(Customer::getId).toList())).hasSize(2);
+        assertThat(customerShards.scatter(shard -> shard.jdbcTemplate().queryForObject(
+                "SELECT count(*) FROM customer WHERE email = ?", Integer.class, existing.getEmail())).stream().mapToInt(Integer::intValue).sum())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void updatedEmailIsReleased() {
+        // Given
+        String oldEmail = uniqueEmail();
+        Customer customer = customer(oldEmail);
+        sharded.insertCustomer(customer);
+        Customer update = new Customer();
+        update.setId(customer.getId());
+        update.setEmail(uniqueEmail());
+        // When
+        sharded.updateCustomer(update);
+        // Then
+        assertThat(sharded.existsPersonWithEmail(update.getEmail())).isTrue();
+        assertThat(sharded.insertCustomer(customer(oldEmail))).isTrue();
+    }
+
+    @Test
+    void deletedEmailIsReleased() {
+        // Given
+        Customer customer = customer(uniqueEmail());
+        sharded.insertCustomer(customer);
+        // When
+        sharded.deleteCustomerById(customer.getId());
+        // Then
+        assertThat(sharded.existsPersonWithEmail(customer.getEmail())).isFalse();
+        assertThat(sharded.insertCustomer(customer(customer.getEmail()))).isTrue();
+    }
+
+    @Test
+    void shardsKeepNeitherTheOutboxNorTheEmailDirectory() {
+        // Given
+        Customer customer = customer(uniqueEmail());
+        // When
+        sharded.insertCustomer(customer);
+        // Then the email is reserved in the main database, and no shard has the tables of the main database
+        assertThat(sharded.existsPersonWithEmail(customer.getEmail())).isTrue();
+        assertThat(getJdbcTemplate().queryForObject("SELECT customer_id FROM customer_email WHERE email = ?",
+                Integer.class, customer.getEmail())).isEqualTo(customer.getId());
+        assertThat(customerShards.scatter(shard -> shard.jdbcTemplate().queryForList("""
+                SELECT tablename FROM pg_tables WHERE tablename IN ('customer_change', 'customer_email', 'customer_email_directory')
+                """, String.class))).allSatisfy(tables -> assertThat(tables).isEmpty());
+    }
+
+    // The shards are other databases of the test server
+    private static String shardUrl(String database) {
+        String url = postgreSQLContainer.getJdbcUrl();
+        int options = url.indexOf('?');
+        String base = options < 0 ? url : url.substring(0, options);
+        return base.substring(0, base.lastIndexOf('/') + 1) + database + (options < 0 ? "" : url.substring(options));
+    }
+
+    private Customer customer(String email) {
+        return new Customer(FAKER.name().fullName() + "-" + UUID.randomUUID(), email, 30);
+    }
+
+    private String uniqueEmail() {
+        return FAKER.internet().emailAddress() + "-" + UUID.randomUUID();
+    }
+}